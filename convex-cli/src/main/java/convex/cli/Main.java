@@ -45,6 +45,7 @@ import picocli.CommandLine.ScopeType;
 		Peer.class,
 		Query.class,
 		Status.class,
+		Store.class,
 		Transaction.class,
 		CommandLine.HelpCommand.class
 	},
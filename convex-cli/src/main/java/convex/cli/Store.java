@@ -0,0 +1,55 @@
+package convex.cli;
+
+import java.io.File;
+import java.io.IOException;
+
+import etch.EtchStore;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.ParentCommand;
+
+/**
+ *
+ * Convex store sub commands
+ *
+ *		convex.store
+ *
+ */
+@Command(name="store",
+	subcommands = {
+		StoreStats.class,
+		StoreExport.class,
+		StoreUpgrade.class,
+		CommandLine.HelpCommand.class
+	},
+	mixinStandardHelpOptions=true,
+	description="Inspect a local Etch database.")
+public class Store implements Runnable {
+
+	@ParentCommand
+	protected Main mainParent;
+
+	@Override
+	public void run() {
+		// sub command run with no command provided
+		CommandLine.usage(new Store(), System.out);
+	}
+
+	/**
+	 * Opens the Etch database specified with --etch
+	 * @return EtchStore instance
+	 */
+	EtchStore openStore() {
+		String etchStoreFilename = mainParent.getEtchStoreFilename();
+		if (etchStoreFilename == null || etchStoreFilename.isEmpty()) {
+			throw new CLIError("No Etch database specified. Use --etch to specify a database file.");
+		}
+		File etchFile = new File(etchStoreFilename);
+		if (!etchFile.exists()) throw new CLIError("Etch database does not exist: " + etchStoreFilename);
+		try {
+			return EtchStore.create(etchFile);
+		} catch (IOException e) {
+			throw new CLIError("Unable to open Etch database (is a peer using it?): " + etchStoreFilename, e);
+		}
+	}
+}
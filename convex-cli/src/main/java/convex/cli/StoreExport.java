@@ -0,0 +1,47 @@
+package convex.cli;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import etch.EtchExport;
+import etch.EtchStore;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParentCommand;
+
+/**
+ *
+ * Convex store sub commands
+ *
+ *		convex.store.export
+ *
+ */
+@Command(name="export",
+	mixinStandardHelpOptions=true,
+	description="Export all records of an Etch database to a portable bulk file.")
+public class StoreExport implements Runnable {
+
+	@ParentCommand
+	protected Store storeParent;
+
+	@Option(names={"-o", "--output-file"},
+		required=true,
+		description="Output file for the export.")
+	private String outputFilename;
+
+	@Override
+	public void run() {
+		Main mainParent = storeParent.mainParent;
+		EtchStore store = storeParent.openStore();
+		String filename = Helpers.expandTilde(outputFilename).strip();
+		try (OutputStream out = new FileOutputStream(filename)) {
+			long n = EtchExport.write(store.getEtch(), out);
+			mainParent.println("Exported " + n + " records to " + filename);
+		} catch (IOException e) {
+			throw new CLIError("Error exporting Etch database", e);
+		} finally {
+			store.close();
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package convex.cli;
+
+import java.io.IOException;
+
+import etch.EtchStats;
+import etch.EtchStore;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.ParentCommand;
+
+/**
+ *
+ * Convex store sub commands
+ *
+ *		convex.store.stats
+ *
+ */
+@Command(name="stats",
+	mixinStandardHelpOptions=true,
+	description="Show statistics for the contents of an Etch database, including record counts and sizes by type, and index usage.")
+public class StoreStats implements Runnable {
+
+	@ParentCommand
+	protected Store storeParent;
+
+	@Override
+	public void run() {
+		Main mainParent = storeParent.mainParent;
+		EtchStore store = storeParent.openStore();
+		try {
+			EtchStats stats = EtchStats.collect(store.getEtch());
+			mainParent.println("Etch file: " + store.getFileName());
+			mainParent.println(stats.toString());
+		} catch (IOException e) {
+			throw new CLIError("Error scanning Etch database", e);
+		} finally {
+			store.close();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package convex.cli;
+
+import java.io.File;
+import java.io.IOException;
+
+import etch.EtchStore;
+import etch.EtchUpgrade;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParentCommand;
+
+/**
+ *
+ * Convex store sub commands
+ *
+ *		convex.store.upgrade
+ *
+ */
+@Command(name="upgrade",
+	mixinStandardHelpOptions=true,
+	description="Convert an Etch database in the earlier format without commit records to a new database file.")
+public class StoreUpgrade implements Runnable {
+
+	@ParentCommand
+	protected Store storeParent;
+
+	@Option(names={"-o", "--output-file"},
+		required=true,
+		description="Output file for the upgraded database. Must not exist.")
+	private String outputFilename;
+
+	@Override
+	public void run() {
+		Main mainParent = storeParent.mainParent;
+		String etchStoreFilename = mainParent.getEtchStoreFilename();
+		if (etchStoreFilename == null || etchStoreFilename.isEmpty()) {
+			throw new CLIError("No Etch database specified. Use --etch to specify a database file.");
+		}
+		File source = new File(etchStoreFilename);
+		File target = new File(Helpers.expandTilde(outputFilename).strip());
+		if (target.exists()) throw new CLIError("Output file already exists: " + target);
+		try {
+			if (!EtchUpgrade.isUpgradable(source)) {
+				throw new CLIError("Not an Etch database in the earlier format: " + etchStoreFilename);
+			}
+			EtchStore store = EtchStore.create(target);
+			try {
+				long n = EtchUpgrade.upgrade(source, store.getEtch());
+				mainParent.println("Upgraded " + n + " records to " + target);
+			} finally {
+				store.close();
+			}
+		} catch (IOException e) {
+			throw new CLIError("Error upgrading Etch database", e);
+		}
+	}
+}
@@ -164,14 +164,27 @@ public class Belief extends ARecord {
 		// accumulate combined list of latest chains for all peers
 		final BlobMap<AccountKey, SignedData<Order>> accOrders = accumulateOrders(mc, beliefs);
 
-		// vote for new proposed chain
-		final BlobMap<AccountKey, SignedData<Order>> resultOrders = vote(mc, accOrders);
-		if (resultOrders == null) return this;
+		State votingState = mc.getConsensusState();
+		final BlobMap<AccountKey, SignedData<Order>> resultOrders;
+		if ((accOrders == orders) && mc.isStable(orders)) {
+			// PERF: no Orders have changed since a vote that made no changes, so skip voting
+			resultOrders = orders;
+		} else {
+			// vote for new proposed chain
+			resultOrders = vote(mc, accOrders);
+			if (resultOrders == null) return this;
+		}
+		boolean stable = (resultOrders == accOrders);
 
 		// update my belief with the resulting Orders
 		long newTimestamp = mc.getTimeStamp();
-		if ((orders == resultOrders) && (timestamp == newTimestamp)) return this;
-		final Belief result = new Belief(resultOrders, newTimestamp);
+		final Belief result;
+		if ((orders == resultOrders) && (timestamp == newTimestamp)) {
+			result = this;
+		} else {
+			result = new Belief(resultOrders, newTimestamp);
+		}
+		if (stable) mc.setStable(resultOrders, votingState);
 
 		return result;
 	}
@@ -188,15 +201,19 @@ public class Belief extends ARecord {
 		BlobMap<AccountKey, SignedData<Order>> result = this.orders;
 		
 		// Iterate over each received Belief
+		ArrayList<MapEntry<AccountKey, SignedData<Order>>> changed = new ArrayList<>();
 		for (Belief belief : beliefs) {
 			if (belief == null) continue; // ignore null beliefs, might happen if invalidated
 			if (belief.equals(this)) continue; // ignore an identical belief. Nothing to update.
 			BlobMap<AccountKey, SignedData<Order>> bOrders = belief.orders;
 			
-			// Iterate over each Peer's ordering convevey in this Belief
-			long bcount=bOrders.count();
-			for (long i=0; i<bcount; i++) {
-				MapEntry<AccountKey,SignedData<Order>> be=bOrders.entryAt(i);
+			// Get the Orders in this Belief that differ from those accumulated so far. Identical
+			// subtrees are skipped, so unchanged Orders are not examined.
+			changed.clear();
+			bOrders.accumulateChangedEntries(result, changed);
+			
+			// Iterate over each changed Peer's ordering conveyed in this Belief
+			for (MapEntry<AccountKey,SignedData<Order>> be : changed) {
 				ABlob key=be.getKey();
 				
 				// Skip merging own Key. We should always have our own latest Order
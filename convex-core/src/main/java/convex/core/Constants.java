@@ -75,6 +75,17 @@ public class Constants {
 	 */
 	public static final long DEFAULT_CLIENT_TIMEOUT = 6000;
 
+	/**
+	 * Default max juice for a query executed by a Peer
+	 */
+	public static final long DEFAULT_QUERY_JUICE = MAX_TRANSACTION_JUICE;
+
+	/**
+	 * Default time limit in milliseconds for a query executed by a Peer. Should be less than
+	 * DEFAULT_CLIENT_TIMEOUT, so that clients receive a TIMEOUT result rather than timing out themselves.
+	 */
+	public static final long DEFAULT_QUERY_TIMEOUT = 5000;
+
 	/**
 	 * Allowance for initial user / peer accounts
 	 */
@@ -169,6 +180,16 @@ public class Constants {
 	 */
 	public static final int SOCKET_SEND_BUFFER_SIZE = 65536;
 
+	/**
+	 * Number of Blocks between checkpoint States retained by a Peer after pruning history
+	 */
+	public static final long STATE_CHECKPOINT_INTERVAL = 1000;
+
+	/**
+	 * Default number of recent Blocks for which a Peer Server retains States and BlockResults
+	 */
+	public static final long DEFAULT_STATE_HISTORY = 10000;
+
 	/**
 	 * Delay before rebroadcasting Belief if not in consensus
 	 */
@@ -202,6 +223,11 @@ public class Constants {
 	// TODO: Should ultimately be true for production usage
 	public static final boolean OPT_STATIC = false;
 
+	/**
+	 * Maximum number of compiled ops held in the shared compile cache
+	 */
+	public static final int COMPILE_CACHE_SIZE = 4096;
+
 	/**
 	 * Char to represent bad Unicode characters in printing
 	 */
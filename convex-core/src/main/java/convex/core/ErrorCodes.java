@@ -191,5 +191,15 @@ public class ErrorCodes {
 	 */
 	public static final Keyword FORMAT = Keyword.create("FORMAT");
 
+	/**
+	 * ErrorCode for a request rejected because the Peer is overloaded. The request may be retried later.
+	 */
+	public static final Keyword LOAD = Keyword.create("LOAD");
+
+	/**
+	 * ErrorCode for a request that did not complete within the allowed time.
+	 */
+	public static final Keyword TIMEOUT = Keyword.create("TIMEOUT");
+
 
 }
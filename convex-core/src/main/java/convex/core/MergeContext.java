@@ -3,13 +3,18 @@ package convex.core;
 import convex.core.crypto.AKeyPair;
 import convex.core.data.ACell;
 import convex.core.data.AccountKey;
+import convex.core.data.BlobMap;
 import convex.core.data.SignedData;
+import convex.core.util.Utils;
 
 /**
  * Class representing the context to be used for a Belief merge/update function. This
  * context must be created by a Peer to perform a valid Belief merge. It can be safely
  * discarded after use.
  * 
+ * A MergeContext is used by a single merge on a single thread. It records the last Orders known
+ * to be stable under a vote, so that the Peer can pass this on to its next merge.
+ * 
  * SECURITY: contains a hot key pair! We need this to sign new belief updates
  * including any chains we want to communicate. Don't allow this to leak
  * anywhere!
@@ -22,6 +27,12 @@ public class MergeContext {
 	private final AKeyPair keyPair;
 	private final long timestamp;
 
+	/**
+	 * Orders for which a vote with stableState is known to produce the same Orders, or null if unknown
+	 */
+	private BlobMap<AccountKey, SignedData<Order>> stableOrders = null;
+	private State stableState = null;
+
 	private MergeContext(AKeyPair peerKeyPair, long mergeTimestamp, State consensusState) {
 		this.state = consensusState;
 		this.publicKey = peerKeyPair.getAccountKey();
@@ -73,7 +84,45 @@ public class MergeContext {
 	 * @return Updated MergeContext
 	 */
 	public MergeContext withTimestamp(long newTimestamp) {
-		return new MergeContext(keyPair, newTimestamp, state);
+		MergeContext mc = new MergeContext(keyPair, newTimestamp, state);
+		mc.setStable(stableOrders, stableState);
+		return mc;
+	}
+
+	/**
+	 * Records that a vote on the given Orders with the given Consensus State produces the same Orders
+	 * @param orders Stable Orders
+	 * @param votingState Consensus State used for the vote
+	 */
+	public void setStable(BlobMap<AccountKey, SignedData<Order>> orders, State votingState) {
+		this.stableOrders = orders;
+		this.stableState = votingState;
+	}
+
+	/**
+	 * Checks if a vote on the given Orders is known to produce the same Orders with the Consensus
+	 * State of this merge, in which case the vote can be skipped
+	 * @param orders Orders to check
+	 * @return true if known stable, false otherwise
+	 */
+	public boolean isStable(BlobMap<AccountKey, SignedData<Order>> orders) {
+		return (stableOrders != null) && Utils.equals(stableState, state) && Utils.equals(stableOrders, orders);
+	}
+
+	/**
+	 * Gets the Orders last recorded as stable
+	 * @return Stable Orders, or null if unknown
+	 */
+	public BlobMap<AccountKey, SignedData<Order>> getStableOrders() {
+		return stableOrders;
+	}
+
+	/**
+	 * Gets the Consensus State for which the stable Orders were recorded
+	 * @return Consensus State, or null if unknown
+	 */
+	public State getStableState() {
+		return stableState;
 	}
 
 	/**
@@ -17,13 +17,16 @@ import convex.core.data.Maps;
 import convex.core.data.PeerStatus;
 import convex.core.data.Ref;
 import convex.core.data.SignedData;
+import convex.core.data.VectorLeaf;
 import convex.core.data.Vectors;
 import convex.core.data.prim.CVMLong;
 import convex.core.exceptions.BadSignatureException;
 import convex.core.exceptions.InvalidDataException;
+import convex.core.exceptions.MissingDataException;
 import convex.core.init.Init;
 import convex.core.lang.AOp;
 import convex.core.lang.Context;
+import convex.core.lang.RT;
 import convex.core.store.AStore;
 import convex.core.store.Stores;
 import convex.core.transactions.ATransaction;
@@ -71,23 +74,58 @@ public class Peer {
 	private final long timestamp;
 
 	/**
-	 * Vector of states
+	 * Vector of retained states, starting with the state after historyStart blocks
 	 */
 	private final AVector<State> states;
 
 	/**
-	 * Vector of results
+	 * Vector of retained results, starting with the result of block historyStart
 	 */
 	private final AVector<BlockResult> blockResults;
 
+	/**
+	 * Block index of the first retained state. Earlier states have been pruned.
+	 */
+	private final long historyStart;
+
+	/**
+	 * Hashes of checkpoint states, one for every STATE_CHECKPOINT_INTERVAL blocks, starting with the genesis state.
+	 * Retained after pruning for historical queries. Only the hashes are retained, so memory and store use
+	 * stay bounded: checkpoint states are available only while they can be fetched from the store.
+	 */
+	private final AVector<Hash> checkpoints;
+
+	/**
+	 * Genesis state, always retained so that new Peers can sync with the network
+	 */
+	private final State genesis;
+
+	/**
+	 * Orders last known to be stable under a vote with stableState, passed to the next Belief merge
+	 * so that it can skip voting if nothing has changed. Not part of the Peer data.
+	 */
+	private final BlobMap<AccountKey, SignedData<Order>> stableOrders;
+	private final State stableState;
+
+	private Peer(AKeyPair kp, SignedData<Belief> belief, AVector<State> states, AVector<BlockResult> results,
+			long historyStart, AVector<Hash> checkpoints, State genesis, long timeStamp) {
+		this(kp, belief, states, results, historyStart, checkpoints, genesis, timeStamp, null, null);
+	}
+
 	private Peer(AKeyPair kp, SignedData<Belief> belief, AVector<State> states, AVector<BlockResult> results,
-			long timeStamp) {
+			long historyStart, AVector<Hash> checkpoints, State genesis, long timeStamp,
+			BlobMap<AccountKey, SignedData<Order>> stableOrders, State stableState) {
 		this.keyPair = kp;
 		this.peerKey = kp.getAccountKey();
 		this.belief = belief;
 		this.states = states;
 		this.blockResults = results;
+		this.historyStart = historyStart;
+		this.checkpoints = checkpoints;
+		this.genesis = genesis;
 		this.timestamp = timeStamp;
+		this.stableOrders = stableOrders;
+		this.stableState = stableState;
 	}
 
 	/**
@@ -101,8 +139,39 @@ public class Peer {
 		SignedData<Belief> belief=(SignedData<Belief>) peerData.get(Keywords.BELIEF);
 		AVector<BlockResult> results=(AVector<BlockResult>) peerData.get(Keywords.RESULTS);
 		AVector<State> states=(AVector<State>) peerData.get(Keywords.STATES);
+		CVMLong start=(CVMLong) peerData.get(Keywords.START);
+		AVector<ACell> checkpointData=(AVector<ACell>) peerData.get(Keywords.CHECKPOINTS);
+		State genesis=(State) peerData.get(Keywords.GENESIS);
+		long historyStart=(start==null)?0:start.longValue();
+		if (genesis==null) {
+			// data from before genesis was stored separately
+			genesis=(checkpointData==null)?states.get(0):(State)checkpointData.get(0);
+		}
+		AVector<Hash> checkpoints=(checkpointData==null)?createCheckpoints(states):toCheckpointHashes(checkpointData);
 		long timestamp=belief.getValue().getTimestamp();
-		return new Peer(keyPair,belief,states,results,timestamp);
+		return new Peer(keyPair,belief,states,results,historyStart,checkpoints,genesis,timestamp);
+	}
+
+	private static AVector<Hash> createCheckpoints(AVector<State> states) {
+		AVector<Hash> checkpoints=Vectors.empty();
+		for (long i=0; i<states.count(); i+=Constants.STATE_CHECKPOINT_INTERVAL) {
+			checkpoints=checkpoints.append(states.get(i).getHash());
+		}
+		return checkpoints;
+	}
+
+	/**
+	 * Converts checkpoint data to checkpoint hashes. Hashes are read back from the store as Blobs,
+	 * and older data may contain checkpoint States.
+	 */
+	private static AVector<Hash> toCheckpointHashes(AVector<ACell> checkpointData) {
+		AVector<Hash> checkpoints=Vectors.empty();
+		long n=checkpointData.count();
+		for (long i=0; i<n; i++) {
+			ACell c=checkpointData.get(i);
+			checkpoints=checkpoints.append((c instanceof State)?c.getHash():RT.ensureHash(c));
+		}
+		return checkpoints;
 	}
 
 	/**
@@ -113,7 +182,10 @@ public class Peer {
 		return Maps.of(
 			Keywords.BELIEF,belief,
 			Keywords.RESULTS,blockResults,
-			Keywords.STATES,states
+			Keywords.STATES,states,
+			Keywords.START,CVMLong.create(historyStart),
+			Keywords.CHECKPOINTS,checkpoints,
+			Keywords.GENESIS,genesis
 		);
 	}
 
@@ -138,7 +210,7 @@ public class Peer {
 			throw new Error("Belief not correctly persisted! "+sb.getHash());
 		}
 
-		return new Peer(peerKP, sb, states, Vectors.empty(), initialState.getTimeStamp().longValue());
+		return new Peer(peerKP, sb, states, Vectors.empty(), 0, Vectors.of(initialState.getHash()), initialState, initialState.getTimeStamp().longValue());
 	}
 	
 	/**
@@ -158,6 +230,61 @@ public class Peer {
 		}
 	}
 
+	/**
+	 * Creates a Peer from snapshot data exported by another Peer with {@link #getSnapshotData()}.
+	 * The new Peer starts at the executed point of the snapshot, without executing earlier Blocks,
+	 * and merges the snapshot Belief to obtain Orders from the network. If the snapshot was exported
+	 * by a Peer with the same key, that Peer's Order is retained.
+	 * 
+	 * SECURITY: The snapshot State is trusted, so the snapshot must come from a trusted source or
+	 * be checked against a known hash.
+	 * 
+	 * @param peerKP Peer KeyPair
+	 * @param snapshot Snapshot data vector
+	 * @return New Peer instance
+	 * @throws InvalidDataException If the snapshot data is invalid
+	 */
+	@SuppressWarnings("unchecked")
+	public static Peer fromSnapshot(AKeyPair peerKP, AVector<ACell> snapshot) throws InvalidDataException {
+		if ((snapshot==null)||(snapshot.count()!=4)) throw new InvalidDataException("Bad snapshot data",snapshot);
+		try {
+			SignedData<Belief> remoteBelief=(SignedData<Belief>) snapshot.get(0);
+			long executedPoint=((CVMLong) snapshot.get(1)).longValue();
+			State state=(State) snapshot.get(2);
+			State genesis=(State) snapshot.get(3);
+			if (executedPoint<0) throw new InvalidDataException("Negative executed point in snapshot",snapshot);
+
+			// Keep this Peer's own Order if the snapshot has one, since merges never update it
+			Belief belief = remoteBelief.getValue();
+			SignedData<Order> ownOrder = belief.getOrders().get(peerKP.getAccountKey());
+			if ((ownOrder==null)||!ownOrder.checkSignature()) belief = Belief.createSingleOrder(peerKP);
+			SignedData<Belief> sb = peerKP.signData(belief);
+			AVector<State> states=Vectors.of(state);
+			AVector<Hash> checkpoints=Vectors.of(genesis.getHash());
+			ACell.createPersisted(sb);
+			ACell.createPersisted(states);
+			ACell.createPersisted(genesis);
+
+			Peer peer=new Peer(peerKP, sb, states, Vectors.empty(), executedPoint, checkpoints, genesis, state.getTimeStamp().longValue());
+			return peer.mergeBeliefs(remoteBelief.getValue());
+		} catch (ClassCastException | NullPointerException e) {
+			throw new InvalidDataException("Bad snapshot data: "+e.getMessage(),snapshot);
+		} catch (BadSignatureException e) {
+			throw new InvalidDataException("Bad signature in snapshot Belief",snapshot);
+		}
+	}
+
+	/**
+	 * Gets snapshot data for this Peer, from which another Peer can be created with
+	 * {@link #fromSnapshot(AKeyPair, AVector)}. The snapshot contains the signed Belief,
+	 * executed point, consensus State and Genesis State.
+	 * 
+	 * @return Snapshot data vector
+	 */
+	public AVector<ACell> getSnapshotData() {
+		return Vectors.of(belief, CVMLong.create(getExecutedPoint()), getConsensusState(), genesis);
+	}
+
 	/**
 	 * Restores a Peer from the Etch database specified in Config
 	 * @param store Store to restore from
@@ -226,7 +353,7 @@ public class Peer {
 	 */
 	public Peer updateTimestamp(long newTimestamp) {
 		if (newTimestamp < timestamp) return this;
-		return new Peer(keyPair, belief, states, blockResults, timestamp);
+		return new Peer(keyPair, belief, states, blockResults, historyStart, checkpoints, genesis, timestamp, stableOrders, stableState);
 	}
 
 	/**
@@ -237,8 +364,21 @@ public class Peer {
 	 * @param address Address to use for query execution. If null, core address will be used
 	 * @return The Context containing the query results. Will be NOBODY error if address / account does not exist
 	 */
-	@SuppressWarnings("unchecked")
 	public <T extends ACell> Context<T> executeQuery(ACell form, Address address) {
+		return executeQuery(form,address,Constants.MAX_TRANSACTION_JUICE);
+	}
+
+	/**
+	 * Compiles and executes a query on the current consensus state of this Peer, with a juice limit.
+	 *
+	 * @param <T> Type of result
+	 * @param form Form to compile and execute.
+	 * @param address Address to use for query execution. If null, core address will be used
+	 * @param juiceLimit Maximum juice available to the query
+	 * @return The Context containing the query results. Will be JUICE error if the juice limit is exceeded
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends ACell> Context<T> executeQuery(ACell form, Address address, long juiceLimit) {
 		State state=getConsensusState();
 
 		if (address==null) {
@@ -246,7 +386,7 @@ public class Peer {
 			//return  Context.createFake(state).withError(ErrorCodes.NOBODY,"Null Address provided for query");
 		}
 
-		Context<?> ctx= Context.createFake(state, address);
+		Context<?> ctx= Context.createFake(state, address, juiceLimit);
 
 		if (state.getAccount(address)==null) {
 			return ctx.withError(ErrorCodes.NOBODY,"Account does not exist for query: "+address);
@@ -360,7 +500,9 @@ public class Peer {
 	}
 
 	/**
-	 * Gets the current consensus state for this chain
+	 * Gets the current consensus state for this chain. This is the State after all Blocks
+	 * up to the executed point, which may lag behind the consensus point if Blocks are
+	 * executed asynchronously.
 	 *
 	 * @return Consensus state for this chain (initial state if no block consensus)
 	 */
@@ -370,7 +512,8 @@ public class Peer {
 
 	/**
 	 * Merges a set of new Beliefs into this Peer's belief. Beliefs may be null, in
-	 * which case they are ignored.
+	 * which case they are ignored. Any newly confirmed Blocks are executed, so
+	 * that the executed point of the resulting Peer equals its consensus point.
 	 *
 	 * @param beliefs An array of Beliefs. May contain nulls, which will be ignored.
 	 * @return Updated Peer after Belief Merge
@@ -379,8 +522,24 @@ public class Peer {
 	 *
 	 */
 	public Peer mergeBeliefs(Belief... beliefs) throws BadSignatureException, InvalidDataException {
+		return mergeBeliefsDeferred(beliefs).updateState();
+	}
+
+	/**
+	 * Merges a set of new Beliefs into this Peer's belief without executing any newly
+	 * confirmed Blocks. The consensus point may advance beyond the executed point, in
+	 * which case Blocks should subsequently be executed with {@link #updateState()} or
+	 * {@link #applyBlockResult(BlockResult)}.
+	 *
+	 * @param beliefs An array of Beliefs. May contain nulls, which will be ignored.
+	 * @return Updated Peer after Belief Merge
+	 * @throws InvalidDataException if 
+	 * @throws BadSignatureException IF a Signature validation fails
+	 */
+	public Peer mergeBeliefsDeferred(Belief... beliefs) throws BadSignatureException, InvalidDataException {
 		Belief belief = getBelief();
 		MergeContext mc = MergeContext.create(keyPair, timestamp, getConsensusState());
+		mc.setStable(stableOrders, stableState);
 		Belief newBelief = belief.merge(mc, beliefs);
 
 		long ocp=getConsensusPoint();
@@ -393,38 +552,103 @@ public class Peer {
 
 		}
 
-		return updateConsensus(newBelief);
+		return updateBelief(newBelief, mc);
 	}
 
 	/**
-	 * Update this Peer with Consensus State for an updated Belief
+	 * Update this Peer with a new Belief. Does not execute any Blocks.
 	 *
 	 * @param newBelief
-	 * @return
-	 * @throws BadSignatureException 
+	 * @return Updated Peer
 	 */
-	private Peer updateConsensus(Belief newBelief) {
+	private Peer updateBelief(Belief newBelief) {
 		if (belief.getValue() == newBelief) return this;
-		Order myOrder = newBelief.getOrder(peerKey); // this peer's chain from new belief
-		long consensusPoint = myOrder.getConsensusPoint();
-		long stateIndex = states.count() - 1; // index of last state
-		AVector<SignedData<Block>> blocks = myOrder.getBlocks();
+		SignedData<Belief> sb = keyPair.signData(newBelief);
+		return new Peer(keyPair, sb, states, blockResults, historyStart, checkpoints, genesis, timestamp, stableOrders, stableState);
+	}
+
+	/**
+	 * Update this Peer with a new Belief from a merge, retaining any stable vote recorded in the MergeContext.
+	 * Does not execute any Blocks.
+	 *
+	 * @param newBelief
+	 * @param mc MergeContext used to produce the Belief
+	 * @return Updated Peer
+	 */
+	private Peer updateBelief(Belief newBelief, MergeContext mc) {
+		SignedData<Belief> sb = (belief.getValue() == newBelief) ? belief : keyPair.signData(newBelief);
+		BlobMap<AccountKey, SignedData<Order>> newStableOrders = mc.getStableOrders();
+		State newStableState = mc.getStableState();
+		if ((sb == belief) && (newStableOrders == stableOrders) && (newStableState == stableState)) return this;
+		return new Peer(keyPair, sb, states, blockResults, historyStart, checkpoints, genesis, timestamp, newStableOrders, newStableState);
+	}
+
+	/**
+	 * Executes all Blocks between the executed point and the consensus point of this Peer.
+	 *
+	 * @return Updated Peer, with executed point equal to consensus point
+	 */
+	public Peer updateState() {
+		long consensusPoint = getConsensusPoint();
+		long stateIndex = getExecutedPoint(); // block index of last state
+		if (stateIndex >= consensusPoint) return this;
+		AVector<SignedData<Block>> blocks = getPeerOrder().getBlocks();
 
 		// need to advance states
-		AVector<State> newStates = this.states;
-		AVector<BlockResult> newResults = this.blockResults;
+		Peer result = this;
 		while (stateIndex < consensusPoint) { // add states until last state is at consensus point
-			State s = newStates.get(stateIndex);
+			State s = result.getConsensusState();
 			SignedData<Block> block = blocks.get(stateIndex);
-			
-			// TODO: Block signature validation here?
 			BlockResult br = s.applyBlock(block.getValue());
-			newStates = newStates.append(br.getState());
-			newResults = newResults.append(br);
+			result = result.applyBlockResult(br);
 			stateIndex++;
 		}
-		SignedData<Belief> sb = keyPair.signData(newBelief);
-		return new Peer(keyPair, sb, newStates, newResults, timestamp);
+		return result;
+	}
+
+	/**
+	 * Advances the executed point of this Peer by one Block, given the result of executing
+	 * the Block at the current executed point. Blocks before the consensus point cannot change, so the
+	 * result may be computed on another thread from the State at the executed point.
+	 *
+	 * @param br BlockResult for the Block at the current executed point
+	 * @return Updated Peer
+	 */
+	public Peer applyBlockResult(BlockResult br) {
+		if (getExecutedPoint() >= getConsensusPoint()) {
+			throw new IllegalStateException("No confirmed Block to apply result to");
+		}
+		State newState = br.getState();
+		AVector<State> newStates = states.append(newState);
+		AVector<BlockResult> newResults = blockResults.append(br);
+		AVector<Hash> newCheckpoints = checkpoints;
+		if ((getExecutedPoint() + 1) % Constants.STATE_CHECKPOINT_INTERVAL == 0) {
+			newCheckpoints = newCheckpoints.append(newState.getHash());
+		}
+		return new Peer(keyPair, belief, newStates, newResults, historyStart, newCheckpoints, genesis, timestamp, stableOrders, stableState);
+	}
+
+	/**
+	 * Prunes the state history of this Peer, retaining at least the given number of
+	 * recent Blocks. The latest state and checkpoint states are always retained.
+	 *
+	 * History is dropped in whole vector chunks, so that the retained history shares its
+	 * existing chunks rather than being rebuilt. Up to one chunk of history beyond the given
+	 * number of Blocks may therefore be retained.
+	 *
+	 * @param retain Number of recent Blocks for which states and results are retained
+	 * @return Updated Peer
+	 */
+	public Peer pruneHistory(long retain) {
+		if (retain < 0) throw new IllegalArgumentException("Negative history retention: " + retain);
+		long n = blockResults.count();
+		if (n <= retain) return this;
+		long drop = n - retain;
+		drop -= drop % VectorLeaf.MAX_SIZE; // chunk aligned, see VectorTree.subVector
+		if (drop == 0) return this;
+		AVector<State> newStates = states.slice(drop, states.count());
+		AVector<BlockResult> newResults = blockResults.slice(drop, n);
+		return new Peer(keyPair, belief, newStates, newResults, historyStart + drop, checkpoints, genesis, timestamp, stableOrders, stableState);
 	}
 
 	/**
@@ -445,12 +669,17 @@ public class Peer {
 		AVector<BlockResult> newResults = this.blockResults;
 		newResults=ACell.createPersisted(newResults).getValue();
 
-		return new Peer(this.keyPair, sb, newStates, newResults, this.timestamp);
+		// Persist checkpoint hashes and genesis state
+		AVector<Hash> newCheckpoints = this.checkpoints;
+		newCheckpoints=ACell.createPersisted(newCheckpoints).getValue();
+		State newGenesis=ACell.createPersisted(this.genesis).getValue();
+
+		return new Peer(this.keyPair, sb, newStates, newResults, historyStart, newCheckpoints, newGenesis, this.timestamp, stableOrders, stableState);
 	}
 
 	/**
-	 * Gets the vector of States maintained by this Peer, starting from the
-	 * Genesis state (index 0).
+	 * Gets the vector of States retained by this Peer. The first State is the state after
+	 * {@link #getHistoryStart()} Blocks (the Genesis state if no history has been pruned).
 	 * 
 	 * @return Vector of states
 	 */
@@ -458,23 +687,63 @@ public class Peer {
 		return states;
 	}
 
+	/**
+	 * Gets the Block index of the first State retained by this Peer. Earlier States and
+	 * BlockResults have been pruned, except for checkpoints.
+	 * 
+	 * @return Block index of first retained State
+	 */
+	public long getHistoryStart() {
+		return historyStart;
+	}
+
+	/**
+	 * Gets the checkpoint State hashes of this Peer. Checkpoint 0 is the Genesis state, followed by the
+	 * states after each multiple of STATE_CHECKPOINT_INTERVAL Blocks executed by this Peer. A Peer
+	 * created from a snapshot has no checkpoints before the snapshot.
+	 * 
+	 * @return Vector of checkpoint state hashes
+	 */
+	public AVector<Hash> getCheckpoints() {
+		return checkpoints;
+	}
+
+	/**
+	 * Gets a checkpoint State of this Peer.
+	 * 
+	 * @param i Index of checkpoint
+	 * @return Checkpoint State, or null if not available in the current store
+	 */
+	public State getCheckpointState(long i) {
+		if (i == 0) return genesis;
+		try {
+			Ref<State> ref = Stores.current().refForHash(checkpoints.get(i));
+			return (ref == null) ? null : ref.getValue();
+		} catch (MissingDataException e) {
+			return null;
+		}
+	}
+
 	/**
 	 * Gets the result of a specific transaction
 	 * @param blockIndex Index of Block in Order
 	 * @param txIndex Index of transaction in block
-	 * @return Result from transaction
+	 * @return Result from transaction, or null if pruned
 	 */
 	public Result getResult(long blockIndex, long txIndex) {
-		return blockResults.get(blockIndex).getResult(txIndex);
+		BlockResult br=getBlockResult(blockIndex);
+		if (br==null) return null;
+		return br.getResult(txIndex);
 	}
 
 	/**
 	 * Gets the BlockResult of a specific block index
 	 * @param i Index of Block
-	 * @return BlockResult
+	 * @return BlockResult, or null if pruned
 	 */
 	public BlockResult getBlockResult(long i) {
-		return blockResults.get(i);
+		if (i < historyStart) return null;
+		return blockResults.get(i - historyStart);
 	}
 
 	/**
@@ -497,7 +766,7 @@ public class Peer {
 		
 		BlobMap<AccountKey, SignedData<Order>> newChains = orders.assoc(peerKey, newSignedOrder);
 		Belief newBelief=b.withOrders(newChains);
-		return updateConsensus(newBelief);
+		return updateBelief(newBelief);
 	}
 
 	/**
@@ -510,6 +779,16 @@ public class Peer {
 		return order.getConsensusPoint();
 	}
 
+	/**
+	 * Gets the Executed Point for this Peer, i.e. the number of confirmed Blocks that
+	 * have been applied to the consensus state. Never exceeds the Consensus Point, except
+	 * for a Peer created from a snapshot that has not yet caught up with consensus.
+	 * @return Executed Point value
+	 */
+	public long getExecutedPoint() {
+		return historyStart + states.count() - 1;
+	}
+
 	/**
 	 * Gets the current Order for this Peer
 	 *
@@ -534,12 +813,39 @@ public class Peer {
 	 * Returns State as-of timestamp.
 	 *
 	 * Timestamp doesn't need to be an exact match; a leftmost State will be returned - unless timestamp is too old.
+	 * 
+	 * If the timestamp is before the retained history, the closest checkpoint State is returned if it
+	 * can be fetched from the current store.
 	 *
 	 * @param timestamp Timestamp in milliseconds.
 	 * @return State or null.
 	 */
 	public State asOf(CVMLong timestamp) {
-		return Utils.stateAsOf(states, timestamp);
+		State s=Utils.stateAsOf(states, timestamp);
+		if (s!=null) return s;
+		return checkpointAsOf(timestamp.longValue());
+	}
+
+	/**
+	 * Finds the last checkpoint State with a timestamp not after the given timestamp
+	 * @param timestamp Timestamp in milliseconds.
+	 * @return State, or null if none or not available in the current store
+	 */
+	private State checkpointAsOf(long timestamp) {
+		long min = 0;
+		long max = checkpoints.count();
+		while (min < max) {
+			long mid = (min + max) / 2;
+			State s = getCheckpointState(mid);
+			if (s == null) return null;
+			if (s.getTimeStamp().longValue() <= timestamp) {
+				min = mid + 1;
+			} else {
+				max = mid;
+			}
+		}
+		if (min == 0) return null;
+		return getCheckpointState(min - 1);
 	}
 
 	/**
@@ -551,7 +857,12 @@ public class Peer {
 	 * @return Vector of States.
 	 */
 	public AVector<State> asOfRange(CVMLong timestamp, long interval, int count) {
-		return Utils.statesAsOfRange(states, timestamp, interval, count);
+		AVector<State> v = Vectors.empty();
+		for (int i = 0; i < count; i++) {
+			v = v.conj(asOf(timestamp));
+			timestamp = CVMLong.create(timestamp.longValue() + interval);
+		}
+		return v;
 	}
 
 	/**
@@ -559,6 +870,6 @@ public class Peer {
 	 * @return Network ID
 	 */
 	public Hash getNetworkID() {
-		return getStates().get(0).getHash();
+		return checkpoints.get(0);
 	}
 }
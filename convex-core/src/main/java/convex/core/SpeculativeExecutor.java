@@ -0,0 +1,242 @@
+package convex.core;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import convex.core.data.AVector;
+import convex.core.data.AccountStatus;
+import convex.core.data.Address;
+import convex.core.data.SignedData;
+import convex.core.data.prim.CVMLong;
+import convex.core.init.Init;
+import convex.core.lang.Context;
+import convex.core.store.AStore;
+import convex.core.store.Stores;
+import convex.core.transactions.ATransaction;
+import convex.core.transactions.Transfer;
+import convex.core.util.Utils;
+
+/**
+ * Optimistic parallel execution of the transactions in a Block.
+ *
+ * Runs of consecutive Transfers are executed speculatively on the common fork-join pool, all
+ * against the same base State. Results are then committed in Block order. A speculative result
+ * is used only if no earlier transaction in the run touched the accounts it depends on; otherwise
+ * the transaction is re-executed against the latest State. The resulting BlockResult is identical
+ * to sequential execution.
+ *
+ * Only Transfers are executed speculatively, since their read and write sets are known from the
+ * transaction itself: the origin and target accounts, plus global fees. Other transactions may run
+ * arbitrary CVM code, so they are executed sequentially.
+ */
+final class SpeculativeExecutor {
+
+	/**
+	 * Minimum number of transactions in a Block for speculative execution
+	 */
+	static final int MIN_TRANSACTIONS = 16;
+
+	/**
+	 * Minimum number of consecutive Transfers worth executing in parallel
+	 */
+	static final int MIN_RUN = 8;
+
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/**
+	 * Checks if speculative execution is worthwhile on this machine
+	 * @return true if there are multiple fork-join worker threads available
+	 */
+	static boolean isEnabled() {
+		return ForkJoinPool.getCommonPoolParallelism() > 1;
+	}
+
+	/**
+	 * Applies a vector of Block transactions to a State, with the same result as sequential execution.
+	 *
+	 * @param state State to which transactions are applied (after Block preparation)
+	 * @param transactions Transactions to apply
+	 * @return BlockResult
+	 */
+	static BlockResult applyTransactions(State state, AVector<SignedData<ATransaction>> transactions) {
+		int n = Utils.checkedInt(transactions.count());
+		Result[] results = new Result[n];
+		int i = 0;
+		while (i < n) {
+			int end = i;
+			while ((end < n) && isSpeculative(transactions.get(end))) end++;
+			if (end - i >= MIN_RUN) {
+				state = applyRun(state, transactions, i, end, results);
+				i = end;
+			} else {
+				// Short run, execute sequentially up to and including the next non-Transfer
+				int stop = Math.min(n, end + 1);
+				for (; i < stop; i++) {
+					state = state.applyBlockTransaction(transactions.get(i), i, results);
+				}
+			}
+		}
+		return BlockResult.create(state, results);
+	}
+
+	/**
+	 * Checks if a transaction has a read and write set known in advance.
+	 */
+	private static boolean isSpeculative(SignedData<ATransaction> signed) {
+		ATransaction t = signed.getValue();
+		if (!(t instanceof Transfer)) return false;
+
+		// Memory purchases by any transaction read the memory exchange account
+		if (Init.MEMORY_EXCHANGE_ADDRESS.equals(t.getOrigin())) return false;
+		if (Init.MEMORY_EXCHANGE_ADDRESS.equals(((Transfer) t).getTarget())) return false;
+		return true;
+	}
+
+	/**
+	 * Result of executing a transaction against the base State of a run
+	 */
+	private static final class Speculation {
+		final Context<?> ctx;
+		final long memoryDelta;
+
+		Speculation(Context<?> ctx, long memoryDelta) {
+			this.ctx = ctx;
+			this.memoryDelta = memoryDelta;
+		}
+	}
+
+	/**
+	 * Applies a run of Transfers, executing them speculatively in parallel then committing in order.
+	 */
+	private static State applyRun(State base, AVector<SignedData<ATransaction>> transactions, int start, int end,
+			Result[] results) {
+		Speculation[] specs = speculate(base, transactions, start, end);
+
+		State state = base;
+		HashSet<Address> touched = new HashSet<>();
+		boolean stale = false; // set if base State is no longer valid for remaining speculations
+		for (int i = start; i < end; i++) {
+			SignedData<ATransaction> signed = transactions.get(i);
+			Transfer t = (Transfer) signed.getValue();
+			Address origin = t.getOrigin();
+			Address target = t.getTarget();
+
+			Speculation sp = specs[i - start];
+			if ((sp != null) && !stale && !touched.contains(origin) && !touched.contains(target)) {
+				State committed = commitAccounts(state, sp.ctx.getState(), origin, target);
+				if ((committed.getMemorySize() - state.getMemorySize()) == sp.memoryDelta) {
+					results[i] = Result.fromContext(CVMLong.create(i), sp.ctx);
+					state = commitFees(base, committed, sp.ctx.getState());
+					touched.add(origin);
+					touched.add(target);
+					continue;
+				}
+			}
+
+			// Conflict, re-execute against latest State
+			State next = state.applyBlockTransaction(signed, i, results);
+			if (!isLocal(state, next, origin, target)) stale = true;
+			state = next;
+			touched.add(origin);
+			touched.add(target);
+		}
+		return state;
+	}
+
+	/**
+	 * Executes a run of transactions in parallel against the same base State.
+	 *
+	 * @return Array of Speculations, with null for any transaction that must be executed sequentially
+	 */
+	private static Speculation[] speculate(State base, AVector<SignedData<ATransaction>> transactions, int start,
+			int end) {
+		int m = end - start;
+		Speculation[] specs = new Speculation[m];
+		AStore store = Stores.current();
+		long baseMemory = base.getMemorySize();
+
+		int chunks = Math.min(m, ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD);
+		ArrayList<Callable<Void>> tasks = new ArrayList<>(chunks);
+		for (int c = 0; c < chunks; c++) {
+			int from = (int) ((long) m * c / chunks);
+			int to = (int) ((long) m * (c + 1) / chunks);
+			tasks.add(() -> {
+				AStore temp = Stores.current();
+				try {
+					Stores.setCurrent(store);
+					for (int j = from; j < to; j++) {
+						specs[j] = speculate(base, transactions.get(start + j), baseMemory);
+					}
+				} finally {
+					Stores.setCurrent(temp);
+				}
+				return null;
+			});
+		}
+		ForkJoinPool.commonPool().invokeAll(tasks);
+		return specs;
+	}
+
+	private static Speculation speculate(State base, SignedData<ATransaction> signed, long baseMemory) {
+		try {
+			Transfer t = (Transfer) signed.getValue();
+			AccountStatus targetAccount = base.getAccount(t.getTarget());
+			if ((targetAccount != null) && targetAccount.isActor()) return null; // runs actor code
+
+			Context<?> ctx = base.applyTransaction(signed);
+			State s = ctx.getState();
+			if (!isLocal(base, s, t.getOrigin(), t.getTarget())) return null;
+			// Memory accounting excludes fees, which are added after memory use is computed
+			long memoryDelta = s.withGlobalFees(base.getGlobalFees()).getMemorySize() - baseMemory;
+			return new Speculation(ctx, memoryDelta);
+		} catch (Throwable e) {
+			// re-executed sequentially, which reports any error
+			return null;
+		}
+	}
+
+	/**
+	 * Checks that a State transition changed nothing except the given accounts and global fees.
+	 */
+	private static boolean isLocal(State before, State after, Address origin, Address target) {
+		if (!Utils.equals(before.getPeers(), after.getPeers())) return false;
+		if (!Utils.equals(before.getSchedule(), after.getSchedule())) return false;
+		if (!before.getGlobals().equals(after.getGlobals().assoc(State.GLOBAL_FEES, before.getGlobalFees()))) {
+			return false;
+		}
+		AVector<AccountStatus> accounts = after.getAccounts();
+		if (accounts.count() != before.getAccounts().count()) return false;
+		AVector<AccountStatus> expected = withAccount(before.getAccounts(), accounts, origin);
+		expected = withAccount(expected, accounts, target);
+		return expected.equals(accounts);
+	}
+
+	/**
+	 * Applies the account changes from a speculative State to the latest committed State.
+	 */
+	private static State commitAccounts(State state, State spec, Address origin, Address target) {
+		AVector<AccountStatus> accounts = withAccount(state.getAccounts(), spec.getAccounts(), origin);
+		accounts = withAccount(accounts, spec.getAccounts(), target);
+		return state.withAccounts(accounts);
+	}
+
+	/**
+	 * Adds the fees paid in a speculative State to the latest committed State.
+	 */
+	private static State commitFees(State base, State state, State spec) {
+		long fees = spec.getGlobalFees().longValue() - base.getGlobalFees().longValue();
+		if (fees == 0) return state;
+		return state.withGlobalFees(CVMLong.create(state.getGlobalFees().longValue() + fees));
+	}
+
+	private static AVector<AccountStatus> withAccount(AVector<AccountStatus> dest, AVector<AccountStatus> src,
+			Address address) {
+		long i = address.longValue();
+		if ((i < 0) || (i >= src.count())) return dest;
+		AccountStatus as = src.get(i);
+		if (dest.get(i) == as) return dest;
+		return dest.assoc(i, as);
+	}
+}
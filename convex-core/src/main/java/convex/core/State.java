@@ -7,6 +7,7 @@ import java.util.HashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import convex.core.crypto.BatchVerifier;
 import convex.core.data.ABlob;
 import convex.core.data.ACell;
 import convex.core.data.AMap;
@@ -274,6 +275,10 @@ public class State extends ARecord {
 	 */
 	public BlockResult applyBlock(Block block) {
 		Counters.applyBlock++;
+
+		// Check all transaction signatures together, results are cached for applyTransaction
+		BatchVerifier.verify(block);
+
 		State state = prepareBlock(block);
 		return state.applyTransactions(block);
 	}
@@ -375,44 +380,57 @@ public class State extends ARecord {
 	}
 
 	private BlockResult applyTransactions(Block block) {
+		AVector<SignedData<ATransaction>> transactions = block.getTransactions();
+		if ((transactions.count() >= SpeculativeExecutor.MIN_TRANSACTIONS) && SpeculativeExecutor.isEnabled()) {
+			return SpeculativeExecutor.applyTransactions(this, transactions);
+		}
+
 		State state = this;
 		int blockLength = block.length();
 		Result[] results = new Result[blockLength];
-
-		AVector<SignedData<ATransaction>> transactions = block.getTransactions();
 		for (int i = 0; i < blockLength; i++) {
-			// SECURITY: catch-all exception handler.
-			try {
-				// extract the signed transaction from the block
-				SignedData<? extends ATransaction> signed = transactions.get(i);
-				
-				// execute the transaction using the *latest* state (not necessarily "this")
-				Context<?> ctx = state.applyTransaction(signed);
-
-				// record results and state update
-				results[i] = Result.fromContext(CVMLong.create(i),ctx);
-				state = ctx.getState();
-			} catch (Throwable t) {
-				String msg= "Unexpected fatal exception applying transaction: "+t.toString();
-				results[i] = Result.create(CVMLong.create(i), Strings.create(msg),ErrorCodes.UNEXPECTED);
-				t.printStackTrace();
-				log.error(msg);
-			}
+			// execute the transaction using the *latest* state (not necessarily "this")
+			state = state.applyBlockTransaction(transactions.get(i), i, results);
 		}
 
 		// TODO: changes for complete block?
 		return BlockResult.create(state, results);
 	}
 
+	/**
+	 * Applies a signed transaction at a given index in a Block, recording the Result.
+	 *
+	 * @param signed Signed transaction
+	 * @param i Index of transaction in Block
+	 * @param results Array of Results for the Block
+	 * @return Updated State after transaction
+	 */
+	State applyBlockTransaction(SignedData<? extends ATransaction> signed, int i, Result[] results) {
+		// SECURITY: catch-all exception handler.
+		try {
+			Context<?> ctx = applyTransaction(signed);
+
+			// record results and state update
+			results[i] = Result.fromContext(CVMLong.create(i),ctx);
+			return ctx.getState();
+		} catch (Throwable t) {
+			String msg= "Unexpected fatal exception applying transaction: "+t.toString();
+			results[i] = Result.create(CVMLong.create(i), Strings.create(msg),ErrorCodes.UNEXPECTED);
+			t.printStackTrace();
+			log.error(msg);
+			return this;
+		}
+	}
 
 	/**
 	 * Applies a signed transaction to the State.
 	 *
-	 * SECURITY: Checks digital signature and correctness of account key
+	 * SECURITY: Checks digital signature and correctness of account key. Signature checks are cached,
+	 * so are cheap if the Block has already been verified with {@link BatchVerifier}.
 	 *
 	 * @return Context containing the updated chain State (may be exceptional)
 	 */
-	private <T extends ACell> Context<T> applyTransaction(SignedData<? extends ATransaction> signedTransaction) throws BadSignatureException {
+	<T extends ACell> Context<T> applyTransaction(SignedData<? extends ATransaction> signedTransaction) throws BadSignatureException {
 		// Extract transaction, performs signature check
 		ATransaction t=signedTransaction.getValue();
 		Address addr=t.getOrigin();
@@ -425,6 +443,9 @@ public class State extends ARecord {
 			if (!Utils.equals(key, signedTransaction.getAccountKey())) {
 				return Context.createFake(this).withError(ErrorCodes.SIGNATURE,"Signature not valid for Account: "+addr+" expected public key: "+key);
 			}
+			if (!signedTransaction.checkSignature()) {
+				return Context.createFake(this).withError(ErrorCodes.SIGNATURE,"Invalid signature for transaction from Account: "+addr);
+			}
 		}
 
 		Context<T> ctx=applyTransaction(t);
@@ -0,0 +1,115 @@
+package convex.core.crypto;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import convex.core.Block;
+import convex.core.data.AVector;
+import convex.core.data.SignedData;
+import convex.core.store.AStore;
+import convex.core.store.Stores;
+import convex.core.transactions.ATransaction;
+import convex.core.util.Utils;
+
+/**
+ * Static functionality for verifying the signatures of many SignedData values together.
+ *
+ * Signatures that have not yet been checked are verified in parallel chunks on the common
+ * fork-join pool. The result of each check is cached in the Ref of the SignedData (VERIFIED_MASK
+ * or BAD_MASK), so subsequent calls to SignedData.checkSignature() are effectively free.
+ */
+public class BatchVerifier {
+
+	/**
+	 * Minimum number of unchecked signatures to verify in parallel. Smaller batches are
+	 * verified on the calling thread.
+	 */
+	public static final int MIN_PARALLEL = 8;
+
+	/**
+	 * Minimum number of signatures verified by each parallel task
+	 */
+	private static final int CHUNK_SIZE = 4;
+
+	/**
+	 * Verifies the signatures of all transactions in a Block
+	 *
+	 * @param block Block to verify
+	 * @return Number of transactions with invalid signatures
+	 */
+	public static int verify(Block block) {
+		AVector<SignedData<ATransaction>> transactions = block.getTransactions();
+		int n = Utils.checkedInt(transactions.count());
+		ArrayList<SignedData<?>> signed = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			signed.add(transactions.get(i));
+		}
+		return verify(signed);
+	}
+
+	/**
+	 * Verifies the signatures of a collection of SignedData values. Values already checked
+	 * are not verified again.
+	 *
+	 * @param signed Collection of SignedData values
+	 * @return Number of values with invalid signatures
+	 */
+	public static int verify(Collection<? extends SignedData<?>> signed) {
+		ArrayList<SignedData<?>> unchecked = new ArrayList<>();
+		int bad = 0;
+		for (SignedData<?> sd : signed) {
+			if (!sd.isSignatureChecked()) {
+				unchecked.add(sd);
+			} else if (!sd.checkSignature()) {
+				bad++;
+			}
+		}
+
+		int n = unchecked.size();
+		int threads = ForkJoinPool.getCommonPoolParallelism();
+		if ((n < MIN_PARALLEL) || (threads <= 1)) {
+			return bad + verifyRange(unchecked, 0, n);
+		}
+
+		int chunks = Math.max(1, Math.min(threads, n / CHUNK_SIZE));
+		AStore store = Stores.current();
+		ArrayList<Callable<Integer>> tasks = new ArrayList<>(chunks);
+		for (int c = 0; c < chunks; c++) {
+			int from = (int) ((long) n * c / chunks);
+			int to = (int) ((long) n * (c + 1) / chunks);
+			tasks.add(() -> {
+				AStore temp = Stores.current();
+				try {
+					Stores.setCurrent(store);
+					return verifyRange(unchecked, from, to);
+				} finally {
+					Stores.setCurrent(temp);
+				}
+			});
+		}
+		try {
+			for (Future<Integer> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+				bad += f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw Utils.sneakyThrow(e);
+		} catch (ExecutionException e) {
+			throw Utils.sneakyThrow(e.getCause());
+		}
+		return bad;
+	}
+
+	private static int verifyRange(List<SignedData<?>> signed, int from, int to) {
+		int bad = 0;
+		for (int i = from; i < to; i++) {
+			if (!signed.get(i).checkSignature()) bad++;
+		}
+		return bad;
+	}
+}
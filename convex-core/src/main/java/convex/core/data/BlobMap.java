@@ -2,6 +2,7 @@ package convex.core.data;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
@@ -283,6 +284,60 @@ public class BlobMap<K extends ABlob, V extends ACell> extends ABlobMap<K, V> {
 		}
 	}
 
+	/**
+	 * Accumulates entries in this BlobMap that are not identically present in a base BlobMap.
+	 * 
+	 * Subtrees with the same hash in both maps are skipped without examining their entries, so
+	 * when the maps share most of their structure the cost is proportional to the size of the
+	 * difference rather than the size of the map.
+	 * 
+	 * @param base BlobMap to compare with. May be null, in which case all entries are accumulated.
+	 * @param dest Collection to which new or changed entries are added
+	 */
+	public void accumulateChangedEntries(BlobMap<K, V> base, Collection<MapEntry<K, V>> dest) {
+		if (this == base) return;
+		if (base == null) {
+			reduceEntries((acc, e) -> {
+				dest.add(e);
+				return acc;
+			}, null);
+			return;
+		}
+
+		if ((depth != base.depth) || (prefixLength != base.prefixLength) || !samePrefix(base)) {
+			// different tree structure, so compare entry by entry
+			reduceEntries((acc, e) -> {
+				if (!Utils.equals(e, base.getEntry(e.getKey()))) dest.add(e);
+				return acc;
+			}, null);
+			return;
+		}
+
+		if ((entry != null) && !Utils.equals(entry, base.entry)) dest.add(entry);
+		for (int digit = 0; digit < 16; digit++) {
+			int ci = Bits.indexForDigit(digit, mask);
+			if (ci < 0) continue;
+			Ref<BlobMap<K, V>> cref = children[ci];
+			int bi = Bits.indexForDigit(digit, base.mask);
+			if (bi >= 0) {
+				Ref<BlobMap<K, V>> bref = base.children[bi];
+				if ((cref == bref) || cref.getHash().equals(bref.getHash())) continue; // PERF: identical subtree
+				cref.getValue().accumulateChangedEntries(bref.getValue(), dest);
+			} else {
+				cref.getValue().accumulateChangedEntries(null, dest);
+			}
+		}
+	}
+
+	/**
+	 * Checks if this node has the same prefix as another node with the same depth and prefix length
+	 */
+	private boolean samePrefix(BlobMap<K, V> b) {
+		long pl = depth + prefixLength;
+		if (pl == 0) return true;
+		return getPrefix().hexMatchLength(b.getPrefix(), 0, pl) == pl;
+	}
+
 	@Override
 	public void forEach(BiConsumer<? super K, ? super V> action) {
 		if (entry != null) action.accept(entry.getKey(), entry.getValue());
@@ -15,6 +15,8 @@ public class Keywords {
 	public static final Keyword PEERS = Keyword.create("peers");
 	public static final Keyword BELIEF = Keyword.create("belief");
 	public static final Keyword STATES = Keyword.create("states");
+	public static final Keyword CHECKPOINTS = Keyword.create("checkpoints");
+	public static final Keyword GENESIS = Keyword.create("genesis");
 	public static final Keyword RESULTS = Keyword.create("results");
 	public static final Keyword PERSIST = Keyword.create("persist");
 	public static final Keyword POLL_DELAY = Keyword.create("poll-delay");
@@ -91,4 +93,11 @@ public class Keywords {
 	public static final Keyword TIMEOUT = Keyword.create("timeout");
 	public static final Keyword EVENT_HOOK = Keyword.create("event-hook");
 	public static final Keyword STATIC = Keyword.create("static");
+	public static final Keyword STATE_HISTORY = Keyword.create("state-history");
+	public static final Keyword SNAPSHOT = Keyword.create("snapshot");
+	public static final Keyword SNAPSHOT_HASH = Keyword.create("snapshot-hash");
+	public static final Keyword QUERY_THREADS = Keyword.create("query-threads");
+	public static final Keyword QUERY_JUICE = Keyword.create("query-juice");
+	public static final Keyword QUERY_TIMEOUT = Keyword.create("query-timeout");
+	public static final Keyword FLUSH_INTERVAL = Keyword.create("flush-interval");
 }
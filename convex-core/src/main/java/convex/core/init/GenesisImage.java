@@ -0,0 +1,189 @@
+package convex.core.init;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.Constants;
+import convex.core.State;
+import convex.core.data.ACell;
+import convex.core.data.AVector;
+import convex.core.data.AccountKey;
+import convex.core.data.AccountStatus;
+import convex.core.data.Address;
+import convex.core.data.BlobMaps;
+import convex.core.data.Hash;
+import convex.core.data.PeerStatus;
+import convex.core.data.Strings;
+import convex.core.data.Vectors;
+import convex.core.data.prim.CVMLong;
+import convex.core.lang.Core;
+import convex.core.store.Snapshot;
+import convex.core.util.Utils;
+
+/**
+ * Pre-built image of the genesis States, so that Init does not need to run library deployment
+ * through the CVM on every startup.
+ *
+ * The image is a Snapshot of the vector [fingerprint library-state genesis-state] where:
+ * <ul>
+ * <li>fingerprint is a hash of everything the States are built from: the core environment and
+ * metadata, initial globals and the source of all deployed libraries</li>
+ * <li>library-state is the key-independent State produced by Init.createLibraryState()</li>
+ * <li>genesis-state is the State produced by Init.createState(...) for a single placeholder key</li>
+ * </ul>
+ *
+ * The image is generated at build time with the Maven profile "genesis-image", or by running
+ * this class directly. If the image is missing, corrupt or its fingerprint does not match,
+ * Init falls back to building the States from source.
+ */
+public class GenesisImage {
+
+	private static final Logger log = LoggerFactory.getLogger(GenesisImage.class.getName());
+
+	/**
+	 * Path of the image resource
+	 */
+	public static final String RESOURCE = "convex/genesis.img";
+
+	/**
+	 * Version of the image layout. Must be incremented whenever the construction of genesis
+	 * accounts in Init changes.
+	 */
+	private static final long VERSION = 1;
+
+	/**
+	 * Placeholder key for the single-key genesis State in the image
+	 */
+	static final AccountKey IMAGE_KEY = AccountKey.dummy("1ce");
+
+	private static AVector<ACell> image = null;
+	private static boolean loaded = false;
+
+	/**
+	 * Gets the library State from the image
+	 * @return Library State, or null if the image is not available
+	 */
+	public static State getLibraryState() {
+		AVector<ACell> img = getImage();
+		if (img == null) return null;
+		return (State) img.get(1);
+	}
+
+	/**
+	 * Gets the genesis State for a single genesis key from the image
+	 * @param key Genesis key, used for both the genesis user and the first peer
+	 * @return Genesis State, or null if the image is not available
+	 */
+	public static State getGenesisState(AccountKey key) {
+		AVector<ACell> img = getImage();
+		if (img == null) return null;
+		State s = (State) img.get(2);
+		return withGenesisKey(s, key);
+	}
+
+	/**
+	 * Replaces the placeholder key in a single-key genesis State
+	 */
+	static State withGenesisKey(State s, AccountKey key) {
+		AVector<AccountStatus> accts = s.getAccounts();
+		for (Address a : new Address[] { Init.GENESIS_ADDRESS, Init.getGenesisPeerAddress(0) }) {
+			long i = a.longValue();
+			accts = accts.assoc(i, accts.get(i).withAccountKey(key));
+		}
+		PeerStatus ps = s.getPeers().get(IMAGE_KEY);
+		return s.withAccounts(accts).withPeers(BlobMaps.create(key, ps));
+	}
+
+	private static State withCoreLibrary(State s) {
+		AccountStatus as = s.getAccount(Init.CORE_ADDRESS);
+		as = as.withEnvironment(Core.ENVIRONMENT).withMetadata(Core.METADATA);
+		return s.putAccount(Init.CORE_ADDRESS, as);
+	}
+
+	private static synchronized AVector<ACell> getImage() {
+		if (!loaded) {
+			image = loadImage();
+			loaded = true;
+		}
+		return image;
+	}
+
+	private static AVector<ACell> loadImage() {
+		ClassLoader classLoader = ClassLoader.getSystemClassLoader();
+		try (InputStream in = classLoader.getResourceAsStream(RESOURCE)) {
+			if (in == null) {
+				log.info("No genesis image found, building genesis State from source");
+				return null;
+			}
+			AVector<ACell> img = Snapshot.read(in, null);
+			if (!computeFingerprint().equals(img.get(0))) {
+				log.warn("Genesis image is out of date, building genesis State from source");
+				return null;
+			}
+
+			// Share the core library instances, as when building from source
+			img = img.assoc(1, withCoreLibrary((State) img.get(1)));
+			img = img.assoc(2, withCoreLibrary((State) img.get(2)));
+			return img;
+		} catch (Throwable e) {
+			log.warn("Unable to load genesis image, building genesis State from source", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Computes the fingerprint of all inputs to the genesis States
+	 * @return Fingerprint hash
+	 * @throws IOException If a library source cannot be read
+	 */
+	static Hash computeFingerprint() throws IOException {
+		AVector<ACell> sources = Vectors.empty();
+		for (String resource : Init.STATIC_LIBRARIES) {
+			sources = sources.conj(Strings.create(Utils.readResourceAsString(resource)));
+		}
+		for (String resource : Init.STANDARD_LIBRARIES) {
+			sources = sources.conj(Strings.create(Utils.readResourceAsString(resource)));
+		}
+		sources = sources.conj(Strings.create(Utils.readResourceAsString(Init.CURRENCIES)));
+		AVector<ACell> inputs = Vectors.of(CVMLong.create(VERSION), Core.ENVIRONMENT, Core.METADATA,
+				Constants.INITIAL_GLOBALS, sources);
+		return inputs.getHash();
+	}
+
+	/**
+	 * Builds the genesis States from source and writes an image
+	 * @param out Output stream
+	 * @throws IOException If an IO error occurs
+	 */
+	public static void write(OutputStream out) throws IOException {
+		State library = Init.createLibraryState();
+		State genesis = Init.addStandardLibraries(Init.addGenesisAccounts(library, List.of(IMAGE_KEY)));
+		AVector<ACell> img = Vectors.of(computeFingerprint(), library, genesis);
+		Snapshot.write(img, out);
+	}
+
+	/**
+	 * Generates the genesis image at each of the given paths
+	 * @param args Output file paths
+	 * @throws IOException If an IO error occurs
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) args = new String[] { "src/main/resources/" + RESOURCE };
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		write(bos);
+		for (String arg : args) {
+			Path path = Path.of(arg);
+			if (path.getParent() != null) Files.createDirectories(path.getParent());
+			Files.write(path, bos.toByteArray());
+			log.info("Genesis image written to " + path);
+		}
+	}
+}
@@ -51,9 +51,48 @@ public class Init {
 	public static final Address GENESIS_ADDRESS = Address.create(11);
 
 
+	/**
+	 * Standard libraries deployed in the genesis State, in order of deployment
+	 */
+	static final String[] STANDARD_LIBRARIES = new String[] {
+			"convex/fungible.cvx",
+			"convex/trusted-oracle/actor.cvx",
+			"convex/trusted-oracle.cvx",
+			"convex/asset.cvx",
+			"torus/exchange.cvx",
+			"asset/nft/simple.cvx",
+			"asset/nft/tokens.cvx",
+			"asset/box/actor.cvx",
+			"asset/box.cvx",
+			"asset/multi-token.cvx",
+			"convex/play.cvx" };
+
+	/**
+	 * Static libraries deployed before any user accounts
+	 */
+	static final String[] STATIC_LIBRARIES = new String[] {
+			"convex/registry.cvx",
+			"convex/trust.cvx" };
+
+	/**
+	 * Table of currencies deployed in the genesis State
+	 */
+	static final String CURRENCIES = "torus/currencies.cvx";
+
 	public static State createBaseState(List<AccountKey> genesisKeys) {
+		State s = GenesisImage.getLibraryState();
+		if (s == null) s = createLibraryState();
+		return addGenesisAccounts(s, genesisKeys);
+	}
+
+	/**
+	 * Creates the State containing governance accounts, the core library and static libraries,
+	 * before any user or peer accounts are added. This is independent of the genesis keys.
+	 *
+	 * @return Library State
+	 */
+	static State createLibraryState() {
 		// accumulators for initial state maps
-		BlobMap<AccountKey, PeerStatus> peers = BlobMaps.empty();
 		AVector<AccountStatus> accts = Vectors.empty();
 
 		long supply = Constants.MAX_SUPPLY;
@@ -92,10 +131,6 @@ public class Init {
 			supply -= memoryCoins;
 		}
 
-		// Always have at least one user and one peer setup
-		int keyCount = genesisKeys.size();
-		assert(keyCount > 0);
-
 		// Core library at static address: CORE_ADDRESS
 		accts = addCoreLibrary(accts, CORE_ADDRESS);
 		// Core Account should now be fully initialised
@@ -105,13 +140,32 @@ public class Init {
 		AVector<ACell> globals = Constants.INITIAL_GLOBALS;
 
 		// Create the inital state
-		State s = State.create(accts, peers, globals, BlobMaps.empty());
+		State s = State.create(accts, BlobMaps.empty(), globals, BlobMaps.empty());
 
 		// Add the static defined libraries at addresses: TRUST_ADDRESS, REGISTRY_ADDRESS
 		s = createStaticLibraries(s, TRUST_ADDRESS, REGISTRY_ADDRESS);
 
-		// Reload accounts with the libraries
-		accts = s.getAccounts();
+		// Unallocated funds should now equal the remaining supply
+		if (Constants.MAX_SUPPLY - s.computeTotalFunds() != supply) throw new Error("Bad library state supply: " + supply);
+		return s;
+	}
+
+	/**
+	 * Adds user and peer accounts for the given genesis keys to a library State, allocating
+	 * all remaining supply.
+	 *
+	 * @param s Library State
+	 * @param genesisKeys Genesis keys
+	 * @return Base State
+	 */
+	static State addGenesisAccounts(State s, List<AccountKey> genesisKeys) {
+		BlobMap<AccountKey, PeerStatus> peers = BlobMaps.empty();
+		AVector<AccountStatus> accts = s.getAccounts();
+		long supply = Constants.MAX_SUPPLY - s.computeTotalFunds();
+
+		// Always have at least one user and one peer setup
+		int keyCount = genesisKeys.size();
+		assert(keyCount > 0);
 
 		// Set up initial user accounts
 		assert(accts.count() == GENESIS_ADDRESS.longValue());
@@ -175,8 +229,9 @@ public class Init {
 
 		// At this point we have a raw initial state with no user or peer accounts
 
-		s = doActorDeploy(s, "convex/registry.cvx");
-		s = doActorDeploy(s, "convex/trust.cvx");
+		for (String resource : STATIC_LIBRARIES) {
+			s = doActorDeploy(s, resource);
+		}
 
 		{ // Register core libraries now that registry exists
 			Context<?> ctx = Context.createFake(s, INIT_ADDRESS);
@@ -201,27 +256,31 @@ public class Init {
 	}
 
 	public static State createState(List<AccountKey> genesisKeys) {
-		try {
-			State s=createBaseState(genesisKeys);
+		if (genesisKeys.size() == 1) {
+			State s = GenesisImage.getGenesisState(genesisKeys.get(0));
+			if (s != null) return s;
+		}
+		return addStandardLibraries(createBaseState(genesisKeys));
+	}
 
+	/**
+	 * Deploys the standard libraries and currencies to a base State
+	 *
+	 * @param s Base State, with genesis accounts
+	 * @return Genesis State
+	 */
+	static State addStandardLibraries(State s) {
+		try {
 			// ============================================================
 			// Standard library deployment
-			s = doActorDeploy(s, "convex/fungible.cvx");
-			s = doActorDeploy(s, "convex/trusted-oracle/actor.cvx");
-			s = doActorDeploy(s, "convex/trusted-oracle.cvx");
-			s = doActorDeploy(s, "convex/asset.cvx");
-			s = doActorDeploy(s, "torus/exchange.cvx");
-			s = doActorDeploy(s, "asset/nft/simple.cvx");
-			s = doActorDeploy(s, "asset/nft/tokens.cvx");
-			s = doActorDeploy(s, "asset/box/actor.cvx");
-			s = doActorDeploy(s, "asset/box.cvx");
-			s = doActorDeploy(s, "asset/multi-token.cvx");
-			s = doActorDeploy(s, "convex/play.cvx");
+			for (String resource : STANDARD_LIBRARIES) {
+				s = doActorDeploy(s, resource);
+			}
 
 			{ // Deploy Currencies
 				@SuppressWarnings("unchecked")
 				AVector<AVector<ACell>> table = (AVector<AVector<ACell>>) Reader
-						.readResourceAsData("torus/currencies.cvx");
+						.readResourceAsData(CURRENCIES);
 				for (AVector<ACell> row : table) {
 					s = doCurrencyDeploy(s, row);
 				}
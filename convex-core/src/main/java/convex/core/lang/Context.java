@@ -1,5 +1,7 @@
 package convex.core.lang;
 
+import java.util.Arrays;
+
 import convex.core.Constants;
 import convex.core.ErrorCodes;
 import convex.core.State;
@@ -33,6 +35,7 @@ import convex.core.exceptions.TODOException;
 import convex.core.init.Init;
 import convex.core.lang.impl.AExceptional;
 import convex.core.lang.impl.ATrampoline;
+import convex.core.lang.impl.CompileCache;
 import convex.core.lang.impl.ErrorValue;
 import convex.core.lang.impl.HaltValue;
 import convex.core.lang.impl.RecurValue;
@@ -80,6 +83,11 @@ public class Context<T extends ACell> extends AObject {
 	private static final AExceptional DEFAULT_EXCEPTION = null;
 	private static final long DEFAULT_OFFER = 0L;
 	public static final AVector<ACell> EMPTY_BINDINGS=Vectors.empty();
+
+	/**
+	 * Shared cache of compiled ops for frequently evaluated forms
+	 */
+	private static final CompileCache COMPILE_CACHE=CompileCache.create(Constants.COMPILE_CACHE_SIZE);
 	// private static final Logger log=Logger.getLogger(Context.class.getName());
 
 	/*
@@ -93,7 +101,7 @@ public class Context<T extends ACell> extends AObject {
 	private T result;
 	private AExceptional exception;
 	private int depth;
-	private AVector<ACell> localBindings;
+	private Locals locals;
 	private ChainState chainState;
 
 	/**
@@ -132,6 +140,199 @@ public class Context<T extends ACell> extends AObject {
 		}
 	}
 
+	/**
+	 * Inner class mutable stack of local bindings, shared by a Context and any Contexts forked
+	 * from it. Bindings are pushed onto an array and popped by resetting the stack size, so let
+	 * forms and function calls do not allocate persistent vector nodes.
+	 *
+	 * The bindings visible in the current frame are the captured lexical environment (an immutable
+	 * vector, e.g. from a closure) followed by the stack entries from the frame base. Changes made
+	 * by set! are recorded in an undo log, so restoring to a mark reverts bindings exactly as if a
+	 * saved persistent vector had been restored.
+	 */
+	private static final class Locals {
+		private static final ACell[] EMPTY_STACK=new ACell[0];
+		private static final int[] EMPTY_INDEXES=new int[0];
+
+		private ACell[] stack=EMPTY_STACK;
+		private int size=0;
+
+		/**
+		 * Captured environment and stack base of the current frame
+		 */
+		private AVector<ACell> env;
+		private int base=0;
+
+		/**
+		 * Undo log for set!, with stack index (or -1-position in captured environment) and old value
+		 */
+		private int[] undoIndexes=EMPTY_INDEXES;
+		private ACell[] undoValues=EMPTY_STACK;
+		private int undoCount=0;
+
+		/**
+		 * Saved environments and bases of outer frames
+		 */
+		private ACell[] frameEnvs=EMPTY_STACK;
+		private int[] frameBases=EMPTY_INDEXES;
+		private int frameCount=0;
+
+		/**
+		 * Cached vector of current bindings, cleared on any change
+		 */
+		private AVector<ACell> snapshot;
+
+		private Locals(AVector<ACell> env) {
+			this.env=env;
+			this.snapshot=env;
+		}
+
+		private long count() {
+			return env.count()+(size-base);
+		}
+
+		private ACell get(long position) {
+			long ec=env.count();
+			if (position<ec) return env.get(position);
+			return stack[base+(int)(position-ec)];
+		}
+
+		private void push(ACell value) {
+			if (size==stack.length) stack=Arrays.copyOf(stack, Math.max(16, size*2));
+			stack[size++]=value;
+			snapshot=null;
+		}
+
+		private void set(long position, ACell value) {
+			if (undoCount==undoIndexes.length) {
+				int n=Math.max(8, undoCount*2);
+				undoIndexes=Arrays.copyOf(undoIndexes, n);
+				undoValues=Arrays.copyOf(undoValues, n);
+			}
+			long ec=env.count();
+			int index=(position<ec)?(int)(-1-position):(base+(int)(position-ec));
+			undoIndexes[undoCount]=index;
+			undoValues[undoCount]=get(position);
+			undoCount++;
+			setIndex(index,value);
+		}
+
+		private void setIndex(int index, ACell value) {
+			if (index<0) {
+				env=env.assoc(-1-index, value);
+			} else {
+				stack[index]=value;
+			}
+			snapshot=null;
+		}
+
+		private long mark() {
+			return (((long)undoCount)<<32)|size;
+		}
+
+		private void restore(long mark) {
+			int markUndo=(int)(mark>>>32);
+			while (undoCount>markUndo) {
+				undoCount--;
+				setIndex(undoIndexes[undoCount],undoValues[undoCount]);
+				undoValues[undoCount]=null;
+			}
+			truncate((int)mark);
+		}
+
+		private void truncate(int newSize) {
+			if (newSize==size) return;
+			Arrays.fill(stack, newSize, size, null);
+			size=newSize;
+			snapshot=null;
+		}
+
+		private long enterFrame(AVector<ACell> newEnv) {
+			long mark=mark();
+			if (frameCount==frameEnvs.length) {
+				int n=Math.max(8, frameCount*2);
+				frameEnvs=Arrays.copyOf(frameEnvs, n);
+				frameBases=Arrays.copyOf(frameBases, n);
+			}
+			frameEnvs[frameCount]=env;
+			frameBases[frameCount]=base;
+			frameCount++;
+			env=newEnv;
+			base=size;
+			snapshot=null;
+			return mark;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void exitFrame(long mark) {
+			frameCount--;
+			env=(AVector<ACell>) frameEnvs[frameCount];
+			base=frameBases[frameCount];
+			frameEnvs[frameCount]=null;
+
+			// Changes made in the exited frame don't need to be undone
+			int markUndo=(int)(mark>>>32);
+			Arrays.fill(undoValues, markUndo, undoCount, null);
+			undoCount=markUndo;
+			truncate((int)mark);
+			snapshot=null;
+		}
+
+		private AVector<ACell> toVector() {
+			AVector<ACell> result=snapshot;
+			if (result==null) {
+				result=env;
+				for (int i=base; i<size; i++) {
+					result=result.conj(stack[i]);
+				}
+				snapshot=result;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Inner class cache for dynamic environment lookups, shared by all Contexts derived from
+	 * the same initial Context (e.g. a single transaction or query).
+	 *
+	 * Entries are keyed by environment instance and Symbol. Environments are immutable, so any
+	 * def or undef produces a new environment instance and stale entries are never hit. Entries
+	 * resolved via the core account also record the core environment they were found in.
+	 *
+	 * Not thread safe: a cache must only be used by a single executing thread.
+	 */
+	private static final class LookupCache {
+		private static final int SIZE = 256; // must be a power of 2
+
+		private static final class Entry {
+			private final AHashMap<Symbol, ACell> env;
+			private final Symbol symbol;
+			private final AHashMap<Symbol, ACell> coreEnv; // null if found directly in env
+			private final MapEntry<Symbol, ACell> result;
+
+			private Entry(AHashMap<Symbol, ACell> env, Symbol symbol, AHashMap<Symbol, ACell> coreEnv, MapEntry<Symbol, ACell> result) {
+				this.env=env;
+				this.symbol=symbol;
+				this.coreEnv=coreEnv;
+				this.result=result;
+			}
+		}
+
+		private final Entry[] entries=new Entry[SIZE];
+
+		/**
+		 * Count of compile-time executions of code that may depend on State, i.e. expanders
+		 * resolved outside the core environment and unquoted code. Any compilation that
+		 * performs such an execution is not stored in the compile cache.
+		 */
+		private long dynamicCompiles=0;
+
+		private static int index(AHashMap<Symbol, ACell> env, Symbol sym) {
+			int h=System.identityHashCode(env)*31+sym.hashCode();
+			return (h^(h>>>16))&(SIZE-1);
+		}
+	}
+
 	/**
 	 * Inner class for less-frequently changing state related to Actor execution
 	 * Should save some allocation / GC on average, since it will change less
@@ -148,42 +349,73 @@ public class Context<T extends ACell> extends AObject {
 		private final long offer;
 
 		/**
-		 * Cached copy of the current environment. Avoid looking up via Address each time.
+		 * Cached copy of the current account and environment. Avoid looking up via Address each time.
 		 */
+		private final AccountStatus account;
 		private final AHashMap<Symbol, ACell> environment;
 		private final AHashMap<Symbol, AHashMap<ACell,ACell>> metadata;
 
-		private ChainState(State state, Address origin,Address caller, Address address,AHashMap<Symbol, ACell> environment, AHashMap<Symbol,AHashMap<ACell,ACell>> metadata, long offer) {
+		private final LookupCache lookupCache;
+
+		/**
+		 * Core account in this State, computed lazily
+		 */
+		private AccountStatus coreAccount;
+
+		private ChainState(State state, Address origin,Address caller, Address address,AccountStatus account,AHashMap<Symbol, ACell> environment, AHashMap<Symbol,AHashMap<ACell,ACell>> metadata, long offer, LookupCache lookupCache) {
 			this.state=state;
 			this.origin=origin;
 			this.caller=caller;
 			this.address=address;
+			this.account=account;
 			this.environment=environment;
 			this.metadata=metadata;
 			this.offer=offer;
+			this.lookupCache=lookupCache;
 		}
 
 		public static ChainState create(State state, Address origin, Address caller, Address address, long offer) {
+			return create(state,origin,caller,address,offer,new LookupCache());
+		}
+
+		private static ChainState create(State state, Address origin, Address caller, Address address, long offer, LookupCache lookupCache) {
 			AHashMap<Symbol, ACell> environment=Core.ENVIRONMENT;
 			AHashMap<Symbol, AHashMap<ACell,ACell>> metadata=Core.METADATA;
+			AccountStatus as=null;
 			if (address!=null) {
-				AccountStatus as=state.getAccount(address);
+				as=state.getAccount(address);
 				if (as!=null) {
 					environment=as.getEnvironment();
 					metadata=as.getMetadata();
 				}
 			}
-			return new ChainState(state,origin,caller,address,environment,metadata,offer);
+			return new ChainState(state,origin,caller,address,as,environment,metadata,offer,lookupCache);
 		}
 
 		public ChainState withStateOffer(State newState,long newOffer) {
 			if ((state==newState)&&(offer==newOffer)) return this;
-			return create(newState,origin,caller,address,newOffer);
+			return create(newState,origin,caller,address,newOffer,lookupCache);
 		}
 
 		private ChainState withState(State newState) {
 			if (state==newState) return this;
-			return create(newState,origin,caller,address,offer);
+			return create(newState,origin,caller,address,offer,lookupCache);
+		}
+
+		/**
+		 * Creates a ChainState for execution in another Account, sharing the lookup cache
+		 */
+		private ChainState forAddress(State newState, Address newCaller, Address newAddress, long newOffer) {
+			return create(newState,origin,newCaller,newAddress,newOffer,lookupCache);
+		}
+
+		private AccountStatus getCoreAccount() {
+			AccountStatus result=coreAccount;
+			if (result==null) {
+				result=state.getAccount(Init.CORE_ADDRESS);
+				coreAccount=result;
+			}
+			return result;
 		}
 
 		private long getOffer() {
@@ -228,10 +460,10 @@ public class Context<T extends ACell> extends AObject {
 
 	}
 
-	private Context(ChainState chainState, long juice, AVector<ACell> localBindings2, T result,int depth, AExceptional exception, AVector<AVector<ACell>> log, CompilerState comp) {
+	private Context(ChainState chainState, long juice, Locals locals, T result,int depth, AExceptional exception, AVector<AVector<ACell>> log, CompilerState comp) {
 		this.chainState=chainState;
 		this.juice=juice;
-		this.localBindings=localBindings2;
+		this.locals=locals;
 		this.result=result;
 		this.depth=depth;
 		this.exception=exception;
@@ -242,7 +474,7 @@ public class Context<T extends ACell> extends AObject {
 	@SuppressWarnings("unchecked")
 	private static <T extends ACell> Context<T> create(ChainState cs, long juice, AVector<ACell> localBindings, ACell result, int depth,AVector<AVector<ACell>> log, CompilerState comp) {
 		if (juice<0) throw new IllegalArgumentException("Negative juice! "+juice);
-		Context<T> ctx= new Context<T>(cs,juice,localBindings,(T)result,depth,DEFAULT_EXCEPTION,log,comp);
+		Context<T> ctx= new Context<T>(cs,juice,new Locals(localBindings),(T)result,depth,DEFAULT_EXCEPTION,log,comp);
 		return ctx;
 	}
 
@@ -274,8 +506,20 @@ public class Context<T extends ACell> extends AObject {
 	 * @return Fake context
 	 */
 	public static <R extends ACell> Context<R> createFake(State state, Address origin) {
+		return createFake(state,origin,Constants.MAX_TRANSACTION_JUICE);
+	}
+
+	/**
+	 * Creates a "fake" execution context for the given address, with a specified juice limit.
+	 *
+	 * @param state State to use for this Context
+	 * @param origin Origin address to use
+	 * @param juice Juice available for execution
+	 * @return Fake context
+	 */
+	public static <R extends ACell> Context<R> createFake(State state, Address origin, long juice) {
 		if (origin==null) throw new IllegalArgumentException("Null address!");
-		return create(state,Constants.MAX_TRANSACTION_JUICE,EMPTY_BINDINGS,null,0,origin,null,origin, 0, DEFAULT_LOG,null);
+		return create(state,juice,EMPTY_BINDINGS,null,0,origin,null,origin, 0, DEFAULT_LOG,null);
 	}
 
 	/**
@@ -654,13 +898,23 @@ public class Context<T extends ACell> extends AObject {
 		// Get environment for Address, or default to initial environment
 		AHashMap<Symbol, ACell> env = (as==null)?Core.ENVIRONMENT:as.getEnvironment();
 
+		// Check lookup cache first. Aliased entries are valid only if the core environment is unchanged
+		LookupCache.Entry[] cache=chainState.lookupCache.entries;
+		int i=LookupCache.index(env, sym);
+		LookupCache.Entry ce=cache[i];
+		if ((ce!=null)&&(ce.env==env)&&ce.symbol.equals(sym)) {
+			if ((ce.coreEnv==null)||(ce.coreEnv==getCoreAccount().getEnvironment())) return ce.result;
+		}
 
 		MapEntry<Symbol,ACell> result=env.getEntry(sym);
-
+		AHashMap<Symbol, ACell> coreEnv=null;
 		if (result==null) {
 			AccountStatus aliasAccount=getAliasedAccount(env);
 			result = lookupAliasedEntry(aliasAccount,sym);
+			if (result==null) return null; // undeclared, not cached
+			coreEnv=aliasAccount.getEnvironment();
 		}
+		cache[i]=new LookupCache.Entry(env,sym,coreEnv,result);
 		return result;
 	}
 
@@ -676,12 +930,8 @@ public class Context<T extends ACell> extends AObject {
 	 * @return AccountStatus object, or null if not found
 	 */
 	public AccountStatus getAccountStatus() {
-		Address a=getAddress();
-
-		// Possible we don't have an Address (e.g. in a Query)
-		if (a==null) return null;
-
-		return chainState.state.getAccount(a);
+		// Null if we don't have an Address (e.g. in a Query)
+		return chainState.account;
 	}
 
 	/**
@@ -696,7 +946,7 @@ public class Context<T extends ACell> extends AObject {
 	}
 
 	private AccountStatus getCoreAccount() {
-		return getState().getAccount(Init.CORE_ADDRESS);
+		return chainState.getCoreAccount();
 	}
 
 	/**
@@ -1031,7 +1281,8 @@ public class Context<T extends ACell> extends AObject {
 			Symbol sym=(Symbol)bindingForm;
 			if (sym.equals(Symbols.UNDERSCORE)) return ctx;
 			// TODO: confirm must be an ACell at this point?
-			return withLocalBindings(localBindings.conj((ACell)args));
+			locals.push((ACell)args);
+			return ctx;
 		} else if (bindingForm instanceof AVector) {
 			AVector<ACell> v=(AVector<ACell>)bindingForm;
 			long vcount=v.count(); // count of binding form symbols (may include & etc.)
@@ -1097,8 +1348,14 @@ public class Context<T extends ACell> extends AObject {
 		return bb.check(limit);
 	}
 
+	/**
+	 * Gets the local bindings of this Context as a vector. Creates a snapshot of the current
+	 * bindings if necessary, e.g. for capture in a closure.
+	 * 
+	 * @return Vector of local bindings
+	 */
 	public AVector<ACell> getLocalBindings() {
-		return localBindings;
+		return locals.toVector();
 	}
 
 	/**
@@ -1109,9 +1366,82 @@ public class Context<T extends ACell> extends AObject {
 	 */
 	@SuppressWarnings("unchecked")
 	public <R extends ACell> Context<R> withLocalBindings(AVector<ACell> newBindings) {
-		//if (localBindings==newBindings) return (Context<R>) this;
-		//return create(chainState,juice,newBindings,(R)result,depth);
-		localBindings=newBindings;
+		locals=new Locals(newBindings);
+		return (Context<R>) this;
+	}
+
+	/**
+	 * Gets the number of local bindings in the current lexical scope
+	 * @return Number of local bindings
+	 */
+	public long getLocalCount() {
+		return locals.count();
+	}
+
+	/**
+	 * Gets the value of a local binding. Position must be valid.
+	 * @param position Position of local binding
+	 * @return Value of local binding
+	 */
+	public ACell getLocal(long position) {
+		return locals.get(position);
+	}
+
+	/**
+	 * Sets the value of a local binding, as with set!. Position must be valid. The previous value
+	 * is restored by {@link #restoreLocals(long)} with an earlier mark.
+	 * @param <R> Return type of Context
+	 * @param position Position of local binding
+	 * @param value New value
+	 * @return Updated context
+	 */
+	@SuppressWarnings("unchecked")
+	public <R extends ACell> Context<R> setLocal(long position, ACell value) {
+		locals.set(position, value);
+		return (Context<R>) this;
+	}
+
+	/**
+	 * Gets a mark for the current local bindings, which can later be restored with
+	 * {@link #restoreLocals(long)} to leave a lexical scope.
+	 * @return Mark value
+	 */
+	public long getLocalMark() {
+		return locals.mark();
+	}
+
+	/**
+	 * Restores local bindings to an earlier mark obtained in the same lexical frame, reverting any
+	 * bindings and set! changes made since the mark. Doesn't affect result state.
+	 * @param <R> Return type of Context
+	 * @param mark Mark from {@link #getLocalMark()}
+	 * @return Updated context
+	 */
+	@SuppressWarnings("unchecked")
+	public <R extends ACell> Context<R> restoreLocals(long mark) {
+		locals.restore(mark);
+		return (Context<R>) this;
+	}
+
+	/**
+	 * Enters a new lexical frame with the given local bindings, e.g. for a function call. Must be
+	 * followed by {@link #exitLocalFrame(long)} with the returned mark.
+	 * @param env Local bindings of the new frame
+	 * @return Mark for exiting the frame
+	 */
+	public long enterLocalFrame(AVector<ACell> env) {
+		return locals.enterFrame(env);
+	}
+
+	/**
+	 * Exits a lexical frame, restoring local bindings of the enclosing frame. Doesn't affect result state.
+	 * @param <R> Return type of Context
+	 * @param mark Mark from {@link #enterLocalFrame(AVector)}
+	 * @return Updated context
+	 */
+	@SuppressWarnings("unchecked")
+	public <R extends ACell> Context<R> exitLocalFrame(long mark) {
+		locals.exitFrame(mark);
 		return (Context<R>) this;
 	}
 
@@ -1122,6 +1452,7 @@ public class Context<T extends ACell> extends AObject {
 	 * @return AccountStatus for the specified address, or null if the account does not exist
 	 */
 	public AccountStatus getAccountStatus(Address address) {
+		if ((address!=null)&&address.equals(chainState.address)) return chainState.account;
 		return getState().getAccount(address);
 	}
 
@@ -1189,15 +1520,56 @@ public class Context<T extends ACell> extends AObject {
 		Context<AOp<R>> rctx =this.withDepth(saveDepth+1);
 		if (rctx.isExceptional()) return rctx; // depth error, won't have modified depth
 
+		// Check compile cache. A hit consumes the same juice as compiling again
+		CompileCache.Key key=getCompileKey(form,saveDepth);
+		if (key!=null) {
+			CompileCache.Entry ce=COMPILE_CACHE.get(key);
+			if ((ce!=null)&&rctx.checkJuice(ce.getJuice())) {
+				@SuppressWarnings("unchecked")
+				AOp<R> op=(AOp<R>) ce.getOp();
+				rctx=rctx.withResult(ce.getJuice(),op);
+				return rctx.withDepth(saveDepth);
+			}
+		}
+		State state=getState();
+		long juiceBefore=rctx.getJuice();
+		long dynamicBefore=chainState.lookupCache.dynamicCompiles;
+
 		// EXPAND AND COMPILE
 		rctx = Compiler.expandCompile(form, rctx);
 
+		if ((key!=null)&&!rctx.isExceptional()
+				&&(rctx.getState()==state)
+				&&(chainState.lookupCache.dynamicCompiles==dynamicBefore)) {
+			COMPILE_CACHE.put(key, rctx.getResult(), juiceBefore-rctx.getJuice());
+		}
+
 		// reset depth after expansion and compilation, unless there is an error
 		rctx=rctx.withDepth(saveDepth);
 
 		return rctx;
 	}
 
+	/**
+	 * Gets the compile cache key for a form in this Context
+	 * @return Key, or null if the compilation should not be cached
+	 */
+	private CompileCache.Key getCompileKey(ACell form, int depth) {
+		if (form==null) return null;
+		if (compilerState!=null) return null; // depends on local bindings in scope
+		AccountStatus core=getCoreAccount();
+		if (core==null) return null;
+		return CompileCache.key(form, getAddress(), getEnvironment(), getMetadata(), core.getEnvironment(), core.getMetadata(), depth);
+	}
+
+	/**
+	 * Gets the cache of compiled ops shared by all Contexts
+	 * @return CompileCache instance
+	 */
+	public static CompileCache getCompileCache() {
+		return COMPILE_CACHE;
+	}
+
 	/**
 	 * Compile a form in this Context. Form must already be fully expanded to a Syntax Object
 	 *
@@ -1269,10 +1641,9 @@ public class Context<T extends ACell> extends AObject {
 				ctx=ctx.withResult(null); // clear result for execution
 			}
 		}
-		AVector<ACell> savedBindings = ctx.getLocalBindings();
-		ctx=ctx.withLocalBindings(Vectors.empty());
+		long mark=ctx.enterLocalFrame(EMPTY_BINDINGS);
 		Context<R> rctx= ctx.execute(op);
-		return rctx.withLocalBindings(savedBindings);
+		return rctx.exitLocalFrame(mark);
 	}
 
 	/**
@@ -1313,7 +1684,7 @@ public class Context<T extends ACell> extends AObject {
 		if (!canControl) return ctx.withError(ErrorCodes.TRUST,"Cannot control address: "+address);
 
 		// SECURITY: eval with a context switch
-		final Context<R> exContext=Context.create(getState(), juice, EMPTY_BINDINGS, null, depth+1, getOrigin(),caller, address,0,log,null);
+		final Context<R> exContext=Context.create(chainState.forAddress(getState(),caller,address,0), juice, EMPTY_BINDINGS, null, depth+1, log,null);
 
 		final Context<R> rContext=exContext.eval(form);
 		// SECURITY: must handle results as if returning from an actor call
@@ -1350,7 +1721,7 @@ public class Context<T extends ACell> extends AObject {
 	 */
 	public <R extends ACell> Context<R> queryAs(Address address, ACell form) {
 		// chainstate with the target address as origin.
-		ChainState cs=ChainState.create(getState(),address,null,address,DEFAULT_OFFER);
+		ChainState cs=ChainState.create(getState(),address,null,address,DEFAULT_OFFER,chainState.lookupCache);
 		Context<R> ctx=Context.create(cs, juice, EMPTY_BINDINGS, null, depth,log,null);
 		ctx=ctx.evalAs(address, form);
 		return handleQueryResult(ctx);
@@ -1698,7 +2069,7 @@ public class Context<T extends ACell> extends AObject {
 	 * @return
 	 */
 	private <R extends ACell> Context<R> forkActorCall(State state, Address target, long offer) {
-		return Context.create(state, juice, EMPTY_BINDINGS, (R)null, depth+1, getOrigin(),getAddress(), target,offer, log,null);
+		return Context.create(chainState.forAddress(state,getAddress(),target,offer), juice, EMPTY_BINDINGS, (R)null, depth+1, log,null);
 	}
 
 	/**
@@ -1797,7 +2168,7 @@ public class Context<T extends ACell> extends AObject {
 		State stateSetup=initialState.addActor();
 
 		// Deployment execution context with forked context and incremented depth
-		final Context<Address> deployContext=Context.create(stateSetup, juice, EMPTY_BINDINGS, null, depth+1, getOrigin(),getAddress(), address,DEFAULT_OFFER,log,null);
+		final Context<Address> deployContext=Context.create(chainState.forAddress(stateSetup,getAddress(),address,DEFAULT_OFFER), juice, EMPTY_BINDINGS, null, depth+1, log,null);
 		final Context<Address> rctx=deployContext.eval(code);
 
 		Context<Address> result=this.handleStateResults(rctx,false);
@@ -2139,12 +2510,13 @@ public class Context<T extends ACell> extends AObject {
 	}
 
 	/**
-	 * Forks this context, creating a new copy of all local state
+	 * Forks this context, creating a new copy of all local state. The stack of local bindings
+	 * is shared, since forked Contexts continue execution in the same lexical scope.
 	 * @param <R> Result type of new Context
 	 * @return A new forked Context
 	 */
 	public <R extends ACell> Context<R> fork() {
-		return new Context<R>(chainState, juice, localBindings, null,depth, null,log,compilerState);
+		return new Context<R>(chainState, juice, locals, null,depth, null,log,compilerState);
 	}
 
 	@Override
@@ -2251,6 +2623,9 @@ public class Context<T extends ACell> extends AObject {
 				}
 				if (!(maybeAddress instanceof Address)) return null;
 				addr = (Address)maybeAddress;
+				// metadata of another account is not part of the compile cache key, and may change
+				// to or from an expander, so the compilation must not be cached
+				if (!Init.CORE_ADDRESS.equals(addr)&&!addr.equals(getAddress())) markDynamicCompile();
 				me = lookupMeta((Address)maybeAddress,sym);
 			} else {
 				return null;
@@ -2268,11 +2643,31 @@ public class Context<T extends ACell> extends AObject {
 			// expand form using specified expander and continuation expander
 			ACell v = lookupValue(addr,sym);
 			AFn<ACell> expander = RT.castFunction(v);
-			if (expander != null) return expander;
+			if (expander != null) {
+				if (!isCoreExpander(addr,sym)) markDynamicCompile();
+				return expander;
+			}
 		}
 		return null;
 	}
 
+	/**
+	 * Marks the current compilation as dependent on code executed at compile time, so that
+	 * it is not stored in the compile cache.
+	 */
+	void markDynamicCompile() {
+		chainState.lookupCache.dynamicCompiles++;
+	}
 
+	/**
+	 * Checks if an expander is defined in the core environment, so that the result of expansion
+	 * depends only on the form and the core account.
+	 */
+	private boolean isCoreExpander(Address addr,Symbol sym) {
+		if (addr!=null) return Init.CORE_ADDRESS.equals(addr);
+		AHashMap<Symbol, ACell> env=getEnvironment();
+		if (!env.containsKey(sym)) return true; // resolved via core account
+		return (env==Core.ENVIRONMENT)||Init.CORE_ADDRESS.equals(getAddress());
+	}
 
 }
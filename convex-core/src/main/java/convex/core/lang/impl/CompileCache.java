@@ -0,0 +1,262 @@
+package convex.core.lang.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import convex.core.data.ACell;
+import convex.core.data.AHashMap;
+import convex.core.data.Address;
+import convex.core.data.Symbol;
+import convex.core.lang.AOp;
+import convex.core.util.Utils;
+
+/**
+ * Bounded, thread safe cache of compiled ops, shared by all Contexts.
+ *
+ * Entries are keyed by the source form together with everything that compilation depends on: the
+ * current Address, the environment and metadata of the current account and of the core account,
+ * and the depth at which compilation started. Environments and metadata are compared by identity.
+ * They are immutable, so any def, undef or change to metadata produces a new instance and stale
+ * entries are never hit.
+ *
+ * Each entry records the juice consumed by the original compilation, so that a cache hit can
+ * consume exactly the same juice as compiling the form again.
+ *
+ * The cache is split into independently locked stripes, each of which evicts the least recently
+ * used entry when full.
+ */
+public final class CompileCache {
+
+	/**
+	 * Number of stripes. Must be a power of 2.
+	 */
+	private static final int STRIPES=16;
+
+	private final Stripe[] stripes;
+
+	private final int capacity;
+
+	private final LongAdder hits=new LongAdder();
+	private final LongAdder misses=new LongAdder();
+
+	private CompileCache(int capacity) {
+		this.capacity=capacity;
+		this.stripes=new Stripe[STRIPES];
+		int stripeCapacity=Math.max(1, capacity/STRIPES);
+		for (int i=0; i<STRIPES; i++) {
+			stripes[i]=new Stripe(stripeCapacity);
+		}
+	}
+
+	/**
+	 * Creates a CompileCache with the given maximum number of entries
+	 * @param capacity Maximum number of cached ops
+	 * @return New CompileCache instance
+	 */
+	public static CompileCache create(int capacity) {
+		return new CompileCache(capacity);
+	}
+
+	/**
+	 * Gets the capacity of this cache
+	 * @return Maximum number of entries
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the cached compilation result for a key
+	 * @param key Compilation key
+	 * @return Cached Entry, or null if not cached
+	 */
+	public Entry get(Key key) {
+		Entry e=getStripe(key).get(key);
+		if (e==null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return e;
+	}
+
+	/**
+	 * Stores a compilation result in the cache
+	 * @param key Compilation key
+	 * @param op Compiled op
+	 * @param juice Juice consumed by compilation. Must be positive.
+	 */
+	public void put(Key key, AOp<?> op, long juice) {
+		if (juice<=0) return;
+		getStripe(key).put(key, new Entry(op,juice));
+	}
+
+	/**
+	 * Removes all entries from the cache
+	 */
+	public void clear() {
+		for (Stripe s: stripes) {
+			s.clear();
+		}
+	}
+
+	/**
+	 * Gets the number of cache hits since creation
+	 * @return Hit count
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Gets the number of cache misses since creation
+	 * @return Miss count
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Gets the number of ops currently cached
+	 * @return Number of cached ops
+	 */
+	public int getCount() {
+		int result=0;
+		for (Stripe s: stripes) {
+			result+=s.getCount();
+		}
+		return result;
+	}
+
+	private Stripe getStripe(Key key) {
+		int h=key.hash;
+		return stripes[(h^(h>>>16))&(STRIPES-1)];
+	}
+
+	/**
+	 * Creates a compilation key
+	 *
+	 * @param form Source form
+	 * @param address Current Address (may be null)
+	 * @param env Environment of the current account
+	 * @param meta Metadata of the current account
+	 * @param coreEnv Environment of the core account
+	 * @param coreMeta Metadata of the core account
+	 * @param depth Depth at which compilation starts
+	 * @return Key instance
+	 */
+	public static Key key(ACell form, Address address, AHashMap<Symbol, ACell> env, AHashMap<Symbol, AHashMap<ACell, ACell>> meta,
+			AHashMap<Symbol, ACell> coreEnv, AHashMap<Symbol, AHashMap<ACell, ACell>> coreMeta, int depth) {
+		return new Key(form,address,env,meta,coreEnv,coreMeta,depth);
+	}
+
+	/**
+	 * Key for a compilation. Forms are compared by value, environments by identity.
+	 */
+	public static final class Key {
+		private final ACell form;
+		private final Address address;
+		private final Object env;
+		private final Object meta;
+		private final Object coreEnv;
+		private final Object coreMeta;
+		private final int depth;
+		private final int hash;
+
+		private Key(ACell form, Address address, Object env, Object meta, Object coreEnv, Object coreMeta, int depth) {
+			this.form=form;
+			this.address=address;
+			this.env=env;
+			this.meta=meta;
+			this.coreEnv=coreEnv;
+			this.coreMeta=coreMeta;
+			this.depth=depth;
+			int h=form.getHash().hashCode();
+			h=31*h+System.identityHashCode(env);
+			h=31*h+System.identityHashCode(coreEnv);
+			h=31*h+depth;
+			this.hash=h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key k=(Key)o;
+			return (hash==k.hash)
+					&&(env==k.env)&&(meta==k.meta)
+					&&(coreEnv==k.coreEnv)&&(coreMeta==k.coreMeta)
+					&&(depth==k.depth)
+					&&Utils.equals(address, k.address)
+					&&form.equals(k.form);
+		}
+	}
+
+	/**
+	 * Cached compilation result
+	 */
+	public static final class Entry {
+		private final AOp<?> op;
+		private final long juice;
+
+		private Entry(AOp<?> op, long juice) {
+			this.op=op;
+			this.juice=juice;
+		}
+
+		/**
+		 * Gets the compiled op
+		 * @return Compiled op
+		 */
+		public AOp<?> getOp() {
+			return op;
+		}
+
+		/**
+		 * Gets the juice consumed by the original compilation
+		 * @return Juice amount
+		 */
+		public long getJuice() {
+			return juice;
+		}
+	}
+
+	/**
+	 * Independently locked segment of the cache
+	 */
+	private static final class Stripe {
+		private final LinkedHashMap<Key,Entry> map;
+
+		@SuppressWarnings("serial")
+		Stripe(int capacity) {
+			// access ordered, so the eldest entry is the least recently used
+			this.map=new LinkedHashMap<Key,Entry>(16,0.75f,true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Key,Entry> eldest) {
+					return size()>capacity;
+				}
+			};
+		}
+
+		synchronized Entry get(Key key) {
+			return map.get(key);
+		}
+
+		synchronized void put(Key key, Entry e) {
+			map.put(key, e);
+		}
+
+		synchronized void clear() {
+			map.clear();
+		}
+
+		synchronized int getCount() {
+			return map.size();
+		}
+	}
+}
@@ -86,19 +86,17 @@ public class Fn<T extends ACell> extends AClosure<T> {
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
 	public Context<T> invoke(Context context, ACell[] args) {
-		// update local bindings for the duration of this function call
-		final AVector<ACell> savedBindings = context.getLocalBindings();
-
-		// update to correct lexical environment, then bind function parameters
-		context = context.withLocalBindings(lexicalEnv);
+		// update to correct lexical environment for the duration of this function call
+		final long mark = context.enterLocalFrame(lexicalEnv);
 
+		// bind function parameters
 		Context<T> boundContext = context.updateBindings(params, args);
-		if (boundContext.isExceptional()) return boundContext.withLocalBindings(savedBindings);
+		if (boundContext.isExceptional()) return boundContext.exitLocalFrame(mark);
 
 		Context<T> ctx = boundContext.execute(body);
 
 		// return with restored bindings
-		return ctx.withLocalBindings(savedBindings);
+		return ctx.exitLocalFrame(mark);
 	}
 
 	@Override
@@ -83,7 +83,7 @@ public class Let<T extends ACell> extends AMultiOp<T> {
 		Context<?> ctx = context.consumeJuice(Juice.LET);
 		if (ctx.isExceptional()) return (Context<T>) ctx;
 
-		AVector<ACell> savedEnv = ctx.getLocalBindings();
+		long mark = ctx.getLocalMark();
 		
 		// execute each operation for bound values in turn
 		for (int i = 0; i < bindingCount; i++) {
@@ -92,7 +92,7 @@ public class Let<T extends ACell> extends AMultiOp<T> {
 			if (ctx.isExceptional()) {
 				// return if exception during initial binding. 
 				// No chance to recur since we didn't enter loop body
-				return ctx.withLocalBindings(savedEnv);
+				return ctx.restoreLocals(mark);
 			}
 		}
 
@@ -112,7 +112,7 @@ public class Let<T extends ACell> extends AMultiOp<T> {
 				}
 
 				// restore old lexical environment, then add back new ones
-				ctx=ctx.withLocalBindings(savedEnv);
+				ctx=ctx.restoreLocals(mark);
 				ctx = ctx.updateBindings(symbols, newArgs);
 				if (ctx.isExceptional()) break;
 
@@ -121,7 +121,7 @@ public class Let<T extends ACell> extends AMultiOp<T> {
 			}
 		}
 		// restore old lexical environment before returning
-		return ctx.withLocalBindings(savedEnv);
+		return ctx.restoreLocals(mark);
 	}
 
 	public Context<?> executeBody(Context<?> ctx) {
@@ -4,7 +4,6 @@ import java.nio.ByteBuffer;
 
 import convex.core.ErrorCodes;
 import convex.core.data.ACell;
-import convex.core.data.AVector;
 import convex.core.data.BlobBuilder;
 import convex.core.data.Format;
 import convex.core.data.IRefFunction;
@@ -48,12 +47,11 @@ public class Local<T extends ACell> extends AOp<T> {
 	@Override
 	public <R extends ACell> Context<T> execute(Context<R> context) {
 		Context<T> ctx=(Context<T>) context;
-		AVector<ACell> env=ctx.getLocalBindings();
-		long ec=env.count();
+		long ec=ctx.getLocalCount();
 		if ((position<0)||(position>=ec)) {
 			return ctx.withError(ErrorCodes.BOUNDS,"Bad position for Local: "+position);
 		}
-		T result = (T)env.get(position);
+		T result = (T)ctx.getLocal(position);
 		return (Context<T>) ctx.withResult(Juice.LOOKUP,result);
 	}
 
@@ -55,7 +55,7 @@ public class Query<T extends ACell> extends AMultiOp<T> {
 		Context<T> ctx = (Context<T>) context.consumeJuice(Juice.QUERY);
 		if (ctx.isExceptional()) return ctx;
 		
-		AVector<ACell> savedBindings=context.getLocalBindings();
+		long mark=context.getLocalMark();
 
 		// execute each operation in turn
 		// TODO: early return
@@ -68,7 +68,7 @@ public class Query<T extends ACell> extends AMultiOp<T> {
 		}
 		// restore state unconditionally.
 		ctx=ctx.withState(savedState);
-		ctx=ctx.withLocalBindings(savedBindings);
+		ctx=ctx.restoreLocals(mark);
 		return ctx;
 	}
 
@@ -1,6 +1,7 @@
 package convex.core.store;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 import convex.core.data.ABlob;
@@ -102,8 +103,50 @@ public abstract class AStore {
 	 * Closes this store and frees associated resources
 	 */
 	public abstract void close();
+
+	/**
+	 * Requests that all data in this store is flushed to persistent storage in the background.
+	 * Stores without persistent storage complete immediately.
+	 * @return Future that completes when all data written before this call is durable
+	 */
+	public CompletableFuture<Void> flushAsync() {
+		return CompletableFuture.completedFuture(null);
+	}
 	
-	protected final BlobCache blobCache=BlobCache.create(100000);
+	/**
+	 * Default byte budget for the decoded cell cache of each store
+	 */
+	public static final long DEFAULT_CACHE_SIZE=64L*1024*1024;
+
+	/**
+	 * Byte budget for the decoded cell cache of temporary and in-memory stores
+	 */
+	public static final long SMALL_CACHE_SIZE=4L*1024*1024;
+
+	protected final BlobCache blobCache;
+
+	/**
+	 * Creates a store with the default decoded cell cache size
+	 */
+	protected AStore() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates a store with the given decoded cell cache size
+	 * @param cacheSize Byte budget for decoded cell cache
+	 */
+	protected AStore(long cacheSize) {
+		this.blobCache=BlobCache.create(cacheSize);
+	}
+
+	/**
+	 * Gets the decoded cell cache for this store. Useful for inspecting cache statistics.
+	 * @return BlobCache instance
+	 */
+	public BlobCache getBlobCache() {
+		return blobCache;
+	}
 	
 	/**
 	 * Decodes a Cell from an Encoding. Looks up Cell in cache if available. Otherwise
@@ -114,7 +157,20 @@ public abstract class AStore {
 	 * @throws BadFormatException If cell encoding is invalid
 	 */
 	public final ACell decode(ABlob encoding) throws BadFormatException {
-		ACell cached=blobCache.getCell(encoding);
+		return decode(encoding.getContentHash(),encoding);
+	}
+
+	/**
+	 * Decodes a Cell from an Encoding with a known Hash, e.g. the key of a stored value. Looks up
+	 * Cell in cache if available. Otherwise equivalent to Format.read(Blob).
+	 * @param hash Hash of encoding
+	 * @param encoding Encoding of Cell
+	 * @return Decoded Cell (may be a a null value)
+	 * 
+	 * @throws BadFormatException If cell encoding is invalid
+	 */
+	public final ACell decode(Hash hash, ABlob encoding) throws BadFormatException {
+		ACell cached=blobCache.getCell(hash);
 		if (cached!=null) return cached;
 		
 		ACell decoded=Format.read(encoding.toFlatBlob());
@@ -122,6 +178,7 @@ public abstract class AStore {
 		
 		// TODO: can remove this check once happy with all tests
 		assert(decoded.cachedEncoding()!=null);
+		decoded.getEncoding().attachContentHash(hash);
 		blobCache.putCell(decoded);
 		
 		return decoded;
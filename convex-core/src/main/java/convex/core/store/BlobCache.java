@@ -1,66 +1,258 @@
 package convex.core.store;
 
-import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
 
-import convex.core.data.ABlob;
+import convex.core.Constants;
 import convex.core.data.ACell;
+import convex.core.data.Hash;
 
 /**
  * In-memory cache for Blob decoding. Should be used in the context of a specific Store
+ *
+ * Cells are keyed by their Hash. The cache is split into independently locked stripes, each of which evicts entries using the CLOCK
+ * algorithm (an approximation of LRU that gives recently used entries a second chance). Total size
+ * is bounded by a byte budget, where each entry is weighted by the length of its encoding plus a
+ * constant per-cell overhead.
+ *
+ * Cached cells are held strongly, so the memory used by the cache is predictable and does
+ * not depend on GC pressure.
  */
 public final class BlobCache {
 
-	private SoftReference<ACell>[] cache;
-	private int size;
-	
-	@SuppressWarnings("unchecked")
-	private BlobCache(int size) {
-		this.size=size;
-		this.cache=new SoftReference[size];
+	/**
+	 * Number of stripes. Must be a power of 2.
+	 */
+	private static final int STRIPES=16;
+
+	private final Stripe[] stripes;
+
+	private final long capacity;
+
+	private final LongAdder hits=new LongAdder();
+	private final LongAdder misses=new LongAdder();
+	private final LongAdder evictions=new LongAdder();
+
+	private BlobCache(long capacity) {
+		this.capacity=capacity;
+		this.stripes=new Stripe[STRIPES];
+		long stripeCapacity=Math.max(1, capacity/STRIPES);
+		for (int i=0; i<STRIPES; i++) {
+			stripes[i]=new Stripe(stripeCapacity);
+		}
 	};
-	
-	public static BlobCache create(int size) {
-		return new BlobCache(size);
+
+	/**
+	 * Creates a BlobCache with the given byte budget
+	 * @param capacity Maximum total weight of cached cells in bytes
+	 * @return New BlobCache instance
+	 */
+	public static BlobCache create(long capacity) {
+		return new BlobCache(capacity);
 	}
-	
-	int getSize() {
-		return size;
+
+	/**
+	 * Gets the capacity of this cache
+	 * @return Capacity in bytes
+	 */
+	public long getCapacity() {
+		return capacity;
 	}
-	
+
 	/**
-	 * Gets the Cached Cell for a given Blob Encoding, or null if not cached.
-	 * @param encoding Encoding of Cell to look up in cache
+	 * Gets the Cached Cell for a given Hash, or null if not cached.
+	 * @param hash Hash of Cell to look up in cache
 	 * @return Cached Cell, or null if not found
 	 */
-	public ACell getCell(ABlob encoding) {
-		int ix=calcIndex(encoding);
-		SoftReference<ACell> ref=cache[ix];
-		if (ref==null) return null;
-		ACell cell=ref.get();
-		if (cell!=null) {
-			if (encoding.equals(cell.getEncoding())) {
-				return cell;
-			}
-			return null; // cached value not the same as this encoding
+	public ACell getCell(Hash hash) {
+		ACell cell=getStripe(hash).get(hash);
+		if (cell==null) {
+			misses.increment();
+		} else {
+			hits.increment();
 		}
-		cache[ix]=null;
-		return null;
+		return cell;
 	}
-	
+
 	/**
 	 * Stores a cell in the cache
 	 * @param cell Cell to store
 	 */
 	public void putCell(ACell cell) {
-		int ix=calcIndex(cell.getEncoding());
-		cache[ix]=new SoftReference<>(cell);
+		Hash hash=cell.getHash();
+		long weight=cell.getEncodingLength()+Constants.MEMORY_OVERHEAD;
+		getStripe(hash).put(hash, cell, weight);
+	}
+
+	/**
+	 * Removes all cells from the cache, e.g. when the backing store is replaced
+	 */
+	public void clear() {
+		for (Stripe s: stripes) {
+			s.clear();
+		}
+	}
+
+	/**
+	 * Gets the number of cache hits since creation
+	 * @return Hit count
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Gets the number of cache misses since creation
+	 * @return Miss count
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Gets the number of cells evicted since creation
+	 * @return Eviction count
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Gets the proportion of lookups that were cache hits
+	 * @return Hit rate between 0.0 and 1.0, or 0.0 if there have been no lookups
+	 */
+	public double getHitRate() {
+		long h=hits.sum();
+		long total=h+misses.sum();
+		if (total==0) return 0.0;
+		return ((double)h)/total;
+	}
+
+	/**
+	 * Gets the current total weight of cached cells
+	 * @return Weight in bytes
+	 */
+	public long getWeight() {
+		long result=0;
+		for (Stripe s: stripes) {
+			result+=s.getWeight();
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the number of cells currently cached
+	 * @return Number of cached cells
+	 */
+	public int getCount() {
+		int result=0;
+		for (Stripe s: stripes) {
+			result+=s.getCount();
+		}
+		return result;
 	}
 
-	private int calcIndex(ABlob encoding) {
-		int hash=Long.hashCode(encoding.toLong());
-		int ix=Math.floorMod(hash, size);
-		return ix;
+	private Stripe getStripe(Hash hash) {
+		// hash bytes are uniformly distributed, so any byte will do
+		return stripes[hash.byteAt(0)&(STRIPES-1)];
 	}
 
+	/**
+	 * Cache entry, linked into a circular CLOCK list
+	 */
+	private static final class Entry {
+		final Hash key;
+		final ACell cell;
+		final long weight;
+		boolean referenced=false;
+		Entry next;
+		Entry prev;
+
+		Entry(Hash key, ACell cell, long weight) {
+			this.key=key;
+			this.cell=cell;
+			this.weight=weight;
+		}
+	}
+
+	/**
+	 * Independently locked segment of the cache
+	 */
+	private final class Stripe {
+		private final HashMap<Hash,Entry> map=new HashMap<>();
+		private final long capacity;
+		private long weight=0;
+
+		/**
+		 * CLOCK hand, or null if empty
+		 */
+		private Entry hand=null;
+
+		Stripe(long capacity) {
+			this.capacity=capacity;
+		}
+
+		synchronized ACell get(Hash key) {
+			Entry e=map.get(key);
+			if (e==null) return null;
+			e.referenced=true;
+			return e.cell;
+		}
+
+		synchronized void put(Hash key, ACell cell, long entryWeight) {
+			if (entryWeight>capacity) return; // too big to cache
+			if (map.containsKey(key)) return; // already cached
+
+			Entry e=new Entry(key,cell,entryWeight);
+			map.put(key,e);
+			weight+=entryWeight;
 
+			// insert behind the hand, so new entries are examined last
+			if (hand==null) {
+				e.next=e;
+				e.prev=e;
+				hand=e;
+			} else {
+				e.next=hand;
+				e.prev=hand.prev;
+				hand.prev.next=e;
+				hand.prev=e;
+			}
+
+			while (weight>capacity) evict();
+		}
+
+		private void evict() {
+			// advance hand, giving referenced entries a second chance
+			while (hand.referenced) {
+				hand.referenced=false;
+				hand=hand.next;
+			}
+			Entry victim=hand;
+			map.remove(victim.key);
+			weight-=victim.weight;
+			evictions.increment();
+			if (victim.next==victim) {
+				hand=null;
+			} else {
+				victim.prev.next=victim.next;
+				victim.next.prev=victim.prev;
+				hand=victim.next;
+			}
+		}
+
+		synchronized void clear() {
+			map.clear();
+			weight=0;
+			hand=null;
+		}
+
+		synchronized long getWeight() {
+			return weight;
+		}
+
+		synchronized int getCount() {
+			return map.size();
+		}
+	}
 }
@@ -30,6 +30,14 @@ public class MemoryStore extends AStore {
 
 	private ACell rootData;
 
+	/**
+	 * Creates a MemoryStore. Uses a small decoded cell cache, since all persisted cells are
+	 * retained in memory anyway.
+	 */
+	public MemoryStore() {
+		super(SMALL_CACHE_SIZE);
+	}
+
 	@Override
 	@SuppressWarnings("unchecked")
 	public <T extends ACell> Ref<T> refForHash(Hash hash) {
@@ -0,0 +1,327 @@
+package convex.core.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import convex.core.data.ACell;
+import convex.core.data.Blob;
+import convex.core.data.Format;
+import convex.core.data.Hash;
+import convex.core.data.Ref;
+import convex.core.exceptions.BadFormatException;
+import convex.core.exceptions.MissingDataException;
+
+/**
+ * Static functionality for exporting and importing complete data structures as a bulk stream
+ * of cell encodings, e.g. for bootstrapping a Peer from a snapshot of consensus State.
+ *
+ * The snapshot format is:
+ * <ul>
+ * <li>4 byte magic number "CVXS", followed by a version byte</li>
+ * <li>32 byte hash of the root cell</li>
+ * <li>Encodings of the root cell and all non-embedded cells reachable from it, each prefixed with a
+ * VLC length. Children always precede their parents, and the root cell is last.</li>
+ * </ul>
+ *
+ * Since every cell is stored under the hash of its own encoding, and every child is stored before
+ * its parent, an import is verified by checking the root hash alone.
+ *
+ * The same format is used for a full export of a store (see {@link etch.EtchExport}), which may contain
+ * cells in any order, including cells not reachable from the root. These are imported with
+ * {@link #readAll(InputStream, AStore, Hash)}.
+ */
+public class Snapshot {
+
+	private static final byte[] MAGIC = new byte[] { 'C', 'V', 'X', 'S' };
+
+	private static final byte VERSION = 1;
+
+	/**
+	 * Writes a snapshot of a complete data structure to an output stream. The data structure
+	 * must be fully available in the current store.
+	 *
+	 * @param root Root cell of data structure
+	 * @param out Output stream. Not closed by this method.
+	 * @return Number of cells written
+	 * @throws IOException If an IO error occurs
+	 * @throws MissingDataException If any part of the data structure is missing
+	 */
+	public static long write(ACell root, OutputStream out) throws IOException {
+		if (root == null) throw new IllegalArgumentException("Snapshot root must not be null");
+		BufferedOutputStream bos = new BufferedOutputStream(out);
+		writeHeader(bos, root.getHash());
+
+		HashSet<Hash> written = new HashSet<>();
+		long count = 0;
+
+		// Iterative post-order traversal, so that children are written before parents
+		ArrayDeque<ACell> stack = new ArrayDeque<>();
+		ArrayDeque<Integer> next = new ArrayDeque<>();
+		stack.push(root);
+		next.push(0);
+		while (!stack.isEmpty()) {
+			ACell cell = stack.peek();
+			int i = next.pop();
+			if (i < cell.getRefCount()) {
+				next.push(i + 1);
+				Ref<ACell> child = cell.getRef(i);
+				// Embedded children are not written, but may refer to non-embedded cells
+				if (!child.isEmbedded() && written.contains(child.getHash())) continue;
+				ACell value = child.getValue();
+				if (value == null) continue;
+				stack.push(value);
+				next.push(0);
+				continue;
+			}
+
+			stack.pop();
+			if (cell.isEmbedded() && (cell != root)) continue;
+			if (!written.add(cell.getHash())) continue; // may be reached twice before written
+			writeCell(bos, cell.getEncoding());
+			count++;
+		}
+		bos.flush();
+		return count;
+	}
+
+	/**
+	 * Writes a snapshot header
+	 * @param out Output stream
+	 * @param rootHash Hash of the root cell
+	 * @throws IOException If an IO error occurs
+	 */
+	public static void writeHeader(OutputStream out, Hash rootHash) throws IOException {
+		out.write(MAGIC);
+		out.write(VERSION);
+		out.write(rootHash.getBytes());
+	}
+
+	/**
+	 * Writes the encoding of a cell to a snapshot, after the header
+	 * @param out Output stream
+	 * @param enc Cell encoding
+	 * @throws IOException If an IO error occurs
+	 */
+	public static void writeCell(OutputStream out, Blob enc) throws IOException {
+		byte[] vlc = new byte[Format.MAX_VLC_LONG_LENGTH];
+		int n = (int) enc.count();
+		int vlen = Format.writeVLCLong(vlc, 0, n);
+		out.write(vlc, 0, vlen);
+		out.write(enc.getInternalArray(), enc.getInternalOffset(), n);
+	}
+
+	/**
+	 * Reads a snapshot from an input stream into a store. All cells are stored at PERSISTED
+	 * status, so the data structure is immediately available in full.
+	 *
+	 * @param in Input stream. Not closed by this method.
+	 * @param store Store into which the snapshot is imported
+	 * @param expectedRoot Expected root hash, or null to accept any root
+	 * @return Ref to the root cell of the snapshot in the store
+	 * @throws IOException If an IO error occurs
+	 * @throws BadFormatException If the snapshot is invalid, incomplete or has an unexpected root
+	 */
+	public static <T extends ACell> Ref<T> read(InputStream in, AStore store, Hash expectedRoot)
+			throws IOException, BadFormatException {
+		BufferedInputStream bis = new BufferedInputStream(in);
+		Hash rootHash = readHeader(bis, expectedRoot);
+
+		AStore temp = Stores.current();
+		try {
+			Stores.setCurrent(store);
+			Ref<ACell> last = null;
+			while (true) {
+				Blob enc = readCell(bis);
+				if (enc == null) break; // end of stream
+				ACell cell = store.decode(enc);
+				if (cell == null) throw new BadFormatException("Null cell in snapshot");
+
+				// Children are already stored, so this only writes the new cell
+				try {
+					last = store.storeTopRef(cell.getRef(), Ref.PERSISTED, null);
+				} catch (MissingDataException e) {
+					throw new BadFormatException("Snapshot cell before its child: " + e.getMissingHash());
+				}
+			}
+			if ((last == null) || !last.getHash().equals(rootHash)) {
+				throw new BadFormatException("Snapshot incomplete, root " + rootHash + " not found at end");
+			}
+			@SuppressWarnings("unchecked")
+			Ref<T> result = (Ref<T>) last;
+			return result;
+		} finally {
+			Stores.setCurrent(temp);
+		}
+	}
+
+	/**
+	 * Reads a snapshot with cells in any order into a store, e.g. a full store export. Since children
+	 * may follow their parents, cells are first stored at STORED status. The root is then persisted,
+	 * which verifies that the complete data structure reachable from it is present. Cells not reachable
+	 * from the root remain at STORED status.
+	 *
+	 * @param in Input stream. Not closed by this method.
+	 * @param store Store into which the snapshot is imported
+	 * @param expectedRoot Expected root hash, or null to accept any root
+	 * @return Ref to the root cell of the snapshot in the store
+	 * @throws IOException If an IO error occurs
+	 * @throws BadFormatException If the snapshot is invalid, incomplete or has an unexpected root
+	 */
+	public static <T extends ACell> Ref<T> readAll(InputStream in, AStore store, Hash expectedRoot)
+			throws IOException, BadFormatException {
+		BufferedInputStream bis = new BufferedInputStream(in);
+		Hash rootHash = readHeader(bis, expectedRoot);
+
+		AStore temp = Stores.current();
+		try {
+			Stores.setCurrent(store);
+			boolean foundRoot = false;
+			while (true) {
+				Blob enc = readCell(bis);
+				if (enc == null) break; // end of stream
+				ACell cell = store.decode(enc);
+				if (cell == null) throw new BadFormatException("Null cell in snapshot");
+				store.storeTopRef(cell.getRef(), Ref.STORED, null);
+				if (cell.getHash().equals(rootHash)) foundRoot = true;
+			}
+			if (!foundRoot) throw new BadFormatException("Snapshot incomplete, root " + rootHash + " not found");
+
+			Ref<T> root = store.refForHash(rootHash);
+			try {
+				return store.storeTopRef(root, Ref.PERSISTED, null);
+			} catch (MissingDataException e) {
+				throw new BadFormatException("Snapshot incomplete, missing cell: " + e.getMissingHash());
+			}
+		} finally {
+			Stores.setCurrent(temp);
+		}
+	}
+
+	/**
+	 * Reads a snapshot from an input stream into memory, without using any store. All Refs in the
+	 * result are direct, so the data structure is fully available regardless of the current store.
+	 *
+	 * @param in Input stream. Not closed by this method.
+	 * @param expectedRoot Expected root hash, or null to accept any root
+	 * @return Root cell of the snapshot
+	 * @throws IOException If an IO error occurs
+	 * @throws BadFormatException If the snapshot is invalid, incomplete or has an unexpected root
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends ACell> T read(InputStream in, Hash expectedRoot) throws IOException, BadFormatException {
+		BufferedInputStream bis = new BufferedInputStream(in);
+		Hash rootHash = readHeader(bis, expectedRoot);
+
+		HashMap<Hash, ACell> cells = new HashMap<>();
+		ACell last = null;
+		while (true) {
+			Blob enc = readCell(bis);
+			if (enc == null) break; // end of stream
+			ACell cell = Format.read(enc);
+			if (cell == null) throw new BadFormatException("Null cell in snapshot");
+			try {
+				cell = resolve(cell, cells);
+			} catch (MissingDataException e) {
+				throw new BadFormatException("Snapshot cell before its child: " + e.getMissingHash());
+			}
+			cells.put(cell.getHash(), cell);
+			last = cell;
+		}
+		if ((last == null) || !last.getHash().equals(rootHash)) {
+			throw new BadFormatException("Snapshot incomplete, root " + rootHash + " not found at end");
+		}
+		return (T) last;
+	}
+
+	/**
+	 * Replaces all child Refs of a decoded cell with direct Refs to previously read cells
+	 */
+	private static ACell resolve(ACell cell, HashMap<Hash, ACell> cells) {
+		return cell.updateRefs(r -> {
+			ACell v;
+			if (r.isEmbedded()) {
+				v = r.getValue();
+				if (v == null) return r;
+				v = resolve(v, cells);
+			} else {
+				v = cells.get(r.getHash());
+				if (v == null) throw new MissingDataException(null, r.getHash());
+			}
+			return v.getRef();
+		});
+	}
+
+	/**
+	 * Reads and checks a snapshot header
+	 * @return Root hash of snapshot
+	 */
+	private static Hash readHeader(InputStream in, Hash expectedRoot) throws IOException, BadFormatException {
+		byte[] header = readFully(in, MAGIC.length + 1 + Hash.LENGTH);
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (header[i] != MAGIC[i]) throw new BadFormatException("Not a snapshot");
+		}
+		if (header[MAGIC.length] != VERSION) {
+			throw new BadFormatException("Unsupported snapshot version: " + header[MAGIC.length]);
+		}
+		Hash rootHash = Hash.wrap(header, MAGIC.length + 1);
+		if ((expectedRoot != null) && !expectedRoot.equals(rootHash)) {
+			throw new BadFormatException("Snapshot root " + rootHash + " does not match expected " + expectedRoot);
+		}
+		return rootHash;
+	}
+
+	/**
+	 * Reads the encoding of the next cell
+	 * @return Encoding, or null if at end of stream
+	 */
+	private static Blob readCell(InputStream in) throws IOException, BadFormatException {
+		int n = readLength(in);
+		if (n < 0) return null;
+		if ((n == 0) || (n > Format.LIMIT_ENCODING_LENGTH)) {
+			throw new BadFormatException("Bad cell length in snapshot: " + n);
+		}
+		return Blob.wrap(readFully(in, n));
+	}
+
+	/**
+	 * Reads a VLC encoded length
+	 * @return Length, or -1 if at end of stream
+	 */
+	private static int readLength(InputStream in) throws IOException, BadFormatException {
+		byte[] vlc = new byte[Format.MAX_VLC_LONG_LENGTH];
+		int b = in.read();
+		if (b < 0) return -1;
+		int i = 0;
+		vlc[i++] = (byte) b;
+		while ((b & 0x80) != 0) {
+			if (i >= vlc.length) throw new BadFormatException("Bad VLC length in snapshot");
+			b = in.read();
+			if (b < 0) throw new BadFormatException("Truncated snapshot");
+			vlc[i++] = (byte) b;
+		}
+		long n = Format.readVLCLong(vlc, 0);
+		if ((n < 0) || (n > Integer.MAX_VALUE)) throw new BadFormatException("Bad cell length in snapshot: " + n);
+		return (int) n;
+	}
+
+	private static byte[] readFully(InputStream in, int n) throws IOException, BadFormatException {
+		byte[] bs = new byte[n];
+		int pos = 0;
+		while (pos < n) {
+			int r = in.read(bs, pos, n - pos);
+			if (r < 0) {
+				if (pos == 0 && n > 0) throw new EOFException("Unexpected end of snapshot");
+				throw new BadFormatException("Truncated snapshot");
+			}
+			pos += r;
+		}
+		return bs;
+	}
+}
@@ -5,13 +5,29 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.channels.FileLock;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.CRC32C;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +36,7 @@ import convex.core.Constants;
 import convex.core.data.AArrayBlob;
 import convex.core.data.ACell;
 import convex.core.data.Blob;
+import convex.core.data.Format;
 import convex.core.data.Hash;
 import convex.core.data.Ref;
 import convex.core.data.RefSoft;
@@ -42,10 +59,16 @@ import convex.core.util.Utils;
  * To avoid creating too many index blocks when collisions occur, a chained entry list inside is created
  * in unused space in index blocks. Once there is no more space, chains are collapsed to a new index block.
  *
- * Header of file is 42 bytes as follows:
- * - Magic number 0xe7c6 (2 bytes)
+ * Header of file is 122 bytes as follows:
+ * - Magic number 0xe7c7 (2 bytes)
+ * - Two commit records (60 bytes each), of which the valid one with the highest sequence number is current
+ *
+ * Each commit record contains:
+ * - Commit sequence number (8 bytes)
  * - Database length in bytes (8 bytes)
  * - Root hash (32 bytes)
+ * - Position of redo log, or 0 if none (8 bytes)
+ * - CRC32C checksum of the above (4 bytes)
  * 
  * Pointers in index blocks are of 4 possible types, determined by the two high bits (MSBs):
  * - 00 high bits: pointer to data
@@ -58,8 +81,30 @@ import convex.core.util.Utils;
  * - X bytes monotonic label of which
  *    - 1 byte status
  *    - 8 bytes Memory Size (TODO: might be negative for unknown?)
- * - 2 bytes data length N (a short)
- * - N byes actual data
+ * - 2 bytes data length N (a short). The high bit is set if the data is compressed.
+ * - N byes actual data, or if compressed the uncompressed length (2 bytes) followed by data in LZCodec format
+ * - 4 bytes CRC32C checksum of key, data length and data (the label is excluded, since it may be updated)
+ *
+ * COMMITS: Space beyond the committed database length is only ever appended to. Index slots within the
+ * committed length are not changed in place until the next commit: the new slot values are held in memory
+ * (where readers see them), then at commit appended to the file as a redo log, and all data is forced to
+ * disk before the other commit record is written and forced. Only then are the slot values applied in place.
+ * On opening, the redo log of the current commit is applied again (it is idempotent) and anything after the
+ * committed length is discarded, so a crash at any point leaves the database as at the last complete commit.
+ *
+ * Redo log is stored as:
+ * - 4 bytes entry count N
+ * - N entries of slot position (8 bytes) and slot value (8 bytes)
+ * - 4 bytes CRC32C checksum of the above
+ *
+ * CONCURRENCY: There is a single writer at a time (holding the lock on the Etch instance). Readers never
+ * take the writer lock. Data blocks and index blocks are fully written before a pointer to them is
+ * published in an index slot, with a release fence on each slot write and an acquire fence on each
+ * slot read. Chain collapses are bracketed by an index version counter, so a reader that misses a key
+ * while the index is being restructured retries the lookup.
+ *
+ * INDEX CACHE: The slots of the top two index levels are mirrored off-heap, and kept up to date by the writer,
+ * so that a lookup in a large file only needs mapped access for the deeper levels and the data record.
  */
 public class Etch {
 	// structural constants for data block
@@ -67,6 +112,17 @@ public class Etch {
 	private static final int LABEL_SIZE=1+8; // Flags (byte) plus Memory Size (long)
 	private static final int LENGTH_SIZE=2;
 	private static final int POINTER_SIZE=8;
+	private static final int CRC_SIZE=4;
+
+	/**
+	 * Flag in the data length field indicating compressed data
+	 */
+	private static final int COMPRESSED_MASK=0x8000;
+
+	/**
+	 * Minimum encoding length for which compression is attempted
+	 */
+	private static final int COMPRESSION_MIN_LENGTH=64;
 
 	/**
 	 * Index block is fixed size with 256 entries
@@ -80,22 +136,29 @@ public class Etch {
 	/**
 	 * Magic number for Etch files, must be first 2 bytes
 	 */
-	private static final byte[] MAGIC_NUMBER=Utils.hexToBytes("e7c6");
+	private static final byte[] MAGIC_NUMBER=Utils.hexToBytes("e7c7");
+
+	/**
+	 * Magic number for Etch files in the earlier format without commit records or checksums
+	 */
+	private static final byte[] MAGIC_NUMBER_V1=Utils.hexToBytes("e7c6");
 
 	private static final int SIZE_HEADER_MAGIC=2;
-	private static final int SIZE_HEADER_FILESIZE=8;
-	private static final int SIZE_HEADER_ROOT=32;
+
+	/**
+	 * Length of a commit record: sequence, data length, root hash, redo log position, checksum
+	 */
+	private static final int SIZE_COMMIT=8+8+Hash.LENGTH+8+CRC_SIZE;
 
 	/**
 	 * Length of Etch header
-	 *
-	 * "The Ultimate Answer to Life, The Universe and Everything is... 42!"
-     * - Douglas Adams, The Hitchhiker's Guide to the Galaxy
 	 */
-	private static final int SIZE_HEADER=SIZE_HEADER_MAGIC+SIZE_HEADER_FILESIZE+SIZE_HEADER_ROOT;
+	private static final int SIZE_HEADER=SIZE_HEADER_MAGIC+2*SIZE_COMMIT;
 
-	protected static final long OFFSET_FILE_SIZE = SIZE_HEADER_MAGIC;
-	protected static final long OFFSET_ROOT_HASH = SIZE_HEADER_MAGIC+SIZE_HEADER_FILESIZE;
+	/**
+	 * Number of pending slot writes at which a commit is performed automatically
+	 */
+	private static final int COMMIT_THRESHOLD=65536;
 
 	/**
 	 * Start position of first index block
@@ -130,13 +193,144 @@ public class Etch {
 	private final RandomAccessFile data;
 
 	/**
-	 * List of MappedByteBuffers for each region of the database file.
+	 * Array of MappedByteBuffers for each region of the database file. Replaced (never modified)
+	 * when a region is added or extended, so readers can use it without locking.
+	 */
+	private volatile MappedByteBuffer[] regionMap=new MappedByteBuffer[0];
+
+	/**
+	 * Lock for changes to regionMap. Separate from the writer lock so readers don't contend with writers.
+	 */
+	private final Object regionLock=new Object();
+
+	private volatile long dataLength=0;
+
+	/**
+	 * Database length at the last commit. Index slots before this position are not changed in place
+	 * until the next commit.
+	 */
+	private volatile long committedLength=0;
+
+	/**
+	 * Sequence number of the last commit
+	 */
+	private long commitSequence=0;
+
+	/**
+	 * Root hash at the last commit
+	 */
+	private Hash committedRootHash;
+
+	/**
+	 * Slot values written since the last commit for slots before committedLength, by slot position.
+	 * Readers must check these before the file.
+	 */
+	private final ConcurrentHashMap<Long,Long> pendingSlots=new ConcurrentHashMap<>();
+
+	/**
+	 * Number of bits in the pending block filter
+	 */
+	private static final int PENDING_FILTER_BITS=4096;
+
+	/**
+	 * Filter of index blocks that may have pending slots, by a hash of block position. Readers only need
+	 * to probe pendingSlots for a block with its bit set. Cleared by the writer when no slots are pending.
+	 */
+	private final AtomicLongArray pendingBlocks=new AtomicLongArray(PENDING_FILTER_BITS/64);
+
+	/**
+	 * Regions changed since the last commit. Guarded by the writer lock.
+	 */
+	private final BitSet dirtyRegions=new BitSet();
+
+	/**
+	 * Flag set when the file has been extended since the last commit
+	 */
+	private volatile boolean fileExtended=false;
+
+	/**
+	 * Lock held for the duration of a commit. Taken before the writer lock.
+	 */
+	private final Object commitLock=new Object();
+
+	/**
+	 * Lock for flush requests and background flush scheduling
+	 */
+	private final Object flushLock=new Object();
+
+	/**
+	 * Outstanding request for a background flush, or null if none
+	 */
+	private CompletableFuture<Void> flushRequest=null;
+
+	/**
+	 * Periodic background flush task, or null if flushing only on request
 	 */
-	private final ArrayList<MappedByteBuffer> regionMap=new ArrayList<>();
+	private ScheduledFuture<?> flushTask=null;
 
-	private long dataLength=0;
+	/**
+	 * Shared thread for background flushes of all Etch instances
+	 */
+	private static final ScheduledExecutorService FLUSHER=Executors.newSingleThreadScheduledExecutor(r->{
+		Thread t=new Thread(r,"Etch flusher");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * Version counter for index restructuring. Odd while a chain collapse is in progress.
+	 */
+	private volatile long indexVersion=0;
+
+	/**
+	 * Cached root hash, kept in sync with the file header by setRootHash
+	 */
+	private volatile Hash rootHash;
+
+	/**
+	 * Number of index blocks mirrored in the index cache: the root index block, and one for each root slot
+	 */
+	private static final int CACHE_ROWS=257;
+
+	/**
+	 * Off-heap mirror of the slots of the top two index levels, one row of 256 slots per index block.
+	 * Row 0 is the root index block, row 1+d is the index block for root digit d (if any). Holds the
+	 * latest slot values including pending slots, so readers need no mapped access for these levels.
+	 */
+	private final LongBuffer indexCache=ByteBuffer.allocateDirect(CACHE_ROWS*INDEX_BLOCK_SIZE).order(ByteOrder.nativeOrder()).asLongBuffer();
+
+	/**
+	 * Index block position for each row of the index cache, or 0 if the row is not valid
+	 */
+	private final long[] cacheBlocks=new long[CACHE_ROWS];
+
+	/**
+	 * Index cache row for each cached index block position. Used only by the writer.
+	 */
+	private final HashMap<Long,Integer> cacheRows=new HashMap<>();
+
+	/**
+	 * Index block positions visited by the last write, by key offset. Used only by the writer,
+	 * to resume index traversal for batches of sorted keys.
+	 */
+	private final long[] writePath=new long[KEY_SIZE];
+
+	/**
+	 * Number of valid entries in writePath
+	 */
+	private int writePathLength=0;
 
 	private boolean BUILD_CHAINS=true;
+
+	/**
+	 * Flag to compress data records where this saves space
+	 */
+	private boolean compression=true;
+
+	/**
+	 * Buffer for compressed data. Used only by the writer.
+	 */
+	private final byte[] compressBuffer=new byte[Format.LIMIT_ENCODING_LENGTH];
 	private EtchStore store;
 
 	private Etch(File dataFile) throws IOException {
@@ -156,35 +350,24 @@ public class Etch {
 		// at this point, we have an exclusive lock on the database file.
 
 		if (dataFile.length()==0) {
-			// Need to populate  new file, with data length long and initial index block
+			// Need to populate new file, with header and initial index block
 			MappedByteBuffer mbb=seekMap(0);
 			mbb.put(MAGIC_NUMBER);
 
-			// write zeros (temp is newly empty) for file size and root. Will fix later
-			int headerZeros=SIZE_HEADER_FILESIZE+SIZE_HEADER_ROOT;
-			byte[] temp=new byte[headerZeros];
-			mbb.put(temp,0,headerZeros);
-			dataLength=SIZE_HEADER; // advance past initial long
+			// write zeros for both commit records. First commit is written below.
+			mbb.put(new byte[2*SIZE_COMMIT]);
+			dataLength=SIZE_HEADER;
 
 			// add an index block
 			long indexStart=appendNewIndexBlock();
 			assert(indexStart==INDEX_START);
 
-			// ensure data length is initially correct
-			mbb=seekMap(SIZE_HEADER_MAGIC);
-			mbb.putLong(dataLength);
+			rootHash=Hash.wrap(new byte[Hash.LENGTH]);
+			commit();
 		} else {
-			// existing file, so need to read the length pointer
-			MappedByteBuffer mbb=seekMap(0);
-			byte[] check=new byte[2];
-			mbb.get(check);
-			if(!Arrays.equals(MAGIC_NUMBER, check)) {
-				throw new IOException("Bad magic number! Probably not an Etch file: "+dataFile);
-			}
-
-			long length = mbb.getLong();
-			dataLength=length;
+			recover();
 		}
+		initIndexCache();
 
 		// shutdown hook to close file / release lock
 		convex.core.util.Shutdown.addHook(Shutdown.ETCH,new Runnable() {
@@ -260,39 +443,61 @@ public class Etch {
 	 */
 	private MappedByteBuffer getInternalBuffer(int regionIndex) throws IOException {
 		// Get current mapped region, or null if out of range
-		int regionMapSize=regionMap.size();
-		MappedByteBuffer mbb=(regionIndex<regionMapSize)?regionMap.get(regionIndex):null;
+		MappedByteBuffer[] regions=regionMap;
+		MappedByteBuffer mbb=(regionIndex<regions.length)?regions[regionIndex]:null;
 
 		// Call createBuffer if mapped region does not exist, or is too small
-		if ((mbb==null)||(mbb.capacity()<dataLength+REGION_MARGIN)) mbb=createBuffer(regionIndex);
+		if ((mbb==null)||(mbb.capacity()<requiredRegionSize(regionIndex))) mbb=createBuffer(regionIndex);
 
 		return mbb;
 	}
 
+	/**
+	 * Gets the minimum size of a mapped region required to cover the current data length plus margin
+	 * @param regionIndex Index of region
+	 * @return Required capacity in bytes
+	 */
+	private long requiredRegionSize(int regionIndex) {
+		long pos=regionIndex*(long)MAX_REGION_SIZE;
+		return Math.min(dataLength-pos, MAX_REGION_SIZE)+REGION_MARGIN;
+	}
+
 	/**
 	 * Create a MappedByteBuffer at the specified region index position.
 	 *
-	 * CONCURRENCY: should be the only place where regionMap is modified.
+	 * CONCURRENCY: should be the only place where regionMap is modified. Publishes a new
+	 * regionMap array so that concurrent readers always see a consistent set of regions.
 	 *
 	 * @param regionIndex Index of database file region
 	 * @return
 	 * @throws IOException
 	 */
-	private synchronized MappedByteBuffer createBuffer(int regionIndex) throws IOException {
-		while(regionMap.size()<=regionIndex) regionMap.add(null);
+	private MappedByteBuffer createBuffer(int regionIndex) throws IOException {
+		synchronized (regionLock) {
+			MappedByteBuffer[] regions=regionMap;
+			long pos=regionIndex*(long)MAX_REGION_SIZE;
+			long dataLength=this.dataLength;
+
+			// Another thread may already have created a big enough buffer
+			MappedByteBuffer existing=(regionIndex<regions.length)?regions[regionIndex]:null;
+			if ((existing!=null)&&(existing.capacity()>=requiredRegionSize(regionIndex))) return existing;
+
+			// Expand region size until big enough for current database plus appropriate margin
+			int length=1<<16;
+			while((length<MAX_REGION_SIZE)&&((pos+length)<(dataLength+REGION_MARGIN))) {
+				length*=2;
+			}
 
-		long pos=regionIndex*(long)MAX_REGION_SIZE;
+			length+=REGION_MARGIN; // include margin in buffer length
+			MappedByteBuffer mbb= data.getChannel().map(MapMode.READ_WRITE, pos, length);
 
-		// Expand region size until big enough for current database plus appropriate margin
-		int length=1<<16;
-		while((length<MAX_REGION_SIZE)&&((pos+length)<(dataLength+REGION_MARGIN))) {
-			length*=2;
-		}
+			if (pos+length>data.length()) fileExtended=true; // mapping extends the file
 
-		length+=REGION_MARGIN; // include margin in buffer length
-		MappedByteBuffer mbb= data.getChannel().map(MapMode.READ_WRITE, pos, length);
-		regionMap.set(regionIndex, mbb);
-		return mbb;
+			MappedByteBuffer[] newRegions=Arrays.copyOf(regions, Math.max(regions.length, regionIndex+1));
+			newRegions[regionIndex]=mbb;
+			regionMap=newRegions;
+			return mbb;
+		}
 	}
 
 	/**
@@ -307,7 +512,45 @@ public class Etch {
 	 */
 	public synchronized Ref<ACell> write(AArrayBlob key, Ref<ACell> value) throws IOException {
 		Counters.etchWrite++;
-		return write(key,0,value,INDEX_START);
+		Ref<ACell> result=write(key,0,value,INDEX_START);
+		maybeCommit();
+		return result;
+	}
+
+	/**
+	 * Writes a batch of Refs to the immutable store, keyed by their hashes. Refs are sorted by key
+	 * and written under a single lock, resuming each index traversal from the index block shared
+	 * with the previous key.
+	 *
+	 * Note: Refs in a batch become visible to concurrent readers in key order.
+	 *
+	 * @param refs Refs to write. Should have unique hashes.
+	 * @return List of Refs after writing to store, in key order
+	 * @throws IOException If an IO error occurs
+	 */
+	public synchronized List<Ref<ACell>> writeAll(Collection<Ref<ACell>> refs) throws IOException {
+		ArrayList<Ref<ACell>> sorted=new ArrayList<>(refs);
+		sorted.sort((a,b)->a.getHash().compareTo(b.getHash()));
+
+		int n=sorted.size();
+		Hash prev=null;
+		for (int i=0; i<n; i++) {
+			Ref<ACell> ref=sorted.get(i);
+			Hash key=ref.getHash();
+			Counters.etchWrite++;
+
+			// Resume from the deepest index block shared with the previous key
+			int level=0;
+			if (prev!=null) {
+				int common=(int)(prev.commonHexPrefixLength(key)/2);
+				level=Math.min(common, writePathLength-1);
+			}
+			long indexPosition=(level==0)?INDEX_START:writePath[level];
+			sorted.set(i, write(key,level,ref,indexPosition));
+			prev=key;
+		}
+		maybeCommit();
+		return sorted;
 	}
 
 	private Ref<ACell> write(AArrayBlob key, int keyOffset, Ref<ACell> value, long indexPosition) throws IOException {
@@ -315,6 +558,10 @@ public class Etch {
 			throw new Error("Offset exceeded for key: "+key);
 		}
 
+		// record index block on path for this key. Index blocks are never moved once linked.
+		writePath[keyOffset]=indexPosition;
+		writePathLength=keyOffset+1;
+
 		final int digit=key.byteAt(keyOffset)&0xFF;
 		long slotValue=readSlot(indexPosition,digit);
 		long type=slotType(slotValue);
@@ -406,11 +653,15 @@ public class Etch {
 				long movingSlotValue=readSlot(indexPosition,movingDigit);
 				long dp=slotPointer(movingSlotValue); // just the raw pointer
 				writeExistingData(newIndexPos,keyOffset+1,dp);
-				if (j!=0) writeSlot(indexPosition,movingDigit,0L); // clear the old chain
 			}
 
-			// finally update this index with the new index pointer
+			// update this index with the new index pointer, then clear the old chain
+			beginIndexChange();
 			writeSlot(indexPosition,digit,newIndexPos|PTR_INDEX);
+			for (int j=1; j<i; j++) {
+				writeSlot(indexPosition,digit+j,0L);
+			}
+			endIndexChange();
 			return value;
 		} else if (type==PTR_CHAIN) {
 			// need to collapse existing chain
@@ -425,10 +676,15 @@ public class Etch {
 				long movingSlotValue=readSlot(indexPosition,movingDigit);
 				long dp=slotPointer(movingSlotValue); // just the raw pointer
 				writeExistingData(newIndexPos,keyOffset+1,dp);
-				if (j!=0) writeSlot(indexPosition,movingDigit,0L); // clear the old chain
 			}
 
+			// publish the new index block, then clear the old chain
+			beginIndexChange();
 			writeSlot(indexPosition,chainStartDigit,newIndexPos|PTR_INDEX);
+			for (int j=1; j<n; j++) {
+				writeSlot(indexPosition,chainStartDigit+j,0L);
+			}
+			endIndexChange();
 
 			// write to the current slot
 			return writeNewData(indexPosition,digit,key,value,PTR_PLAIN);
@@ -438,6 +694,21 @@ public class Etch {
 	}
 
 
+	/**
+	 * Marks the start of an index change that may cause concurrent readers to miss existing keys.
+	 * Must be followed by endIndexChange(). Called only by the writer.
+	 */
+	private void beginIndexChange() {
+		indexVersion++;
+	}
+
+	/**
+	 * Marks the end of an index change started by beginIndexChange()
+	 */
+	private void endIndexChange() {
+		indexVersion++;
+	}
+
 	/**
 	 * Finds the start digit of a chain, stepping backwards from the given digit
 	 * @param indexPosition
@@ -553,22 +824,22 @@ public class Etch {
 	}
 
 	/**
-	 * Close all files resources with this Etch store, including writing the final
-	 * data length.
+	 * Close all files resources with this Etch store, including a final commit.
 	 */
-	synchronized void close() {
+	void close() {
 		if (!(data.getChannel().isOpen())) return; // already closed
 		try {
-			// Update data length
-			writeDataLength();
-
-			// Send writes to disk
+			// stop background flushing, then commit and send writes to disk
+			setFlushInterval(0);
 			flush();
-			
-			regionMap.clear();
-			System.gc();
 
-			data.close();
+			synchronized (this) {
+				if (!(data.getChannel().isOpen())) return;
+				regionMap=new MappedByteBuffer[0];
+				System.gc();
+
+				data.close();
+			}
 
 			log.debug("Etch closed on file: "+data+" with data length: "+dataLength);
 		} catch (IOException e) {
@@ -578,14 +849,283 @@ public class Etch {
 	}
 
 	/**
-	 * Writes the data length field for the Etch file. S
-	 * @throws IOException
+	 * Opens the database at the last complete commit. Applies the redo log of the commit, and
+	 * discards any data written after it.
+	 * @throws IOException If the file is not a valid Etch file
+	 */
+	private void recover() throws IOException {
+		long fileLength=data.length();
+		if (fileLength<SIZE_HEADER) throw new IOException("File too short for an Etch file: "+file);
+		MappedByteBuffer mbb=seekMap(0); // header is readable from the mapped region
+		byte[] check=new byte[SIZE_HEADER_MAGIC];
+		mbb.get(check);
+		if (Arrays.equals(MAGIC_NUMBER_V1, check)) {
+			throw new IOException("Etch file uses an earlier format without commit records, convert it with EtchUpgrade: "+file);
+		}
+		if(!Arrays.equals(MAGIC_NUMBER, check)) {
+			throw new IOException("Bad magic number! Probably not an Etch file: "+file);
+		}
+
+		// find the valid commit record with the highest sequence number
+		byte[] best=null;
+		long bestSeq=0;
+		for (int i=0; i<2; i++) {
+			byte[] rec=new byte[SIZE_COMMIT];
+			mbb.get(rec);
+			long seq=Utils.readLong(rec, 0);
+			long length=Utils.readLong(rec, 8);
+			if (seq<=bestSeq) continue;
+			if (Utils.readInt(rec, SIZE_COMMIT-CRC_SIZE)!=checksum(rec,0,SIZE_COMMIT-CRC_SIZE)) continue;
+			if ((length<INDEX_START+INDEX_BLOCK_SIZE)||(length>fileLength)) continue;
+			best=rec;
+			bestSeq=seq;
+		}
+		if (best==null) throw new IOException("No valid commit found in Etch file: "+file);
+
+		long length=Utils.readLong(best, 8);
+		long redoPosition=Utils.readLong(best, 8+8+Hash.LENGTH);
+		commitSequence=bestSeq;
+		dataLength=length;
+		committedLength=length;
+		rootHash=Hash.wrap(Arrays.copyOfRange(best, 16, 16+Hash.LENGTH));
+		committedRootHash=rootHash;
+
+		if (redoPosition!=0) applyRedoLog(redoPosition);
+		if (fileLength>length) {
+			log.debug("Etch discarding {} bytes after last commit in file: {}",fileLength-length,file);
+		}
+	}
+
+	/**
+	 * Applies the redo log at the given position to index slots. The redo log was forced to disk
+	 * before its commit record, so a bad checksum here means the file is corrupt.
+	 */
+	private void applyRedoLog(long redoPosition) throws IOException {
+		if ((redoPosition<INDEX_START)||(redoPosition+4+CRC_SIZE>dataLength)) {
+			throw new IOException("Bad redo log position in Etch file: "+file);
+		}
+		MappedByteBuffer mbb=seekMap(redoPosition);
+		int n=mbb.getInt();
+		long length=4+16L*n;
+		if ((n<0)||(redoPosition+length+CRC_SIZE>dataLength)) {
+			throw new IOException("Bad redo log length in Etch file: "+file);
+		}
+		byte[] bs=new byte[(int)length];
+		mbb=seekMap(redoPosition);
+		mbb.get(bs);
+		if (mbb.getInt()!=checksum(bs,0,bs.length)) {
+			throw new IOException("Bad redo log checksum in Etch file: "+file);
+		}
+		for (int i=0; i<n; i++) {
+			long position=Utils.readLong(bs, 4+16*i);
+			long value=Utils.readLong(bs, 4+16*i+8);
+			if ((position<INDEX_START)||(position+POINTER_SIZE>redoPosition)) {
+				throw new IOException("Bad redo log entry in Etch file: "+file);
+			}
+			seekMap(position).putLong(value);
+			markDirty(position);
+		}
+	}
+
+	/**
+	 * Commits all changes since the last commit, so that they survive a crash. Appends a redo log for
+	 * pending slot writes, forces dirty regions to disk, writes and forces the next commit record, then
+	 * applies pending slot writes in place.
+	 *
+	 * CONCURRENCY: The writer lock is held only while preparing the commit and applying slot writes, so
+	 * writers are not blocked while data is forced to disk. Writes during a commit go to the next commit.
+	 *
+	 * @throws IOException If an IO error occurs
+	 */
+	private void commit() throws IOException {
+		synchronized (commitLock) {
+			if (!data.getChannel().isOpen()) return;
+			long[] positions;
+			long[] values;
+			int[] regions;
+			boolean extended;
+			byte[] rec;
+			Hash root;
+			synchronized (this) {
+				boolean changed=(dataLength!=committedLength)||!pendingSlots.isEmpty()||!rootHash.equals(committedRootHash);
+				if (!changed) return;
+
+				// append redo log for pending slot writes
+				long redoPosition=0;
+				int n=pendingSlots.size();
+				positions=new long[n];
+				values=new long[n];
+				if (n>0) {
+					int i=0;
+					for (Map.Entry<Long,Long> e: pendingSlots.entrySet()) {
+						positions[i]=e.getKey();
+						values[i]=e.getValue();
+						i++;
+					}
+					byte[] bs=new byte[4+16*n];
+					Utils.writeInt(bs, 0, n);
+					for (i=0; i<n; i++) {
+						Utils.writeLong(bs, 4+16*i, positions[i]);
+						Utils.writeLong(bs, 4+16*i+8, values[i]);
+					}
+					redoPosition=dataLength;
+					MappedByteBuffer mbb=seekMap(redoPosition);
+					mbb.put(bs);
+					mbb.putInt(checksum(bs,0,bs.length));
+					markDirty(redoPosition);
+					setDataLength(redoPosition+bs.length+CRC_SIZE);
+				}
+
+				root=rootHash;
+				rec=new byte[SIZE_COMMIT];
+				Utils.writeLong(rec, 0, commitSequence+1);
+				Utils.writeLong(rec, 8, dataLength);
+				root.getBytes(rec, 16);
+				Utils.writeLong(rec, 16+Hash.LENGTH, redoPosition);
+				Utils.writeInt(rec, SIZE_COMMIT-CRC_SIZE, checksum(rec,0,SIZE_COMMIT-CRC_SIZE));
+
+				regions=dirtyRegions.stream().toArray();
+				dirtyRegions.clear();
+				extended=fileExtended;
+				fileExtended=false;
+
+				// from now on, slots in this commit are only changed in place by the next commit
+				committedLength=dataLength;
+			}
+
+			// everything the commit refers to must be on disk before the commit record
+			MappedByteBuffer[] map=regionMap;
+			for (int r: regions) {
+				if ((r<map.length)&&(map[r]!=null)) map[r].force();
+			}
+			if (extended) data.getChannel().force(false); // file length must be durable
+
+			long seq=commitSequence+1;
+			MappedByteBuffer mbb=seekMap(SIZE_HEADER_MAGIC+SIZE_COMMIT*(seq&1));
+			mbb.put(rec);
+			getInternalBuffer(0).force();
+			commitSequence=seq;
+			committedRootHash=root;
+
+			// apply slot writes in place, before removing them so readers always see them. A slot
+			// written again since the commit started keeps its newer pending value.
+			synchronized (this) {
+				for (int i=0; i<positions.length; i++) {
+					MappedByteBuffer smb=seekMap(positions[i]);
+					VarHandle.releaseFence();
+					smb.putLong(values[i]);
+					markDirty(positions[i]);
+					pendingSlots.remove(positions[i], values[i]);
+				}
+				if (pendingSlots.isEmpty()) {
+					// no writer can add pending slots while we hold the writer lock
+					for (int i=0; i<pendingBlocks.length(); i++) pendingBlocks.set(i, 0L);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the bit in the pending block filter for an index block
+	 */
+	private static int pendingBit(long indexPosition) {
+		return (int)((indexPosition*0x9E3779B97F4A7C15L)>>>52); // top 12 bits, PENDING_FILTER_BITS=4096
+	}
+
+	/**
+	 * Checks if an index block may have pending slot writes
+	 */
+	private boolean isPendingBlock(long indexPosition) {
+		int bit=pendingBit(indexPosition);
+		return (pendingBlocks.get(bit>>>6)&(1L<<bit))!=0;
+	}
+
+	/**
+	 * Marks the region containing a position as changed since the last commit. Called only by the writer.
+	 */
+	private void markDirty(long position) {
+		dirtyRegions.set((int)(position/MAX_REGION_SIZE));
+	}
+
+	/**
+	 * Requests a commit if there are many pending slot writes
+	 */
+	private void maybeCommit() {
+		if (pendingSlots.size()>=COMMIT_THRESHOLD) flushAsync();
+	}
+
+	/**
+	 * Requests that all changes are committed and flushed to persistent storage in the background.
+	 * With a flush interval set, the commit happens at the next interval, so that many callers share
+	 * a single commit. Otherwise it is started immediately.
+	 *
+	 * @return Future that completes when all changes made before this call are durable
+	 */
+	public CompletableFuture<Void> flushAsync() {
+		synchronized (flushLock) {
+			if (flushRequest==null) {
+				flushRequest=new CompletableFuture<>();
+				if (flushTask==null) FLUSHER.execute(this::runFlush);
+			}
+			return flushRequest;
+		}
+	}
+
+	/**
+	 * Sets the interval for background flushing. Changes are committed at least this often, and any
+	 * futures returned by flushAsync() complete at the next interval.
+	 *
+	 * @param millis Flush interval in milliseconds, or 0 to flush only when requested
+	 */
+	public void setFlushInterval(long millis) {
+		synchronized (flushLock) {
+			if (flushTask!=null) flushTask.cancel(false);
+			flushTask=null;
+			if (millis>0) {
+				flushTask=FLUSHER.scheduleWithFixedDelay(this::runFlush, millis, millis, TimeUnit.MILLISECONDS);
+			} else if (flushRequest!=null) {
+				FLUSHER.execute(this::runFlush);
+			}
+		}
+	}
+
+	/**
+	 * Background flush, completing any outstanding flush request
 	 */
-	protected void writeDataLength() throws IOException {
-		// write final data length
-		MappedByteBuffer mbb=seekMap(OFFSET_FILE_SIZE);
-		mbb.putLong(dataLength);
-		mbb=null;
+	private void runFlush() {
+		CompletableFuture<Void> request;
+		synchronized (flushLock) {
+			request=flushRequest;
+			flushRequest=null;
+		}
+		try {
+			commit();
+			if (request!=null) request.complete(null);
+		} catch (Throwable e) {
+			log.warn("Background flush failed for Etch file: {}",file,e);
+			if (request!=null) request.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Computes the CRC32C checksum of a byte range
+	 */
+	private static int checksum(byte[] bs, int offset, int length) {
+		CRC32C crc=new CRC32C();
+		crc.update(bs, offset, length);
+		return (int)crc.getValue();
+	}
+
+	/**
+	 * Computes the checksum of a data record
+	 */
+	private static int recordChecksum(byte[] key, int keyOffset, short lengthField, byte[] bs, int offset, int length) {
+		CRC32C crc=new CRC32C();
+		crc.update(key, keyOffset, KEY_SIZE);
+		crc.update((lengthField>>8)&0xFF);
+		crc.update(lengthField&0xFF);
+		crc.update(bs, offset, length);
+		return (int)crc.getValue();
 	}
 
 	/**
@@ -631,6 +1171,7 @@ public class Etch {
 		Utils.writeLong(temp, ix,dataPointer); // single node
 		MappedByteBuffer mbb=seekMap(position);
 		mbb.put(temp); // write full index block
+		markDirty(position);
 		// set the datalength to the last available byte in the file
 		setDataLength(position+INDEX_BLOCK_SIZE);
 		return position;
@@ -638,6 +1179,9 @@ public class Etch {
 
 	/**
 	 * Reads a Blob from the database, returning null if not found
+	 *
+	 * CONCURRENCY: Safe to call from any thread, does not take the writer lock.
+	 *
 	 * @param key Key to read from Store
 	 * @return Blob containing the data, or null if not found
 	 * @throws IOException If an IO error occurs
@@ -651,48 +1195,148 @@ public class Etch {
 			return null; // not found
 		}
 
-		// seek to correct position, skipping over key
-		MappedByteBuffer mbb=seekMap(pointer+KEY_SIZE);
-
-		// get flags byte
-		byte flagByte=mbb.get();
-
-		// Get memory size
-		long memorySize=mbb.getLong();
-
-		// get Data length
-		short length=mbb.getShort();
-		byte[] bs=new byte[length];
-		mbb.get(bs);
-		Blob encoding= Blob.wrap(bs);
+		EtchRecord record=readRecord(pointer);
+		Blob encoding=record.getEncoding();
+		long memorySize=record.getMemorySize();
 		try {
 			Hash hash=Hash.wrap(key);
-			ACell cell=store.decode(encoding);
-			cell.getEncoding().attachContentHash(hash);
+			ACell cell=store.decode(hash,encoding);
 
 			if (memorySize>0) {
 				// need to attach memory size for cell
 				cell.attachMemorySize(memorySize);
 			}
 
-			Ref<ACell> ref=RefSoft.create(store,cell, (int)flagByte);
+			Ref<ACell> ref=RefSoft.create(store,cell, record.getFlags());
 			cell.attachRef(ref);
 
 			return ref;
 		} catch (Exception e) {
-			throw new Error("Failed to read data in etch store: "+encoding.toHexString()+" flags = "+Utils.toHexString(flagByte)+" length ="+length+" pointer = "+Utils.toHexString(pointer)+ " memorySize="+memorySize,e);
+			throw new Error("Failed to read data in etch store: "+encoding.toHexString()+" flags = "+Utils.toHexString((byte)record.getFlags())+" length ="+encoding.count()+" pointer = "+Utils.toHexString(pointer)+ " memorySize="+memorySize,e);
 		}
 	}
 
 	/**
-	 * Flushes any changes to persistent storage.
-	 * @throws IOException If an IO error occurs
+	 * Reads the data record at a position, verifying its checksum
+	 * @param pointer Position of data record
+	 * @return Data record
+	 * @throws IOException If an IO error occurs or the record is corrupt
 	 */
-	public synchronized void flush() throws IOException {
-		for (MappedByteBuffer mbb: regionMap) {
-			if (mbb!=null) mbb.force();
+	private EtchRecord readRecord(long pointer) throws IOException {
+		MappedByteBuffer mbb=seekMap(pointer);
+		byte[] key=new byte[KEY_SIZE];
+		mbb.get(key);
+
+		// get flags byte. Acquire fence ensures memory size is visible if written before the flags
+		byte flagByte=mbb.get();
+		VarHandle.acquireFence();
+
+		// Get memory size, only valid if persisted
+		long memorySize=mbb.getLong();
+		if ((flagByte&Ref.STATUS_MASK)<Ref.PERSISTED) memorySize=0L;
+
+		// get Data length
+		short lengthField=mbb.getShort();
+		int length=lengthField&0x7FFF;
+		byte[] bs=new byte[length];
+		mbb.get(bs);
+		int crc=mbb.getInt();
+		if (crc!=recordChecksum(key,0,lengthField,bs,0,length)) {
+			throw new IOException("Checksum failure in Etch file "+file.getName()+" for key "+Hash.wrap(key)+" at position "+Utils.toHexString(pointer));
 		}
-		data.getChannel().force(false);
+		boolean compressed=(lengthField&COMPRESSED_MASK)!=0;
+		if (compressed) bs=decompress(bs,pointer);
+		int storedSize=KEY_SIZE+LABEL_SIZE+LENGTH_SIZE+length+CRC_SIZE;
+		return new EtchRecord(pointer,Hash.wrap(key),flagByte&0xFF,memorySize,storedSize,compressed,Blob.wrap(bs));
+	}
+
+	/**
+	 * Scans all index blocks and data records, in index order. Index blocks are visited depth first.
+	 *
+	 * CONCURRENCY: Safe to call from any thread, does not take the writer lock. Records written during
+	 * the scan may or may not be visited, and a record in a chain collapsed during the scan may be
+	 * visited twice.
+	 *
+	 * @param visitor Visitor to call for each index block, chain and data record
+	 * @throws IOException If an IO error occurs, or a data record is corrupt
+	 */
+	public void scan(IEtchVisitor visitor) throws IOException {
+		scanIndex(visitor,INDEX_START,0);
+	}
+
+	private void scanIndex(IEtchVisitor visitor, long indexPosition, int depth) throws IOException {
+		long[] slots=new long[256];
+		int used=0;
+		for (int i=0; i<256; i++) {
+			slots[i]=readSlot(indexPosition,i);
+			if (slots[i]!=0) used++;
+		}
+		visitor.visitIndexBlock(indexPosition, depth, used);
+
+		for (int i=0; i<256; i++) {
+			long slotValue=slots[i];
+			if (slotValue==0) continue;
+			long type=slotType(slotValue);
+			if (type==PTR_INDEX) {
+				scanIndex(visitor,slotPointer(slotValue),depth+1);
+				continue;
+			}
+			if (type==PTR_START) {
+				// chains may wrap around the end of the index block
+				int length=1;
+				while ((length<256)&&(slotType(slots[(i+length)&0xFF])==PTR_CHAIN)) length++;
+				visitor.visitChain(indexPosition, depth, length);
+			}
+			visitor.visitRecord(readRecord(slotPointer(slotValue)), depth);
+		}
+	}
+
+	/**
+	 * Decompresses the data of a compressed record
+	 */
+	private byte[] decompress(byte[] bs, long pointer) throws IOException {
+		try {
+			int n=((bs[0]&0xFF)<<8)|(bs[1]&0xFF);
+			byte[] result=new byte[n];
+			if (LZCodec.decompress(bs, 2, bs.length-2, result, 0, n)!=n) throw new IllegalArgumentException("Length mismatch");
+			return result;
+		} catch (RuntimeException e) {
+			throw new IOException("Bad compressed data in Etch file "+file.getName()+" at position "+Utils.toHexString(pointer),e);
+		}
+	}
+
+	/**
+	 * Sets whether new data records are compressed, where this saves space. Existing records are
+	 * readable in either case.
+	 * @param compression true to compress new records, false otherwise
+	 */
+	public synchronized void setCompression(boolean compression) {
+		this.compression=compression;
+	}
+
+	/**
+	 * Checks if the database contains a value for the given key. Does not decode the value.
+	 *
+	 * CONCURRENCY: Safe to call from any thread, does not take the writer lock.
+	 *
+	 * @param key Key to check
+	 * @return true if the key is present, false otherwise
+	 * @throws IOException If an IO error occurs
+	 */
+	public boolean contains(AArrayBlob key) throws IOException {
+		return seekPosition(key)>=0;
+	}
+
+	/**
+	 * Commits any changes and flushes them to persistent storage. After this returns, all data
+	 * written and the root hash will survive a crash.
+	 *
+	 * Only regions of the file changed since the last commit are forced to disk.
+	 *
+	 * @throws IOException If an IO error occurs
+	 */
+	public void flush() throws IOException {
+		commit();
 	}
 
 	/**
@@ -702,7 +1346,17 @@ public class Etch {
 	 * @throws IOException
 	 */
 	private long seekPosition(AArrayBlob key) throws IOException {
-		return seekPosition(key,0,INDEX_START);
+		while (true) {
+			long version=indexVersion;
+			long pos=seekPosition(key,0,INDEX_START);
+
+			// A found key is always valid, since data is immutable and keys are checked
+			if (pos>=0) return pos;
+
+			// A miss is only valid if the index was not restructured during the search
+			if (((version&1L)==0L)&&(version==indexVersion)) return -1;
+			Thread.onSpinWait();
+		}
 	}
 
 	/**
@@ -714,8 +1368,13 @@ public class Etch {
 	 */
 	private long readSlot(long indexPosition, int digit) throws IOException {
 		long pointerIndex=indexPosition+POINTER_SIZE*(digit&0xFF);
+		if ((pointerIndex<committedLength)&&isPendingBlock(indexPosition)) {
+			Long pending=pendingSlots.get(pointerIndex);
+			if (pending!=null) return pending;
+		}
 		MappedByteBuffer mbb=seekMap(pointerIndex);
 		long pointer=mbb.getLong();
+		VarHandle.acquireFence(); // pairs with release fence in writeSlot
 		return pointer;
 	}
 
@@ -754,20 +1413,24 @@ public class Etch {
 
 		if (currentFlags==newFlags) return ref;
 
-		// We have a status change, need to increase status of store
-		mbb=seekMap(position+KEY_SIZE);
-		mbb.put((byte)newFlags);
-
-		// maybe update size, if not already persisted
+		// maybe update size, if not already persisted. Written before flags for concurrent readers.
 		if ((currentSize==0L)&&((newFlags&Ref.STATUS_MASK)>=Ref.PERSISTED)) {
+			mbb=seekMap(position+KEY_SIZE+1);
 			mbb.putLong(ref.getValue().getMemorySize());
 		}
 
+		// We have a status change, need to increase status of store
+		VarHandle.releaseFence();
+		mbb=seekMap(position+KEY_SIZE);
+		mbb.put((byte)newFlags);
+		markDirty(position);
+
 		return ref.withFlags(newFlags);	// reflect merged flags
 	}
 
 	/**
-	 * Writes a slot value to an index block.
+	 * Writes a slot value to an index block. Slots before the committed length are held as pending
+	 * until the next commit.
 	 *
 	 * @param indexPosition
 	 * @param digit Digit radix position in index block (0..255), high bits are ignored
@@ -776,8 +1439,79 @@ public class Etch {
 	 */
 	private void writeSlot(long indexPosition, int digit, long slotValue) throws IOException {
 		long position=indexPosition+(digit&0xFF)*POINTER_SIZE;
+		if (position<committedLength) {
+			// committed slots are only changed in place by commit. Mark the block before the slot is pending.
+			int bit=pendingBit(indexPosition);
+			pendingBlocks.getAndUpdate(bit>>>6, v->v|(1L<<bit));
+			pendingSlots.put(position, slotValue);
+			updateIndexCache(indexPosition,digit,slotValue);
+			return;
+		}
 		MappedByteBuffer mbb=seekMap(position);
+		VarHandle.releaseFence(); // ensure pointed-to data is visible before the slot
 		mbb.putLong(slotValue);
+		markDirty(position);
+		updateIndexCache(indexPosition,digit,slotValue);
+	}
+
+	/**
+	 * Loads the index cache from the top two levels of the index. Called only on opening.
+	 */
+	private synchronized void initIndexCache() throws IOException {
+		loadCacheRow(0,INDEX_START);
+		for (int i=0; i<256; i++) {
+			long slotValue=indexCache.get(i);
+			if (slotType(slotValue)==PTR_INDEX) loadCacheRow(1+i,slotPointer(slotValue));
+		}
+	}
+
+	/**
+	 * Loads a row of the index cache from an index block. Called only by the writer.
+	 */
+	private void loadCacheRow(int row, long blockPosition) throws IOException {
+		long old=cacheBlocks[row];
+		if (old==blockPosition) return;
+		if (old!=0) cacheRows.remove(old);
+
+		// invalidate row while loading, so readers fall back to the file
+		cacheBlocks[row]=0;
+		VarHandle.releaseFence();
+		int base=row*256;
+		for (int i=0; i<256; i++) {
+			indexCache.put(base+i, readSlot(blockPosition,i));
+		}
+		VarHandle.releaseFence();
+		cacheBlocks[row]=blockPosition;
+		cacheRows.put(blockPosition,row);
+	}
+
+	/**
+	 * Updates the index cache after a slot write, if the index block is cached. Called only by the writer.
+	 */
+	private void updateIndexCache(long indexPosition, int digit, long slotValue) throws IOException {
+		Integer row=cacheRows.get(indexPosition);
+		if (row==null) return;
+		digit=digit&0xFF;
+
+		// a new index block under the root is cached before it is published in the cache
+		if ((row==0)&&(slotType(slotValue)==PTR_INDEX)) loadCacheRow(1+digit,slotPointer(slotValue));
+
+		VarHandle.releaseFence(); // ensure pointed-to data is visible before the cached slot
+		indexCache.put(row*256+digit, slotValue);
+	}
+
+	/**
+	 * Gets a slot value, using the index cache if the given row caches the index block
+	 * @param row Index cache row expected to hold the index block, or -1 if none
+	 */
+	private long readSlot(long indexPosition, int digit, int row) throws IOException {
+		if ((row>=0)&&(cacheBlocks[row]==indexPosition)) {
+			VarHandle.acquireFence();
+			long slotValue=indexCache.get(row*256+(digit&0xFF));
+			VarHandle.acquireFence();
+			if (cacheBlocks[row]==indexPosition) return slotValue; // row not reloaded while reading
+		}
+		return readSlot(indexPosition,digit);
 	}
 
 	/**
@@ -794,7 +1528,8 @@ public class Etch {
 		}
 
 		int digit=key.byteAt(offset)&0xFF;
-		long slotValue=readSlot(indexPosition,digit);
+		int row=(offset==0)?0:(offset==1)?1+(key.byteAt(0)&0xFF):-1; // index cache row for top two levels
+		long slotValue=readSlot(indexPosition,digit,row);
 		long type=(slotValue&TYPE_MASK);
 		if (slotValue==0) {
 			// Empty slot i.e. not found
@@ -810,18 +1545,16 @@ public class Etch {
 			// continuation of chain from some previous index, therefore key can't be present
 			return -1;
 		} else if (type==PTR_START) {
-			synchronized (this) {
-				// start of chain, so scan chain of entries
-				int i=0;
-				while (i<256) {
-					long ptr=slotValue&(~TYPE_MASK);
-					if (checkMatchingKey(key,ptr)) return ptr;
-
-					i++; // advance to next position
-					slotValue=readSlot(indexPosition,digit+i);
-					type=(slotValue&TYPE_MASK);
-					if (!(type==PTR_CHAIN)) return -1; // reached end of chain
-				}
+			// start of chain, so scan chain of entries
+			int i=0;
+			while (i<256) {
+				long ptr=slotValue&(~TYPE_MASK);
+				if (checkMatchingKey(key,ptr)) return ptr;
+
+				i++; // advance to next position
+				slotValue=readSlot(indexPosition,digit+i,row);
+				type=(slotValue&TYPE_MASK);
+				if (!(type==PTR_CHAIN)) return -1; // reached end of chain
 			}
 			return -1;
 		} else {
@@ -841,6 +1574,7 @@ public class Etch {
 		MappedByteBuffer mbb=seekMap(position);
 		Arrays.fill(temp,(byte)0);
 		mbb.put(temp);
+		markDirty(position);
 		// set the datalength to the last available byte in the file
 		setDataLength(position+INDEX_BLOCK_SIZE);
 		return position;
@@ -888,13 +1622,34 @@ public class Etch {
 			// Blob b=cell.createEncoding();
 			throw new Error("Etch trying to write zero length encoding for: "+Utils.getClassName(cell));
 		}
-		mbb.putShort(length);
+		byte[] bs=encoding.getInternalArray();
+		int offset=encoding.getInternalOffset();
+		short lengthField=length;
+
+		// compress if this saves space, with uncompressed length first
+		if (compression&&(length>=COMPRESSION_MIN_LENGTH)) {
+			byte[] cbuf=compressBuffer;
+			int n=LZCodec.compress(bs, offset, length, cbuf, 2, length-3);
+			if (n>0) {
+				Utils.writeShort(cbuf, 0, length);
+				bs=cbuf;
+				offset=0;
+				length=(short)(n+2);
+				lengthField=(short)(length|COMPRESSED_MASK);
+			}
+		}
+		mbb.putShort(lengthField);
 
 		// append blob value
-		mbb.put(encoding.getInternalArray(),encoding.getInternalOffset(),length);
+		mbb.put(bs,offset,length);
+
+		// append checksum
+		mbb.putInt(recordChecksum(key.getInternalArray(),key.getInternalOffset(),lengthField,bs,offset,length));
+
+		markDirty(position);
 
 		// set the datalength to the last available byte in the file
-		setDataLength(position+KEY_SIZE+LABEL_SIZE+LENGTH_SIZE+length);
+		setDataLength(position+KEY_SIZE+LABEL_SIZE+LENGTH_SIZE+length+CRC_SIZE);
 
 		// return file position for added data
 		return position;
@@ -919,23 +1674,30 @@ public class Etch {
 		return file;
 	}
 
-	public synchronized Hash getRootHash() throws IOException {
-		MappedByteBuffer mbb=seekMap(OFFSET_ROOT_HASH);
-		byte[] bs=new byte[Hash.LENGTH];
-		mbb.get(bs);
-		return Hash.wrap(bs);
+	/**
+	 * Gets the length of data in this Etch file, including uncommitted data
+	 * @return Data length in bytes
+	 */
+	public long getDataLength() {
+		return dataLength;
+	}
+
+	/**
+	 * Gets the root data hash from the Store. Does not take the writer lock.
+	 * @return Root hash value
+	 * @throws IOException If an IO error occurs
+	 */
+	public Hash getRootHash() throws IOException {
+		return rootHash;
 	}
 
 	/**
-	 * Writes the root data hash to the Store
+	 * Sets the root data hash for the Store. Written to the file at the next commit.
 	 * @param h Hash value to write
 	 * @throws IOException
 	 */
 	public synchronized void setRootHash(Hash h) throws IOException {
-		MappedByteBuffer mbb=seekMap(OFFSET_ROOT_HASH);
-		byte[] bs=h.getBytes();
-		assert(bs.length==Hash.LENGTH);
-		mbb.put(bs);
+		rootHash=h;
 	}
 
 	public void setStore(EtchStore etchStore) {
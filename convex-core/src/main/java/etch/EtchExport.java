@@ -0,0 +1,76 @@
+package etch;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import convex.core.data.ACell;
+import convex.core.data.Blob;
+import convex.core.data.Hash;
+import convex.core.data.Ref;
+import convex.core.exceptions.BadFormatException;
+import convex.core.store.Snapshot;
+
+/**
+ * Static functionality for exporting all data records of an Etch file, and importing them into another
+ * Etch store.
+ *
+ * An export uses the snapshot format (see {@link Snapshot}) with the root hash of the Etch file, but
+ * contains every record in the file regardless of reachability, in index order. The root record is
+ * written last.
+ *
+ * Ref flags are not exported, since they can't be trusted from a file. On import, all records are
+ * stored at STORED status, and the root is then persisted, which verifies that everything reachable
+ * from it is present.
+ */
+public class EtchExport {
+
+	/**
+	 * Writes all data records of an Etch file to an output stream. The root hash of the Etch file
+	 * must refer to a record in the file.
+	 *
+	 * @param etch Etch instance to export
+	 * @param out Output stream. Not closed by this method.
+	 * @return Number of records written
+	 * @throws IOException If an IO error occurs
+	 */
+	public static long write(Etch etch, OutputStream out) throws IOException {
+		BufferedOutputStream bos = new BufferedOutputStream(out);
+		Hash rootHash = etch.getRootHash();
+		Snapshot.writeHeader(bos, rootHash);
+
+		long[] count = new long[1];
+		Blob[] root = new Blob[1];
+		etch.scan((record, depth) -> {
+			if (record.getKey().equals(rootHash)) {
+				root[0] = record.getEncoding();
+				return;
+			}
+			Snapshot.writeCell(bos, record.getEncoding());
+			count[0]++;
+		});
+		if (root[0] != null) {
+			Snapshot.writeCell(bos, root[0]);
+			count[0]++;
+		}
+		bos.flush();
+		return count[0];
+	}
+
+	/**
+	 * Reads an export from an input stream into an Etch store, and sets the root hash of the Etch file
+	 * to the exported root hash. Records already present are merged as for any write.
+	 *
+	 * @param in Input stream. Not closed by this method.
+	 * @param store Etch store into which records are imported
+	 * @return Ref to the root cell of the export in the store
+	 * @throws IOException If an IO error occurs
+	 * @throws BadFormatException If the export is invalid, or data reachable from the root is missing
+	 */
+	public static Ref<ACell> read(InputStream in, EtchStore store) throws IOException, BadFormatException {
+		Ref<ACell> root = Snapshot.readAll(in, store, null);
+		store.getEtch().setRootHash(root.getHash());
+		return root;
+	}
+}
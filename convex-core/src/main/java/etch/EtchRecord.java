@@ -0,0 +1,100 @@
+package etch;
+
+import convex.core.data.Blob;
+import convex.core.data.Hash;
+import convex.core.data.Ref;
+
+/**
+ * A data record read from an Etch file by a scan. Immutable.
+ */
+public final class EtchRecord {
+	private final long position;
+	private final Hash key;
+	private final int flags;
+	private final long memorySize;
+	private final int storedSize;
+	private final boolean compressed;
+	private final Blob encoding;
+
+	EtchRecord(long position, Hash key, int flags, long memorySize, int storedSize, boolean compressed, Blob encoding) {
+		this.position=position;
+		this.key=key;
+		this.flags=flags;
+		this.memorySize=memorySize;
+		this.storedSize=storedSize;
+		this.compressed=compressed;
+		this.encoding=encoding;
+	}
+
+	/**
+	 * Gets the position of this record in the Etch file
+	 * @return File position
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Gets the key of this record, which is the hash of the encoding
+	 * @return Key hash
+	 */
+	public Hash getKey() {
+		return key;
+	}
+
+	/**
+	 * Gets the Ref flags stored with this record
+	 * @return Flags
+	 */
+	public int getFlags() {
+		return flags;
+	}
+
+	/**
+	 * Gets the Ref status stored with this record
+	 * @return Ref status
+	 */
+	public int getStatus() {
+		return flags&Ref.STATUS_MASK;
+	}
+
+	/**
+	 * Gets the memory size stored with this record, or 0 if not known
+	 * @return Memory size
+	 */
+	public long getMemorySize() {
+		return memorySize;
+	}
+
+	/**
+	 * Gets the total size of this record in the Etch file, including key, label and checksum
+	 * @return Size in bytes
+	 */
+	public int getStoredSize() {
+		return storedSize;
+	}
+
+	/**
+	 * Checks if this record is stored compressed
+	 * @return true if compressed, false otherwise
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * Gets the (uncompressed) cell encoding of this record
+	 * @return Encoding
+	 */
+	public Blob getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * Gets the tag byte of the cell encoding of this record
+	 * @return Tag byte
+	 */
+	public byte getTag() {
+		return encoding.byteAt(0);
+	}
+}
@@ -0,0 +1,237 @@
+package etch;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import convex.core.data.Tag;
+
+/**
+ * Statistics for the contents of an Etch file, collected by a scan. Includes counts and sizes of data
+ * records by cell tag and status, index block fill, index depth and chain lengths.
+ *
+ * Useful for capacity planning and tuning, since these are otherwise invisible in a large store.
+ */
+public class EtchStats implements IEtchVisitor {
+
+	/**
+	 * Maximum index depth, one level per key byte
+	 */
+	private static final int MAX_DEPTH=32;
+
+	private long records=0;
+	private long storedBytes=0;
+	private long encodingBytes=0;
+	private long compressedRecords=0;
+
+	private final long[] tagCounts=new long[256];
+	private final long[] tagBytes=new long[256];
+	private final long[] statusCounts=new long[16];
+
+	private long indexBlocks=0;
+	private long usedSlots=0;
+	private final long[] indexBlocksByDepth=new long[MAX_DEPTH];
+	private final long[] recordsByDepth=new long[MAX_DEPTH];
+
+	private long chains=0;
+	private long chainedRecords=0;
+	private int maxChainLength=0;
+
+	/**
+	 * Collects statistics for an Etch file by scanning all index blocks and data records
+	 * @param etch Etch instance to scan
+	 * @return Statistics for the Etch file
+	 * @throws IOException If an IO error occurs
+	 */
+	public static EtchStats collect(Etch etch) throws IOException {
+		EtchStats stats=new EtchStats();
+		etch.scan(stats);
+		return stats;
+	}
+
+	@Override
+	public void visitIndexBlock(long position, int depth, int usedSlots) {
+		indexBlocks++;
+		this.usedSlots+=usedSlots;
+		indexBlocksByDepth[depth]++;
+	}
+
+	@Override
+	public void visitChain(long position, int depth, int length) {
+		chains++;
+		chainedRecords+=length;
+		maxChainLength=Math.max(maxChainLength, length);
+	}
+
+	@Override
+	public void visitRecord(EtchRecord record, int depth) {
+		int tag=record.getTag()&0xFF;
+		long n=record.getEncoding().count();
+		records++;
+		storedBytes+=record.getStoredSize();
+		encodingBytes+=n;
+		if (record.isCompressed()) compressedRecords++;
+		tagCounts[tag]++;
+		tagBytes[tag]+=n;
+		statusCounts[record.getStatus()]++;
+		recordsByDepth[depth]++;
+	}
+
+	/**
+	 * Gets the number of data records
+	 * @return Number of records
+	 */
+	public long getRecordCount() {
+		return records;
+	}
+
+	/**
+	 * Gets the total size of data records in the file, including keys, labels and checksums
+	 * @return Size in bytes
+	 */
+	public long getStoredBytes() {
+		return storedBytes;
+	}
+
+	/**
+	 * Gets the total size of uncompressed cell encodings
+	 * @return Size in bytes
+	 */
+	public long getEncodingBytes() {
+		return encodingBytes;
+	}
+
+	/**
+	 * Gets the number of data records stored compressed
+	 * @return Number of records
+	 */
+	public long getCompressedCount() {
+		return compressedRecords;
+	}
+
+	/**
+	 * Gets the number of data records for a cell tag
+	 * @param tag Tag byte
+	 * @return Number of records
+	 */
+	public long getTagCount(byte tag) {
+		return tagCounts[tag&0xFF];
+	}
+
+	/**
+	 * Gets the total size of uncompressed cell encodings for a cell tag
+	 * @param tag Tag byte
+	 * @return Size in bytes
+	 */
+	public long getTagBytes(byte tag) {
+		return tagBytes[tag&0xFF];
+	}
+
+	/**
+	 * Gets the number of data records with a Ref status
+	 * @param status Ref status
+	 * @return Number of records
+	 */
+	public long getStatusCount(int status) {
+		return statusCounts[status&0x0F];
+	}
+
+	/**
+	 * Gets the number of index blocks
+	 * @return Number of index blocks
+	 */
+	public long getIndexBlockCount() {
+		return indexBlocks;
+	}
+
+	/**
+	 * Gets the fraction of index slots in use, over all index blocks
+	 * @return Index fill, between 0.0 and 1.0
+	 */
+	public double getIndexFill() {
+		if (indexBlocks==0) return 0.0;
+		return usedSlots/(256.0*indexBlocks);
+	}
+
+	/**
+	 * Gets the maximum depth of any index block
+	 * @return Maximum index depth, 0 if only the root index block exists
+	 */
+	public int getMaxDepth() {
+		int depth=0;
+		for (int i=0; i<MAX_DEPTH; i++) {
+			if (indexBlocksByDepth[i]>0) depth=i;
+		}
+		return depth;
+	}
+
+	/**
+	 * Gets the number of chains of data records within index blocks
+	 * @return Number of chains
+	 */
+	public long getChainCount() {
+		return chains;
+	}
+
+	/**
+	 * Gets the length of the longest chain
+	 * @return Maximum chain length
+	 */
+	public int getMaxChainLength() {
+		return maxChainLength;
+	}
+
+	/**
+	 * Gets a printable report of these statistics
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append(String.format("Records:      %d (%d stored bytes, %d encoding bytes)\n", records, storedBytes, encodingBytes));
+		sb.append(String.format("Compressed:   %d records\n", compressedRecords));
+		sb.append(String.format("Index blocks: %d (fill %.1f%%, max depth %d)\n", indexBlocks, getIndexFill()*100.0, getMaxDepth()));
+		double avgChain=(chains==0)?0.0:((double)chainedRecords)/chains;
+		sb.append(String.format("Chains:       %d (average length %.2f, max length %d)\n", chains, avgChain, maxChainLength));
+
+		sb.append("\nDepth  Index blocks       Records\n");
+		for (int i=0; i<=getMaxDepth(); i++) {
+			sb.append(String.format("%5d  %12d  %12d\n", i, indexBlocksByDepth[i], recordsByDepth[i]));
+		}
+
+		sb.append("\nStatus       Records\n");
+		for (int i=0; i<statusCounts.length; i++) {
+			if (statusCounts[i]==0) continue;
+			sb.append(String.format("%6d  %12d\n", i, statusCounts[i]));
+		}
+
+		sb.append("\nTag   Name                 Records         Bytes\n");
+		for (int i=0; i<256; i++) {
+			if (tagCounts[i]==0) continue;
+			sb.append(String.format("0x%02x  %-16s %12d  %12d\n", i, tagName(i), tagCounts[i], tagBytes[i]));
+		}
+		return sb.toString();
+	}
+
+	private static String[] TAG_NAMES=null;
+
+	/**
+	 * Gets the name of a tag as defined in {@link Tag}, or "?" if not known
+	 */
+	private static synchronized String tagName(int tag) {
+		if (TAG_NAMES==null) {
+			String[] names=new String[256];
+			for (Field f: Tag.class.getFields()) {
+				if (!Modifier.isStatic(f.getModifiers())||(f.getType()!=byte.class)) continue;
+				try {
+					int t=f.getByte(null)&0xFF;
+					if (names[t]==null) names[t]=f.getName();
+				} catch (IllegalAccessException e) {
+					// ignore, name not needed
+				}
+			}
+			TAG_NAMES=names;
+		}
+		String name=TAG_NAMES[tag];
+		return (name==null)?"?":name;
+	}
+}
@@ -2,8 +2,18 @@ package etch;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,22 +35,61 @@ import convex.core.util.Utils;
  * Objects are keyed by cryptographic hash. That solves naming. Objects are
  * immutable. That solves cache invalidation.
  *
- * Garbage collection is left as an exercise for the reader.
+ * Garbage collection is performed by copying: live data reachable from a set of roots
+ * is copied to a new Etch file, which then atomically replaces the original file.
+ * Reads continue to work throughout, and writes during GC go to the new file.
  */
 public class EtchStore extends AStore {
 	private static final Logger log = LoggerFactory.getLogger(EtchStore.class.getName());
 
+	/**
+	 * Number of cells copied to the GC target in each batch write
+	 */
+	private static final int GC_BATCH_SIZE=1000;
+
 	/**
 	 * Etch file instance for the current store
 	 */
-	private Etch etch;
+	private volatile Etch etch;
 	
 	/**
 	 * Etch file instance for GC destination
 	 */
-	private Etch target;
+	private volatile Etch target;
+
+	/**
+	 * Lock for switching Etch instances. Writers hold the read lock, GC start and file swap hold
+	 * the write lock. Readers only take the read lock if a read fails during a swap.
+	 */
+	private final ReentrantReadWriteLock gcLock=new ReentrantReadWriteLock();
+
+	/**
+	 * Lock held for a whole GC cycle, so that only one cycle runs at a time
+	 */
+	private final ReentrantLock gcRunLock=new ReentrantLock();
+
+	/**
+	 * Number of completed GC cycles. Once non-zero, Ref status can't be trusted without checking
+	 * the store, since Refs held in memory may have been persisted to a file since replaced.
+	 */
+	private volatile long generation=0;
+
+	/**
+	 * Background flush interval in milliseconds, applied to all Etch files of this store
+	 */
+	private long flushInterval=0;
 
 	public EtchStore(Etch etch) {
+		this(etch,DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates an EtchStore with a given decoded cell cache size
+	 * @param etch Etch file instance
+	 * @param cacheSize Byte budget for decoded cell cache
+	 */
+	public EtchStore(Etch etch, long cacheSize) {
+		super(cacheSize);
 		this.etch = etch;
 		this.target=null;
 		etch.setStore(this);
@@ -51,19 +100,210 @@ public class EtchStore extends AStore {
 	 * the new store
 	 * @throws IOException If an IO exception occurs
 	 */
-	public synchronized void startGC() throws IOException {
-		if (target!=null) throw new Error("Already collecting!");
-		File temp=new File(etch.getFile().getCanonicalPath()+"~");
-		target=Etch.create(temp);
-		
-		// copy across current root hash
-		target.setRootHash(etch.getRootHash());
+	public void startGC() throws IOException {
+		gcRunLock.lock();
+		gcLock.writeLock().lock();
+		try {
+			if (target!=null) throw new Error("Already collecting!");
+			File temp=new File(etch.getFile().getCanonicalPath()+"~");
+			if (temp.exists()) {
+				// left over from an interrupted GC, contents are not trusted
+				if (!temp.delete()) throw new IOException("Unable to delete old GC file: "+temp);
+			}
+			Etch newTarget=openEtch(temp);
+			
+			// copy across current root hash
+			newTarget.setRootHash(etch.getRootHash());
+			target=newTarget;
+		} finally {
+			gcLock.writeLock().unlock();
+			gcRunLock.unlock();
+		}
 	}
 	
-	private Etch getWriteEtch() {
-		if (target!=null) synchronized(this) {
-			if (target!=null) return target;
+	/**
+	 * Checks if a GC cycle is in progress
+	 * @return true if collecting, false otherwise
+	 */
+	public boolean isCollecting() {
+		return target!=null;
+	}
+
+	/**
+	 * Runs a complete GC cycle. Copies all cells reachable from the store root data and the given 
+	 * roots to a new Etch file, then replaces the current file with it. Data not reachable from 
+	 * these roots is discarded.
+	 * 
+	 * Reads and writes may continue concurrently. If GC fails, the cycle remains in progress 
+	 * (with writes directed to the new file) and may be completed by calling this method again.
+	 * 
+	 * @param roots Additional roots to retain, e.g. current Peer data. May be empty.
+	 * @throws IOException If an IO exception occurs
+	 */
+	public void gc(Collection<ACell> roots) throws IOException {
+		gc(()->roots);
+	}
+
+	/**
+	 * Runs a complete GC cycle, as {@link #gc(Collection)}. Only one cycle runs at a time.
+	 * 
+	 * Roots are obtained once new writes are directed to the new file, and again while the file 
+	 * swap holds the write lock, so that data persisted concurrently is retained. Refs held in 
+	 * memory keep the status they had in the old file, so after GC that status is confirmed 
+	 * against the store before it is trusted, and cells not retained are written again when 
+	 * persisted. Cells which may no longer be in memory by then (e.g. soft Refs in queued 
+	 * messages awaiting processing) should be reachable from the roots.
+	 * 
+	 * @param roots Supplier for additional roots to retain. Must not block on store access.
+	 * @throws IOException If an IO exception occurs
+	 */
+	public void gc(Supplier<? extends Collection<ACell>> roots) throws IOException {
+		gcRunLock.lock();
+		try {
+			if (target==null) startGC();
+			Etch source=etch;
+			LinkedHashMap<Hash,Ref<ACell>> batch=new LinkedHashMap<>();
+			copyRoots(roots.get(),source,batch);
+			completeGC(roots,source,batch);
+		} finally {
+			gcRunLock.unlock();
 		}
+	}
+
+	/**
+	 * Copies the store root data and the given roots to the GC target
+	 * @param roots Additional roots to retain
+	 * @param source Etch instance being collected
+	 * @param batch Pending batch of cells to write to target
+	 * @throws IOException If an IO exception occurs
+	 */
+	private void copyRoots(Collection<ACell> roots, Etch source, LinkedHashMap<Hash,Ref<ACell>> batch) throws IOException {
+		// root hash is maintained in the target, since root data updates are written there during GC
+		Ref<ACell> rootRef=readRef(target.getRootHash());
+		if (rootRef!=null) copyLive(rootRef,source,batch);
+		for (ACell cell: roots) {
+			if (cell==null) continue;
+			copyLive(cell.getRef(),source,batch);
+		}
+		writeBatch(batch);
+	}
+
+	/**
+	 * Copies a Ref and all reachable children to the GC target, children first. Cells already in 
+	 * the target are skipped.
+	 * 
+	 * @param ref Ref to copy
+	 * @param source Etch instance being collected
+	 * @param batch Pending batch of cells to write to target
+	 * @throws IOException If an IO exception occurs
+	 */
+	private void copyLive(Ref<ACell> ref, Etch source, LinkedHashMap<Hash,Ref<ACell>> batch) throws IOException {
+		Hash hash=ref.getHash();
+		// non-direct Refs always point to non-embedded cells in the store
+		boolean embedded=ref.isDirect()&&ref.isEmbedded();
+		if (!embedded) {
+			if (batch.containsKey(hash)||target.contains(hash)) return;
+
+			// prefer stored version to retain stored flags
+			Ref<ACell> stored=source.read(hash);
+			if (stored!=null) {
+				ref=stored;
+			} else if (!ref.isDirect()) {
+				return; // not available, nothing to copy
+			}
+		}
+
+		ACell cell=ref.getValue();
+		if (cell==null) return;
+		int n=cell.getRefCount();
+		for (int i=0; i<n; i++) {
+			copyLive(cell.getRef(i),source,batch);
+		}
+
+		if (!embedded) {
+			batch.put(hash, ref);
+			if (batch.size()>=GC_BATCH_SIZE) writeBatch(batch);
+		}
+	}
+
+	/**
+	 * Writes a batch of cells to the GC target, and clears the batch
+	 * @param batch Batch of cells
+	 * @throws IOException If an IO exception occurs
+	 */
+	private void writeBatch(LinkedHashMap<Hash,Ref<ACell>> batch) throws IOException {
+		if (batch.isEmpty()) return;
+		gcLock.readLock().lock();
+		try {
+			target.writeAll(batch.values());
+		} finally {
+			gcLock.readLock().unlock();
+		}
+		batch.clear();
+	}
+
+	/**
+	 * Completes a GC cycle, replacing the current Etch file with the GC target file. Copies roots
+	 * again first, so that the final state of the roots is retained.
+	 * @param roots Supplier for additional roots to retain
+	 * @param source Etch instance being collected
+	 * @param batch Pending batch of cells to write to target
+	 * @throws IOException If an IO exception occurs
+	 */
+	private void completeGC(Supplier<? extends Collection<ACell>> roots, Etch source, LinkedHashMap<Hash,Ref<ACell>> batch) throws IOException {
+		gcLock.writeLock().lock();
+		try {
+			// no concurrent writes from here, so this is the final state of the roots
+			copyRoots(roots.get(),source,batch);
+
+			Etch newEtch=target;
+			File file=source.getFile();
+			File temp=newEtch.getFile();
+			newEtch.flush();
+			newEtch.close();
+			source.close();
+
+			try {
+				try {
+					Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			} catch (IOException e) {
+				// reopen both files, so the store stays usable with GC still in progress
+				etch=openEtch(file);
+				target=openEtch(temp);
+				throw e;
+			}
+
+			etch=openEtch(file);
+			target=null;
+			generation++;
+
+			// cached cells may hold Refs with status from the old file
+			blobCache.clear();
+			log.info("Etch GC completed on file: {} with data length: {}",file,file.length());
+		} finally {
+			gcLock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Opens an Etch file for use by this store
+	 * @param file File to open
+	 * @return Etch instance
+	 * @throws IOException If an IO exception occurs
+	 */
+	private Etch openEtch(File file) throws IOException {
+		Etch e=Etch.create(file);
+		e.setStore(this);
+		e.setFlushInterval(flushInterval);
+		return e;
+	}
+
+	private Etch getWriteEtch() {
+		Etch t=target;
+		if (t!=null) return t;
 		return etch;
 	}
 
@@ -80,6 +320,20 @@ public class EtchStore extends AStore {
 		return new EtchStore(etch);
 	}
 
+	/**
+	 * Creates an EtchStore using a specified file, with a given decoded cell cache size.
+	 *
+	 * @param file File to use for storage. Will be created it it does not already
+	 *             exist.
+	 * @param cacheSize Byte budget for decoded cell cache
+	 * @return EtchStore instance
+	 * @throws IOException If an IO error occurs
+	 */
+	public static EtchStore create(File file, long cacheSize) throws IOException {
+		Etch etch = Etch.create(file);
+		return new EtchStore(etch,cacheSize);
+	}
+
 	/**
 	 * Create an Etch store using a new temporary file with the given prefix
 	 *
@@ -89,24 +343,12 @@ public class EtchStore extends AStore {
 	public static EtchStore createTemp(String prefix) {
 		try {
 			Etch etch = Etch.createTempEtch(prefix);
-			return new EtchStore(etch);
+			return new EtchStore(etch,SMALL_CACHE_SIZE);
 		} catch (IOException e) {
 			throw Utils.sneakyThrow(e);
 		}
 	}
 	
-	/**
-	 * Mark GC roots for retention during garbage collection
-	 * @param roots Cell roots to maintain
-	 * @param handler Handler to call for each Cell marked
-	 */
-	public void mark(Collection<ACell>  roots, Consumer<Ref<ACell>> handler) {
-		for (ACell cell: roots) {
-			if (cell==null) continue;
-			cell.mark(handler);
-		}
-	}
-
 	/**
 	 * Create an Etch store using a new temporary file with a generated prefix
 	 *
@@ -115,18 +357,55 @@ public class EtchStore extends AStore {
 	public static EtchStore createTemp() {
 		try {
 			Etch etch = Etch.createTempEtch();
-			return new EtchStore(etch);
+			return new EtchStore(etch,SMALL_CACHE_SIZE);
 		} catch (IOException e) {
 			throw Utils.sneakyThrow(e);
 		}
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public <T extends ACell> Ref<T> refForHash(Hash hash) {
 		try {
-			Ref<ACell> existing = etch.read(hash);
-			return (Ref<T>) existing;
+			return readRef(hash);
+		} catch (IOException e) {
+			// Might be a concurrent Etch file swap, so retry once swap is complete
+			gcLock.readLock().lock();
+			try {
+				return readRef(hash);
+			} catch (IOException e2) {
+				throw Utils.sneakyThrow(e2);
+			} finally {
+				gcLock.readLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Reads a Ref from the GC target if collecting, or from the current Etch file
+	 * @param hash Hash of value
+	 * @return Stored Ref, or null if not found
+	 * @throws IOException If an IO exception occurs
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends ACell> Ref<T> readRef(Hash hash) throws IOException {
+		Etch t=target;
+		if (t!=null) {
+			Ref<ACell> existing = t.read(hash);
+			if (existing!=null) return (Ref<T>) existing;
+		}
+		return (Ref<T>) etch.read(hash);
+	}
+
+	/**
+	 * Reads a Ref from the Etch file currently receiving writes. During GC, this ensures that 
+	 * new writes include all children not yet copied to the GC target.
+	 * @param hash Hash of value
+	 * @return Stored Ref, or null if not found
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends ACell> Ref<T> refForWrite(Hash hash) {
+		try {
+			return (Ref<T>) getWriteEtch().read(hash);
 		} catch (IOException e) {
 			throw Utils.sneakyThrow(e);
 		}
@@ -142,13 +421,62 @@ public class EtchStore extends AStore {
 		return storeRef(ref, noveltyHandler, status, true);
 	}
 
-	@SuppressWarnings("unchecked")
 	public <T extends ACell> Ref<T> storeRef(Ref<T> ref, Consumer<Ref<ACell>> noveltyHandler, int requiredStatus,
 			boolean topLevel) {
+		// Collect novel cells, then write them to the store as a single batch
+		LinkedHashMap<Hash,Ref<ACell>> batch=new LinkedHashMap<>();
+		List<Ref<ACell>> written;
+		Ref<T> result;
+		gcLock.readLock().lock();
+		try {
+			result=collectRef(ref, batch, requiredStatus, topLevel, target!=null);
+			if (batch.isEmpty()) return result;
+			written=getWriteEtch().writeAll(batch.values());
+		} catch (IOException e) {
+			throw Utils.sneakyThrow(e);
+		} finally {
+			gcLock.readLock().unlock();
+		}
+
+		HashMap<Hash,Ref<ACell>> results=new HashMap<>(written.size());
+		for (Ref<ACell> r: written) {
+			results.put(r.getHash(), r);
+		}
+
+		// call novelty handler if newly persisted non-embedded, in collection order (children first)
+		if (noveltyHandler != null) {
+			for (Hash h: batch.keySet()) {
+				Ref<ACell> r=results.get(h);
+				if (!r.getValue().isEmbedded()) noveltyHandler.accept(r);
+			}
+		}
+
+		if (topLevel) {
+			@SuppressWarnings("unchecked")
+			Ref<T> topResult=(Ref<T>)results.get(result.getHash());
+			if (topResult!=null) result=topResult;
+		}
+		return result;
+	}
+
+	/**
+	 * Persists a Ref to the required status, collecting Refs that need to be written into a batch.
+	 * Children are collected before their parents, so batch iteration order is safe for novelty handling.
+	 * 
+	 * @param ref Ref to persist
+	 * @param batch Map of Refs to be written, keyed by hash
+	 * @param requiredStatus Required status for persisted Refs
+	 * @param topLevel True if this is the top level Ref (will be written even if embedded)
+	 * @param collecting True if GC is in progress. Ref status can't be trusted, since it may refer to the old file.
+	 * @return Updated Ref, with status at least equal to the required status
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends ACell> Ref<T> collectRef(Ref<T> ref, HashMap<Hash,Ref<ACell>> batch, int requiredStatus,
+			boolean topLevel, boolean collecting) {
 		// first check if the Ref is already persisted to required level
-		if (ref.getStatus() >= requiredStatus) {
-			// we are done as long as not top level
-			if (!topLevel) return ref;
+		if ((ref.getStatus() >= requiredStatus)&&!collecting) {
+			// we are done as long as not top level, and the status is still valid after any GC
+			if (!topLevel && ((generation==0)||isStored(ref))) return ref;
 		}
 
 		final ACell cell = ref.getValue();
@@ -158,10 +486,13 @@ public class EtchStore extends AStore {
 		// check store for existing ref first.
 		boolean embedded = cell.isEmbedded();
 		Hash hash = null;
-		// if not embedded, worth checking store first for existing value
+		// if not embedded, worth checking batch and store first for existing value
 		if (!embedded) {
 			hash = ref.getHash();
-			Ref<T> existing = refForHash(hash);
+			Ref<ACell> pending = batch.get(hash);
+			if (pending != null) return (Ref<T>) pending;
+			
+			Ref<T> existing = refForWrite(hash);
 			if (existing != null) {
 				// Return existing ref if status is sufficient
 				if (existing.getStatus() >= requiredStatus) {
@@ -174,7 +505,7 @@ public class EtchStore extends AStore {
 		// beyond STORED level, need to recursively persist child refs if they exist
 		if ((requiredStatus > Ref.STORED)&&(cell.getRefCount()>0)) {
 			IRefFunction func = r -> {
-				return storeRef((Ref<ACell>) r, noveltyHandler, requiredStatus, false);
+				return collectRef((Ref<ACell>) r, batch, requiredStatus, false, collecting);
 			};
 
 			// need to do recursive persistence
@@ -185,31 +516,31 @@ public class EtchStore extends AStore {
 			if (cell != newObject) ref = ref.withValue((T) newObject);
 		}
 
+		// ensure status is set when we write to store
+		ref = ref.withMinimumStatus(requiredStatus);
 		if (topLevel || !embedded) {
-			// Do actual write to store
+			// Add to batch for writing to store
 			final Hash fHash = (hash != null) ? hash : ref.getHash();
 			if (log.isTraceEnabled()) {
 				log.trace( "Etch persisting at status=" + requiredStatus + " hash = 0x"
 						+ fHash.toHexString() + " ref of class " + Utils.getClassName(cell) + " with store " + this);
 			}
+			batch.put(fHash, (Ref<ACell>) ref);
+		}
+		return ref;
+	}
 
-			Ref<ACell> result;
-			try {
-				// ensure status is set when we write to store
-				ref = ref.withMinimumStatus(requiredStatus);
-				result = etch.write(fHash, (Ref<ACell>) ref);
-			} catch (IOException e) {
-				throw Utils.sneakyThrow(e);
-			}
-
-			// call novelty handler if newly persisted non-embedded
-			if (noveltyHandler != null) {
-				if (!embedded) noveltyHandler.accept(result);
-			}
-			return (Ref<T>) result;
-		} else {
-			// no need to write, just tag updated status
-			return ref.withMinimumStatus(requiredStatus);
+	/**
+	 * Checks if the value of a Ref is present in the Etch file currently receiving writes. Cheaper
+	 * than reading the Ref, since the value is not decoded.
+	 * @param ref Ref to check
+	 * @return true if present, false otherwise (including for embedded values not stored)
+	 */
+	private boolean isStored(Ref<?> ref) {
+		try {
+			return getWriteEtch().contains(ref.getHash());
+		} catch (IOException e) {
+			throw Utils.sneakyThrow(e);
 		}
 	}
 
@@ -228,7 +559,14 @@ public class EtchStore extends AStore {
 	}
 
 	public void close() {
-		etch.close();
+		gcLock.writeLock().lock();
+		try {
+			etch.close();
+			Etch target=this.target;
+			if (target!=null) target.close();
+		} finally {
+			gcLock.writeLock().unlock();
+		}
 	}
 
 	/**
@@ -236,9 +574,44 @@ public class EtchStore extends AStore {
 	 * @throws IOException If an IO error occurs
 	 */
 	public void flush() throws IOException  {
-		etch.flush();
-		Etch target=this.target;
-		if (target!=null) target.flush();
+		gcLock.readLock().lock();
+		try {
+			etch.flush();
+			Etch target=this.target;
+			if (target!=null) target.flush();
+		} finally {
+			gcLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public CompletableFuture<Void> flushAsync() {
+		gcLock.readLock().lock();
+		try {
+			CompletableFuture<Void> f=etch.flushAsync();
+			Etch target=this.target;
+			if (target==null) return f;
+			return CompletableFuture.allOf(f,target.flushAsync());
+		} finally {
+			gcLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Sets the interval for background flushing of this store. With an interval set, requests
+	 * from flushAsync() are grouped into a single commit at the next interval.
+	 * @param millis Flush interval in milliseconds, or 0 to flush as soon as requested
+	 */
+	public void setFlushInterval(long millis) {
+		gcLock.readLock().lock();
+		try {
+			flushInterval=millis;
+			etch.setFlushInterval(millis);
+			Etch target=this.target;
+			if (target!=null) target.setFlushInterval(millis);
+		} finally {
+			gcLock.readLock().unlock();
+		}
 	}
 
 	public File getFile() {
@@ -255,9 +628,13 @@ public class EtchStore extends AStore {
 		// Ensure data if persisted at sufficient level
 		Ref<ACell> ref=storeTopRef(data.getRef(), Ref.PERSISTED,null);
 		Hash h=ref.getHash();
-		Etch etch=getWriteEtch();
-		etch.setRootHash(h);
-		etch.writeDataLength(); // ensure data length updated for root data addition
+		gcLock.readLock().lock();
+		try {
+			Etch etch=getWriteEtch();
+			etch.setRootHash(h); // durable at next flush
+		} finally {
+			gcLock.readLock().unlock();
+		}
 	}
 
 	/**
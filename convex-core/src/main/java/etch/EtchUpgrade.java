@@ -0,0 +1,158 @@
+package etch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import convex.core.data.ACell;
+import convex.core.data.Blob;
+import convex.core.data.Format;
+import convex.core.data.Hash;
+import convex.core.data.Ref;
+import convex.core.exceptions.BadFormatException;
+import convex.core.util.Utils;
+
+/**
+ * Static functionality for upgrading Etch files from the earlier format without commit records or
+ * checksums (magic number 0xe7c6), which {@link Etch} no longer opens.
+ *
+ * Every data record of the old file is copied, with its Ref flags and memory size, into a new Etch file,
+ * and the root hash is set to that of the old file. The old file is only read.
+ *
+ * The earlier format has a 42 byte header (magic number, database length, root hash) followed by the
+ * root index block. Index blocks and pointer types are as in the current format. Data records have no
+ * checksum and are never compressed.
+ */
+public class EtchUpgrade {
+
+	private static final byte[] MAGIC_NUMBER_V1 = Utils.hexToBytes("e7c6");
+
+	private static final int KEY_SIZE = 32;
+	private static final int LABEL_SIZE = 1 + 8;
+	private static final int LENGTH_SIZE = 2;
+	private static final int POINTER_SIZE = 8;
+	private static final int INDEX_BLOCK_SIZE = POINTER_SIZE * 256;
+
+	private static final long OFFSET_FILE_SIZE = 2;
+	private static final long OFFSET_ROOT_HASH = 2 + 8;
+	private static final long INDEX_START = 2 + 8 + 32;
+
+	private static final long TYPE_MASK = 0xC000000000000000L;
+	private static final long PTR_INDEX = 0x4000000000000000L;
+
+	/**
+	 * Checks if a file is an Etch file in the earlier format
+	 * @param file File to check
+	 * @return true if the file starts with the earlier magic number, false otherwise
+	 * @throws IOException If an IO error occurs
+	 */
+	public static boolean isUpgradable(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			if (raf.length() < INDEX_START) return false;
+			byte[] check = new byte[MAGIC_NUMBER_V1.length];
+			raf.readFully(check);
+			return Arrays.equals(MAGIC_NUMBER_V1, check);
+		}
+	}
+
+	/**
+	 * Copies all data records of an Etch file in the earlier format into an Etch instance, and sets its
+	 * root hash to the root hash of the old file. Changes are flushed before this returns.
+	 *
+	 * @param source Etch file in the earlier format
+	 * @param target Etch instance to receive the records, usually a new file
+	 * @return Number of records copied
+	 * @throws IOException If an IO error occurs, or the source file is not valid
+	 */
+	public static long upgrade(File source, Etch target) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(source, "r")) {
+			FileChannel channel = raf.getChannel();
+			byte[] check = new byte[MAGIC_NUMBER_V1.length];
+			read(channel, 0, check);
+			if (!Arrays.equals(MAGIC_NUMBER_V1, check)) {
+				throw new IOException("Not an Etch file in the earlier format: " + source);
+			}
+			byte[] header = new byte[(int) (INDEX_START - OFFSET_FILE_SIZE)];
+			read(channel, OFFSET_FILE_SIZE, header);
+			long length = Utils.readLong(header, 0);
+			if ((length < INDEX_START + INDEX_BLOCK_SIZE) || (length > channel.size())) {
+				throw new IOException("Bad database length " + length + " in Etch file: " + source);
+			}
+			Hash rootHash = Hash.wrap(header, (int) (OFFSET_ROOT_HASH - OFFSET_FILE_SIZE));
+
+			long count = copyIndex(channel, length, INDEX_START, target, 0);
+			target.setRootHash(rootHash);
+			target.flush();
+			return count;
+		}
+	}
+
+	private static long copyIndex(FileChannel channel, long length, long indexPosition, Etch target, int depth) throws IOException {
+		if ((depth >= KEY_SIZE) || (indexPosition + INDEX_BLOCK_SIZE > length)) {
+			throw new IOException("Bad index block at position " + indexPosition);
+		}
+		byte[] block = new byte[INDEX_BLOCK_SIZE];
+		read(channel, indexPosition, block);
+		long count = 0;
+		for (int i = 0; i < 256; i++) {
+			long slotValue = Utils.readLong(block, i * POINTER_SIZE);
+			if (slotValue == 0) continue;
+			long pointer = slotValue & ~TYPE_MASK;
+			if ((slotValue & TYPE_MASK) == PTR_INDEX) {
+				count += copyIndex(channel, length, pointer, target, depth + 1);
+			} else {
+				copyRecord(channel, length, pointer, target);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static void copyRecord(FileChannel channel, long length, long pointer, Etch target) throws IOException {
+		int headerSize = KEY_SIZE + LABEL_SIZE + LENGTH_SIZE;
+		if ((pointer < INDEX_START) || (pointer + headerSize > length)) {
+			throw new IOException("Bad data pointer " + pointer);
+		}
+		byte[] header = new byte[headerSize];
+		read(channel, pointer, header);
+		Hash key = Hash.wrap(Arrays.copyOf(header, KEY_SIZE));
+		int flags = header[KEY_SIZE] & 0xFF;
+		long memorySize = Utils.readLong(header, KEY_SIZE + 1);
+		int n = ((header[KEY_SIZE + LABEL_SIZE] & 0xFF) << 8) | (header[KEY_SIZE + LABEL_SIZE + 1] & 0xFF);
+		if ((n == 0) || (pointer + headerSize + n > length)) {
+			throw new IOException("Bad data length " + n + " at position " + pointer);
+		}
+		byte[] bs = new byte[n];
+		read(channel, pointer + headerSize, bs);
+
+		ACell cell;
+		try {
+			cell = Format.read(Blob.wrap(bs));
+		} catch (BadFormatException e) {
+			throw new IOException("Bad encoding for key " + key + " at position " + pointer, e);
+		}
+		if ((cell == null) || !key.equals(cell.getHash())) {
+			throw new IOException("Encoding does not match key " + key + " at position " + pointer);
+		}
+		if ((flags & Ref.STATUS_MASK) >= Ref.PERSISTED) {
+			if (memorySize > 0) {
+				cell.attachMemorySize(memorySize);
+			} else {
+				flags = (flags & ~Ref.STATUS_MASK) | Ref.STORED; // memory size needed for PERSISTED
+			}
+		}
+		target.write(key, cell.getRef().withFlags(flags));
+	}
+
+	private static void read(FileChannel channel, long position, byte[] bs) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(bs);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, position + buf.position()) < 0) {
+				throw new IOException("Unexpected end of file at position " + (position + buf.position()));
+			}
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package etch;
+
+import java.io.IOException;
+
+/**
+ * Visitor for a scan over the index and data records of an Etch file. See {@link Etch#scan(IEtchVisitor)}
+ */
+public interface IEtchVisitor {
+
+	/**
+	 * Called for each index block, before any of its contents
+	 * @param position Position of index block in file
+	 * @param depth Depth of index block, 0 for the root index block
+	 * @param usedSlots Number of non-empty slots in the index block
+	 */
+	public default void visitIndexBlock(long position, int depth, int usedSlots) {}
+
+	/**
+	 * Called for each chain of data records within an index block
+	 * @param position Position of index block containing the chain
+	 * @param depth Depth of index block
+	 * @param length Number of data records in the chain
+	 */
+	public default void visitChain(long position, int depth, int length) {}
+
+	/**
+	 * Called for each data record
+	 * @param record Data record
+	 * @param depth Depth of index block containing the record
+	 * @throws IOException If an IO error occurs
+	 */
+	public void visitRecord(EtchRecord record, int depth) throws IOException;
+}
@@ -0,0 +1,167 @@
+package etch;
+
+import java.util.Arrays;
+
+/**
+ * Fast LZ77 codec for small byte arrays, used to compress Etch data records.
+ *
+ * The compressed format is a sequence of blocks, each of which contains:
+ * - Token (1 byte): high 4 bits literal length, low 4 bits match length minus MIN_MATCH
+ * - Extra literal length bytes if the literal length is 15 (each added, ending with a byte below 255)
+ * - Literal bytes
+ * - Match offset (2 bytes, big-endian), omitted in the final block
+ * - Extra match length bytes if the match length is 15, as for the literal length
+ *
+ * The final block contains only literals, and ends exactly at the end of the compressed data.
+ *
+ * Matches are found with a single hash table probe per position, which favours speed over ratio.
+ * This works well for cell encodings, where repetition mostly comes from common field structure
+ * and repeated values such as keys and addresses.
+ */
+public final class LZCodec {
+
+	private static final int MIN_MATCH=4;
+	private static final int MAX_OFFSET=0xFFFF;
+	private static final int HASH_BITS=12;
+	private static final int MIN_HASH_BITS=6;
+
+	private static final ThreadLocal<int[]> hashTable=ThreadLocal.withInitial(()->new int[1<<HASH_BITS]);
+
+	private LZCodec() {}
+
+	/**
+	 * Compresses a byte range
+	 * @param src Source array
+	 * @param srcOffset Offset of data in source array
+	 * @param srcLength Length of data
+	 * @param dst Destination array
+	 * @param dstOffset Offset in destination array
+	 * @param dstLimit Maximum number of bytes to write
+	 * @return Number of bytes written, or -1 if compressed data would exceed dstLimit
+	 */
+	public static int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLimit) {
+		// Use only as much of the table as the input needs, so small inputs clear only a small table
+		int hashBits=Math.max(MIN_HASH_BITS, Math.min(HASH_BITS, 32-Integer.numberOfLeadingZeros(srcLength-1)));
+		int[] table=hashTable.get();
+		Arrays.fill(table, 0, 1<<hashBits, 0); // entries are positions plus one, zero for none
+
+		int op=dstOffset;
+		int end=dstOffset+dstLimit;
+		int anchor=0;
+		int i=0;
+		int matchLimit=srcLength-MIN_MATCH;
+		while (i<=matchLimit) {
+			int seq=readInt(src,srcOffset+i);
+			int h=(seq*0x9E3779B1)>>>(32-hashBits);
+			int ref=table[h]-1;
+			table[h]=i+1;
+			if ((ref<0)||(i-ref>MAX_OFFSET)||(readInt(src,srcOffset+ref)!=seq)) {
+				i++;
+				continue;
+			}
+
+			int matchLength=MIN_MATCH;
+			while ((i+matchLength<srcLength)&&(src[srcOffset+ref+matchLength]==src[srcOffset+i+matchLength])) {
+				matchLength++;
+			}
+			op=writeBlock(src,srcOffset+anchor,i-anchor,i-ref,matchLength,dst,op,end);
+			if (op<0) return -1;
+			i+=matchLength;
+			anchor=i;
+		}
+
+		op=writeBlock(src,srcOffset+anchor,srcLength-anchor,0,0,dst,op,end);
+		if (op<0) return -1;
+		return op-dstOffset;
+	}
+
+	/**
+	 * Writes a block. A match length of zero indicates the final block.
+	 * @return New output position, or -1 if the output limit would be exceeded
+	 */
+	private static int writeBlock(byte[] src, int litStart, int litLength, int offset, int matchLength, byte[] dst, int op, int end) {
+		int maxSize=1+litLength+(litLength/255+1)+2+(matchLength/255+1);
+		if (op+maxSize>end) return -1;
+
+		int litToken=Math.min(litLength, 15);
+		int matchToken=(matchLength==0)?0:Math.min(matchLength-MIN_MATCH, 15);
+		dst[op++]=(byte)((litToken<<4)|matchToken);
+		if (litToken==15) op=writeLength(litLength-15,dst,op);
+		System.arraycopy(src, litStart, dst, op, litLength);
+		op+=litLength;
+		if (matchLength==0) return op;
+
+		dst[op++]=(byte)(offset>>8);
+		dst[op++]=(byte)offset;
+		if (matchToken==15) op=writeLength(matchLength-MIN_MATCH-15,dst,op);
+		return op;
+	}
+
+	private static int writeLength(int n, byte[] dst, int op) {
+		while (n>=255) {
+			dst[op++]=(byte)255;
+			n-=255;
+		}
+		dst[op++]=(byte)n;
+		return op;
+	}
+
+	/**
+	 * Decompresses a byte range
+	 * @param src Source array
+	 * @param srcOffset Offset of compressed data in source array
+	 * @param srcLength Length of compressed data
+	 * @param dst Destination array
+	 * @param dstOffset Offset in destination array
+	 * @param dstLimit Maximum number of bytes to write
+	 * @return Number of bytes written
+	 * @throws IllegalArgumentException If the compressed data is malformed or exceeds dstLimit
+	 */
+	public static int decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLimit) {
+		int ip=srcOffset;
+		int srcEnd=srcOffset+srcLength;
+		int op=dstOffset;
+		int dstEnd=dstOffset+dstLimit;
+		while (true) {
+			if (ip>=srcEnd) throw new IllegalArgumentException("Compressed data truncated");
+			int token=src[ip++]&0xFF;
+
+			int litLength=token>>>4;
+			if (litLength==15) {
+				int b;
+				do {
+					if (ip>=srcEnd) throw new IllegalArgumentException("Compressed data truncated");
+					b=src[ip++]&0xFF;
+					litLength+=b;
+				} while (b==255);
+			}
+			if ((ip+litLength>srcEnd)||(op+litLength>dstEnd)) throw new IllegalArgumentException("Bad literal length");
+			System.arraycopy(src, ip, dst, op, litLength);
+			ip+=litLength;
+			op+=litLength;
+			if (ip==srcEnd) return op-dstOffset; // final block
+
+			if (ip+2>srcEnd) throw new IllegalArgumentException("Compressed data truncated");
+			int offset=((src[ip]&0xFF)<<8)|(src[ip+1]&0xFF);
+			ip+=2;
+			int matchLength=(token&0x0F)+MIN_MATCH;
+			if ((token&0x0F)==15) {
+				int b;
+				do {
+					if (ip>=srcEnd) throw new IllegalArgumentException("Compressed data truncated");
+					b=src[ip++]&0xFF;
+					matchLength+=b;
+				} while (b==255);
+			}
+			int ref=op-offset;
+			if ((offset==0)||(ref<dstOffset)||(op+matchLength>dstEnd)) throw new IllegalArgumentException("Bad match");
+			for (int j=0; j<matchLength; j++) {
+				dst[op++]=dst[ref++]; // byte by byte, since matches may overlap
+			}
+		}
+	}
+
+	private static int readInt(byte[] bs, int i) {
+		return ((bs[i]&0xFF)<<24)|((bs[i+1]&0xFF)<<16)|((bs[i+2]&0xFF)<<8)|(bs[i+3]&0xFF);
+	}
+}
@@ -3,6 +3,7 @@ package convex.core;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.time.Instant;
@@ -236,6 +237,20 @@ public class BeliefMergeTest {
 		assertEquals(1, bs6[RECEIVER].getOrder(RKEY).getConsensusPoint());
 		assertEquals(0, bs6[PROPOSER].getOrder(RKEY).getConsensusPoint());
 
+		// deferred merge confirms the same consensus without executing the block
+		Belief[] bs5Beliefs = new Belief[NUM_PEERS];
+		for (int i = 0; i < NUM_PEERS; i++) bs5Beliefs[i] = bs5[i].getBelief();
+		Peer deferred = bs5[PROPOSER].mergeBeliefsDeferred(bs5Beliefs);
+		assertEquals(bs6[PROPOSER].getConsensusPoint(), deferred.getConsensusPoint());
+		assertEquals(0, deferred.getExecutedPoint());
+		assertEquals(1, bs6[PROPOSER].getExecutedPoint());
+		BlockResult br = deferred.getConsensusState().applyBlock(deferred.getPeerOrder().getBlock(0).getValue());
+		Peer executed = deferred.applyBlockResult(br);
+		assertEquals(1, executed.getExecutedPoint());
+		assertEquals(bs6[PROPOSER].getConsensusState(), executed.getConsensusState());
+		assertEquals(executed.getConsensusState(), deferred.updateState().getConsensusState());
+		assertThrows(IllegalStateException.class, () -> executed.applyBlockResult(br));
+
 		Peer[] bs7 = shareBeliefs(bs6);
 		if (ANALYSIS) printAnalysis(bs7, "Share 4th round: should reach full consensus, confirmations shared");
 		assertEquals(1, bs7[PROPOSER].getOrder(RKEY).getConsensusPoint()); // proposer now sees receivers consensus
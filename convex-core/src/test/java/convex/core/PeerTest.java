@@ -4,17 +4,25 @@ import static convex.test.Assertions.assertNobodyError;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 
+import convex.core.crypto.AKeyPair;
+import convex.core.data.AVector;
 import convex.core.data.AccountKey;
 import convex.core.data.PeerStatus;
 import convex.core.data.RecordTest;
+import convex.core.data.VectorLeaf;
 import convex.core.data.prim.CVMLong;
 import convex.core.exceptions.BadSignatureException;
+import convex.core.exceptions.InvalidDataException;
+import convex.core.init.Init;
 import convex.core.init.InitTest;
 import convex.core.lang.RT;
 import convex.core.lang.Reader;
+import convex.core.util.Utils;
 import convex.test.Samples;
 
 public class PeerTest {
@@ -115,4 +123,82 @@ public class PeerTest {
 		assertEquals(5, p.asOfRange(initialTimestamp, 1000 * 60, 5).count());
 	}
 
+	@Test
+	public void testPruneHistory() throws BadSignatureException, InvalidDataException {
+		AKeyPair kp = InitTest.FIRST_PEER_KEYPAIR;
+		State genesis = Init.createState(Utils.listOf(kp.getAccountKey()));
+		Peer p = Peer.create(kp, genesis);
+		long ts = genesis.getTimeStamp().longValue();
+
+		int n = 34;
+		for (int i = 1; i <= n; i++) {
+			p = p.proposeBlock(Block.of(ts + i * 1000));
+			p = p.mergeBeliefs();
+			p = p.mergeBeliefs();
+		}
+		assertEquals(n, p.getConsensusPoint());
+		assertEquals(n, p.getExecutedPoint());
+		assertEquals(n + 1, p.getStates().count());
+		State latest = p.getConsensusState();
+		BlockResult br32 = p.getBlockResult(32);
+		assertNotNull(br32);
+
+		Peer pp = p.pruneHistory(2);
+		assertEquals(32, pp.getHistoryStart());
+		assertEquals(3, pp.getStates().count());
+		assertEquals(n, pp.getExecutedPoint());
+		assertEquals(latest, pp.getConsensusState());
+		assertNull(pp.getBlockResult(31));
+		assertEquals(br32, pp.getBlockResult(32));
+		assertEquals(p.getNetworkID(), pp.getNetworkID());
+		assertSame(pp, pp.pruneHistory(2));
+
+		// Checkpoints for history before pruning
+		assertEquals(genesis.getHash(), pp.getCheckpoints().get(0));
+		assertEquals(genesis, pp.asOf(CVMLong.create(ts)));
+		assertEquals(latest, pp.asOf(CVMLong.create(ts + n * 1000)));
+
+		// Round trip through peer data
+		Peer rp = Peer.fromData(kp, pp.toData());
+		assertEquals(pp.getHistoryStart(), rp.getHistoryStart());
+		assertEquals(pp.getExecutedPoint(), rp.getExecutedPoint());
+		assertEquals(pp.getNetworkID(), rp.getNetworkID());
+		assertEquals(pp.getCheckpoints(), rp.getCheckpoints());
+		assertEquals(genesis, rp.asOf(CVMLong.create(ts)));
+		
+		// History is only dropped in whole chunks
+		Peer p0 = p.pruneHistory(0);
+		assertEquals(32, p0.getHistoryStart());
+		assertEquals(latest, p0.getConsensusState());
+		assertSame(p, p.pruneHistory(20));
+	}
+
+	@Test
+	public void testPruneHistorySharing() throws BadSignatureException, InvalidDataException {
+		AKeyPair kp = InitTest.FIRST_PEER_KEYPAIR;
+		State genesis = Init.createState(Utils.listOf(kp.getAccountKey()));
+		Peer p = Peer.create(kp, genesis);
+		long ts = genesis.getTimeStamp().longValue();
+
+		// Prune after every Block, as the Server does
+		int retain = 20;
+		for (int i = 1; i <= 70; i++) {
+			p = p.proposeBlock(Block.of(ts + i * 1000));
+			p = p.mergeBeliefs();
+			p = p.mergeBeliefs();
+			AVector<State> states = p.getStates();
+			VectorLeaf<State> chunk = (states.count() >= 2 * VectorLeaf.MAX_SIZE) ? states.getChunk(VectorLeaf.MAX_SIZE) : null;
+			long start = p.getHistoryStart();
+			p = p.pruneHistory(retain);
+			assertTrue(p.getStates().count() <= retain + 1 + VectorLeaf.MAX_SIZE);
+
+			// A whole chunk is dropped at a time, and the next chunk is shared rather than rebuilt
+			if (p.getHistoryStart() > start) {
+				assertEquals(start + VectorLeaf.MAX_SIZE, p.getHistoryStart());
+				assertSame(chunk, p.getStates().getChunk(0));
+			}
+		}
+		assertEquals(48, p.getHistoryStart());
+	}
+
 }
@@ -0,0 +1,116 @@
+package convex.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.crypto.AKeyPair;
+import convex.core.crypto.Ed25519KeyPair;
+import convex.core.data.AVector;
+import convex.core.data.AccountStatus;
+import convex.core.data.Address;
+import convex.core.data.SignedData;
+import convex.core.data.Vectors;
+import convex.core.init.Init;
+import convex.core.init.InitTest;
+import convex.core.lang.Reader;
+import convex.core.transactions.ATransaction;
+import convex.core.transactions.Invoke;
+import convex.core.transactions.Transfer;
+
+/**
+ * Tests for speculative parallel execution of Block transactions
+ */
+public class SpeculativeExecutorTest {
+	static final int NUM_ACCOUNTS = 40;
+
+	static final AKeyPair[] KEYPAIRS = new AKeyPair[NUM_ACCOUNTS];
+	static final Address[] ADDRESSES = new Address[NUM_ACCOUNTS];
+	static final State STATE;
+
+	static {
+		State s = InitTest.STATE;
+		for (int i = 0; i < NUM_ACCOUNTS; i++) {
+			KEYPAIRS[i] = Ed25519KeyPair.createSeeded(5000 + i);
+			ADDRESSES[i] = Address.create(s.getAccounts().count());
+			AccountStatus as = AccountStatus.create(1000000000L, KEYPAIRS[i].getAccountKey()).withMemory(10000);
+			s = s.putAccount(ADDRESSES[i], as);
+		}
+		STATE = s;
+	}
+
+	private static SignedData<ATransaction> transfer(int from, long seq, Address target, long amount) {
+		return KEYPAIRS[from].signData(Transfer.create(ADDRESSES[from], seq, target, amount));
+	}
+
+	private static void checkSequential(State s, ArrayList<SignedData<ATransaction>> txs) {
+		AVector<SignedData<ATransaction>> transactions = Vectors.create(txs);
+		BlockResult br = SpeculativeExecutor.applyTransactions(s, transactions);
+
+		int n = txs.size();
+		Result[] results = new Result[n];
+		State expected = s;
+		for (int i = 0; i < n; i++) {
+			expected = expected.applyBlockTransaction(transactions.get(i), i, results);
+		}
+		BlockResult seq = BlockResult.create(expected, results);
+
+		for (int i = 0; i < n; i++) {
+			assertNotNull(br.getResult(i));
+			assertEquals(seq.getResult(i), br.getResult(i), "Result " + i);
+		}
+		assertEquals(expected, br.getState());
+		assertEquals(seq, br);
+	}
+
+	@Test
+	public void testDisjointTransfers() {
+		ArrayList<SignedData<ATransaction>> txs = new ArrayList<>();
+		for (int i = 0; i < NUM_ACCOUNTS / 2; i++) {
+			txs.add(transfer(i, 1, ADDRESSES[NUM_ACCOUNTS - 1 - i], 1000 + i));
+		}
+		checkSequential(STATE, txs);
+	}
+
+	@Test
+	public void testConflictingTransfers() {
+		ArrayList<SignedData<ATransaction>> txs = new ArrayList<>();
+		// chain of dependent transfers
+		for (int i = 0; i < 10; i++) {
+			txs.add(transfer(i, 1, ADDRESSES[i + 1], 1000000000L - 10));
+		}
+		// repeated origin with increasing sequence numbers
+		for (int j = 1; j <= 10; j++) {
+			txs.add(transfer(20, j, ADDRESSES[21 + (j % 3)], 77));
+		}
+		// bad sequence, non-existent target, actor target, overdraft
+		txs.add(transfer(30, 5, ADDRESSES[31], 1));
+		txs.add(transfer(31, 1, Address.create(1000000), 1));
+		txs.add(transfer(32, 1, Init.REGISTRY_ADDRESS, 1));
+		txs.add(transfer(33, 1, ADDRESSES[34], 2000000000L));
+		for (int i = 35; i < NUM_ACCOUNTS; i++) {
+			txs.add(transfer(i, 1, ADDRESSES[i], 5)); // self transfer
+		}
+		checkSequential(STATE, txs);
+	}
+
+	@Test
+	public void testMixedTransactions() {
+		ArrayList<SignedData<ATransaction>> txs = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			txs.add(transfer(i, 1, ADDRESSES[i + 20], 100));
+		}
+		// Invoke that reads and writes accounts used by later Transfers
+		txs.add(KEYPAIRS[12].signData(Invoke.create(ADDRESSES[12], 1,
+				Reader.read("(do (transfer " + ADDRESSES[25] + " 5000) (balance " + ADDRESSES[0] + "))"))));
+		for (int i = 13; i < 30; i++) {
+			txs.add(transfer(i, 1, ADDRESSES[(i * 7) % NUM_ACCOUNTS], 100 + i));
+		}
+		// Signed by wrong key
+		txs.add(KEYPAIRS[0].signData(Transfer.create(ADDRESSES[39], 1, ADDRESSES[0], 1)));
+		checkSequential(STATE, txs);
+	}
+}
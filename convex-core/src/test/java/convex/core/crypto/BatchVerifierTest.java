@@ -0,0 +1,76 @@
+package convex.core.crypto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.Block;
+import convex.core.BlockResult;
+import convex.core.ErrorCodes;
+import convex.core.data.ACell;
+import convex.core.data.Ref;
+import convex.core.data.SignedData;
+import convex.core.init.InitTest;
+import convex.core.lang.RT;
+import convex.core.transactions.ATransaction;
+import convex.core.transactions.Transfer;
+
+public class BatchVerifierTest {
+
+	static final AKeyPair KP = InitTest.HERO_KEYPAIR;
+
+	/**
+	 * Creates a SignedData without the cached verification flag set by signing
+	 */
+	private static <T extends ACell> SignedData<T> unchecked(T value, ASignature sig) {
+		return SignedData.create(KP.getAccountKey(), sig, Ref.get(value));
+	}
+
+	@Test
+	public void testVerifyCollection() {
+		ArrayList<SignedData<?>> signed = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			SignedData<?> sd = KP.signData(RT.cvm(i));
+			signed.add(unchecked(RT.cvm(i), sd.getSignature()));
+		}
+		// bad signatures, using signature for a different value
+		for (int i = 0; i < 3; i++) {
+			signed.add(unchecked(RT.cvm(100 + i), signed.get(i).getSignature()));
+		}
+		for (SignedData<?> sd : signed) {
+			assertFalse(sd.isSignatureChecked());
+		}
+
+		assertEquals(3, BatchVerifier.verify(signed));
+		for (SignedData<?> sd : signed) {
+			assertTrue(sd.isSignatureChecked());
+		}
+
+		// Cached results, same outcome
+		assertEquals(3, BatchVerifier.verify(signed));
+		assertEquals(0, BatchVerifier.verify(new ArrayList<>()));
+	}
+
+	@Test
+	public void testBlock() {
+		Transfer good = Transfer.create(InitTest.HERO, 1, InitTest.VILLAIN, 100);
+		Transfer forged = Transfer.create(InitTest.HERO, 2, InitTest.VILLAIN, 1000000);
+
+		SignedData<ATransaction> st1 = unchecked(good, KP.signData(good).getSignature());
+		SignedData<ATransaction> st2 = unchecked(forged, st1.getSignature());
+		Block block = Block.of(InitTest.STATE.getTimeStamp().longValue(), st1, st2);
+
+		assertEquals(1, BatchVerifier.verify(block));
+		assertTrue(st1.checkSignature());
+		assertFalse(st2.checkSignature());
+
+		// Forged transaction must be rejected when the Block is applied
+		BlockResult br = InitTest.STATE.applyBlock(block);
+		assertEquals(null, br.getErrorCode(0));
+		assertEquals(ErrorCodes.SIGNATURE, br.getErrorCode(1));
+	}
+}
@@ -9,6 +9,9 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+
 import org.junit.jupiter.api.Test;
 
 import convex.core.data.prim.CVMLong;
@@ -40,6 +43,47 @@ public class BlobMapsTest {
 		doBlobMapTests(m);
 	}
 
+	@Test
+	public void testChangedEntries() {
+		BlobMap<ABlob, CVMLong> m = BlobMaps.empty();
+		for (int i = 0; i < 300; i++) {
+			m = m.assoc(Blobs.createRandom(8), CVMLong.create(i));
+		}
+		BlobMap<ABlob, CVMLong> base = m;
+
+		ArrayList<MapEntry<ABlob, CVMLong>> changed = new ArrayList<>();
+		m.accumulateChangedEntries(base, changed);
+		assertEquals(0, changed.size());
+
+		// all entries are new relative to empty or null base
+		m.accumulateChangedEntries(null, changed);
+		assertEquals(300, changed.size());
+		changed.clear();
+		m.accumulateChangedEntries(BlobMaps.empty(), changed);
+		assertEquals(300, changed.size());
+
+		// change some existing values and add new keys
+		HashSet<MapEntry<ABlob, CVMLong>> expected = new HashSet<>();
+		for (int i = 0; i < 5; i++) {
+			MapEntry<ABlob, CVMLong> e = base.entryAt(i * 50);
+			MapEntry<ABlob, CVMLong> ne = MapEntry.create(e.getKey(), CVMLong.create(-i));
+			m = m.assocEntry(ne);
+			expected.add(ne);
+		}
+		MapEntry<ABlob, CVMLong> added = MapEntry.create(Blob.fromHex("cafebabe"), CVMLong.create(1000));
+		m = m.assocEntry(added);
+		expected.add(added);
+
+		changed.clear();
+		m.accumulateChangedEntries(base, changed);
+		assertEquals(expected, new HashSet<>(changed));
+
+		// removed entries are not reported
+		changed.clear();
+		base.dissoc(base.entryAt(0).getKey()).accumulateChangedEntries(base, changed);
+		assertEquals(0, changed.size());
+	}
+
 	@Test
 	public void testBadAssoc() throws InvalidDataException {
 		BlobMap<ABlob, CVMLong> m =BlobMaps.create(InitTest.HERO, RT.cvm(1L));
@@ -8,6 +8,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Test;
@@ -122,4 +123,18 @@ public class InitTest extends ACVMTest {
 		assertNotEquals(HERO,VILLAIN);
 	}
 
+	@Test
+	public void testGenesisImage() {
+		State library=GenesisImage.getLibraryState();
+		assertNotNull(library,"Genesis image out of date, regenerate with the genesis-image profile");
+		assertEquals(Init.createLibraryState(),library);
+
+		// Image State with substituted key must be identical to building from source
+		AccountKey key=KEYPAIRS[3].getAccountKey();
+		State expected=Init.addStandardLibraries(Init.addGenesisAccounts(library, List.of(key)));
+		State genesis=Init.createState(List.of(key));
+		assertEquals(expected,genesis);
+		assertEquals(key,genesis.getAccount(HERO).getAccountKey());
+	}
+
 }
@@ -16,14 +16,18 @@ import org.junit.jupiter.api.Test;
 
 import convex.core.Constants;
 import convex.core.ErrorCodes;
+import convex.core.State;
 import convex.core.data.ACell;
 import convex.core.data.AVector;
+import convex.core.data.AccountStatus;
 import convex.core.data.Address;
 import convex.core.data.BlobMaps;
 import convex.core.data.Keyword;
 import convex.core.data.Strings;
 import convex.core.data.Symbol;
 import convex.core.data.Vectors;
+import convex.core.data.prim.CVMLong;
+import convex.core.init.Init;
 import convex.core.init.InitTest;
 import convex.core.lang.ops.Special;
 
@@ -82,6 +86,95 @@ public class ContextTest extends ACVMTest {
 		assertSame(c3,c4);
 	}
 
+	@Test
+	public void testLookupCache() {
+		Symbol sym=Symbol.create("count");
+		Context<?> c=context();
+		assertEquals(Core.COUNT,c.lookup(sym).getResult());
+		assertEquals(Core.COUNT,c.lookup(sym).getResult()); // cached
+
+		// Shadowing a core function in the environment
+		Context<?> c2=c.define(sym, Strings.create("shadow"));
+		assertCVMEquals("shadow", c2.lookup(sym).getResult());
+		Context<?> c3=c2.undefine(sym);
+		assertEquals(Core.COUNT,c3.lookup(sym).getResult());
+
+		// Redefinition within a single execution
+		assertCVMEquals(Vectors.of(1,2), eval(c,"(do (def cache-test 1) (let [x cache-test] (def cache-test 2) [x cache-test]))"));
+
+		// Change to core environment invalidates aliased entries
+		State s=c3.getState();
+		AccountStatus core=s.getAccount(Init.CORE_ADDRESS);
+		State s2=s.putAccount(Init.CORE_ADDRESS, core.withEnvironment(core.getEnvironment().assoc(sym, Strings.create("new-core"))));
+		Context<?> c4=c3.withState(s2);
+		assertCVMEquals("new-core", c4.lookup(sym).getResult());
+		assertEquals(Core.COUNT,c4.withState(s).lookup(sym).getResult());
+	}
+
+	@Test
+	public void testCompileCache() {
+		Context<?> c=context();
+		String src="(let [a [1 2 3]] (when (count a) (reduce + a)))";
+		Context<?> r1=step(c,src);
+		long hits=Context.getCompileCache().getHitCount();
+		Context<?> r2=step(c,src);
+		assertTrue(Context.getCompileCache().getHitCount()>hits);
+		assertCVMEquals(6L,r2.getResult());
+		assertEquals(r1.getJuice(),r2.getJuice());
+
+		// Not enough juice for a cache hit gives the same juice error as compiling
+		long compileJuice=juiceCompile(src);
+		assertJuiceError(c.fork().withJuice(compileJuice-1).expandCompile(Reader.read(src)));
+		assertFalse(c.fork().withJuice(compileJuice).expandCompile(Reader.read(src)).isExceptional());
+
+		// Redefining a macro in the environment
+		Context<?> c2=step(c,"(defmacro cache-mac [] 1)");
+		assertCVMEquals(1L,eval(c2,"(cache-mac)"));
+		c2=step(c2,"(defmacro cache-mac [] 2)");
+		assertCVMEquals(2L,eval(c2,"(cache-mac)"));
+
+		// Redefining a function in another account as a macro, without changing this environment
+		Context<?> c5=step(c,"(def lib (deploy '(do (set-controller *caller*) (defn cache-lib [] 1))))");
+		assertCVMEquals(1L,eval(c5,"((lookup lib cache-lib))"));
+		c5=step(c5,"(eval-as lib '(defmacro cache-lib [] 2))");
+		assertCVMEquals(2L,eval(c5,"((lookup lib cache-lib))"));
+
+		// Unquoted code depends on State, not just the environment
+		Context<?> c3=step(c,"~*balance*");
+		assertEquals(c.getBalance(),RT.ensureLong(c3.getResult()).longValue());
+		Context<?> c4=step(c,"(transfer #0 1000)");
+		assertCVMEquals(c4.getBalance(),eval(c4,"~*balance*"));
+	}
+
+	@Test
+	public void testLocalBindings() {
+		Context<?> c=context();
+		assertTrue(c.getLocalBindings().isEmpty());
+
+		// set! changes are scoped to the enclosing lexical scope
+		assertCVMEquals(1L, eval(c,"(let [a 1] (let [b 2] (set! a 5)) a)"));
+		assertCVMEquals(Vectors.of(5,1), eval(c,"(let [a 1] [(let [b 2] (set! a 5) a) a])"));
+		assertCVMEquals(Vectors.of(10,2), eval(c,"(let [a 1 b 2] (set! a (do (set! b 3) 10)) [a b])"));
+		assertCVMEquals(1L, eval(c,"(let [a 1] ((fn [] (set! a 5))) a)"));
+
+		// closures capture a snapshot of bindings
+		assertCVMEquals(Vectors.of(7,1), eval(c,"(let [a 1 f (fn [] a)] (set! a 7) [a (f)])"));
+		assertCVMEquals(Vectors.of(Vectors.of(0,0),Vectors.of(1,1),Vectors.of(2,4)),
+				eval(c,"(loop [i 0 acc []] (if (< i 3) (recur (inc i) (conj acc (let [j (* i i)] (fn [] [i j])))) (mapv (fn [f] (f)) acc)))"));
+
+		// explicit frames and marks
+		Context<?> c2=c.fork();
+		long frame=c2.enterLocalFrame(Vectors.of(1L,2L));
+		long mark=c2.getLocalMark();
+		c2=c2.updateBindings(Symbol.create("x"), CVMLong.create(3));
+		c2=c2.setLocal(0, CVMLong.create(10));
+		assertEquals(Vectors.of(10L,2L,3L),c2.getLocalBindings());
+		c2=c2.restoreLocals(mark);
+		assertEquals(Vectors.of(1L,2L),c2.getLocalBindings());
+		c2=c2.exitLocalFrame(frame);
+		assertEquals(0L,c2.getLocalCount());
+	}
+
 	@Test
 	public void testExceptionalState() {
 		Context<?> ctx=context();
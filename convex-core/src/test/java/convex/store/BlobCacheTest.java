@@ -0,0 +1,87 @@
+package convex.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.data.ACell;
+import convex.core.data.Blob;
+import convex.core.data.Blobs;
+import convex.core.data.prim.CVMLong;
+import convex.core.store.AStore;
+import convex.core.store.BlobCache;
+import convex.core.store.MemoryStore;
+import etch.EtchStore;
+
+public class BlobCacheTest {
+
+	@Test
+	public void testHitsAndMisses() {
+		BlobCache cache = BlobCache.create(1000000);
+		CVMLong a = CVMLong.create(1234567);
+		assertNull(cache.getCell(a.getHash()));
+		cache.putCell(a);
+		assertSame(a, cache.getCell(a.getHash()));
+
+		// lookup with the hash of an equal but distinct encoding
+		Blob enc = Blob.wrap(a.getEncoding().getBytes());
+		assertSame(a, cache.getCell(enc.getContentHash()));
+
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(2.0 / 3.0, cache.getHitRate(), 0.0001);
+		assertEquals(1, cache.getCount());
+	}
+
+	@Test
+	public void testBounded() {
+		long capacity = 100000;
+		BlobCache cache = BlobCache.create(capacity);
+		int N = 10000;
+		for (int i = 0; i < N; i++) {
+			ACell cell = Blobs.createRandom(100);
+			cache.putCell(cell);
+			assertTrue(cache.getWeight() <= capacity);
+		}
+		assertTrue(cache.getEvictionCount() > 0);
+		assertEquals(N, cache.getCount() + cache.getEvictionCount());
+	}
+
+	@Test
+	public void testSecondChance() {
+		BlobCache cache = BlobCache.create(16 * 2000);
+		CVMLong hot = CVMLong.create(42);
+		cache.putCell(hot);
+		for (int i = 0; i < 10000; i++) {
+			cache.putCell(Blobs.createRandom(50));
+			assertSame(hot, cache.getCell(hot.getHash()));
+		}
+	}
+
+	@Test
+	public void testClear() {
+		BlobCache cache = BlobCache.create(1000000);
+		ACell a = Blobs.createRandom(100);
+		cache.putCell(a);
+		assertEquals(1, cache.getCount());
+		cache.clear();
+		assertEquals(0, cache.getCount());
+		assertEquals(0, cache.getWeight());
+		assertNull(cache.getCell(a.getHash()));
+
+		// still usable after clearing
+		cache.putCell(a);
+		assertSame(a, cache.getCell(a.getHash()));
+	}
+
+	@Test
+	public void testStoreCacheSize() {
+		assertEquals(AStore.SMALL_CACHE_SIZE, new MemoryStore().getBlobCache().getCapacity());
+		EtchStore temp = EtchStore.createTemp();
+		assertEquals(AStore.SMALL_CACHE_SIZE, temp.getBlobCache().getCapacity());
+		temp.close();
+	}
+}
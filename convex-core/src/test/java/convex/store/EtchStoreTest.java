@@ -11,6 +11,7 @@ import static org.junit.jupiter.api.Assertions.assertSame;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
@@ -240,4 +241,146 @@ public class EtchStoreTest {
 		ACell data=es2.getRootData();
 		assertEquals(CVMLong.ONE,data);
 	}
+
+	@Test
+	public void testGC() throws IOException {
+		AStore oldStore = Stores.current();
+		File file=File.createTempFile("etch-gc",null);
+		file.deleteOnExit();
+		EtchStore es=EtchStore.create(file);
+		try {
+			Stores.setCurrent(es);
+			AVector<Blob> live = Vectors.of(Blob.createRandom(new Random(), 200),Blob.createRandom(new Random(), 200));
+			AVector<Blob> extra = Vectors.of(Blob.createRandom(new Random(), 200));
+			AVector<Blob> garbage = Vectors.of(Blob.createRandom(new Random(), 200),Blob.createRandom(new Random(), 200));
+			ACell.createPersisted(extra);
+			ACell.createPersisted(garbage);
+			es.setRootData(live);
+			long oldLength=file.length();
+
+			es.gc(List.of(extra));
+			assertTrue(!es.isCollecting());
+			assertEquals(file,es.getFile());
+
+			// live data and extra roots retained, including children
+			assertEquals(live,es.getRootData());
+			assertEquals(live.get(0),es.refForHash(live.get(0).getHash()).getValue());
+			assertNotNull(es.refForHash(extra.get(0).getHash()));
+			assertTrue(es.refForHash(live.getHash()).isPersisted());
+
+			// garbage removed
+			assertNull(es.refForHash(garbage.get(0).getHash()));
+			assertNull(es.refForHash(garbage.get(1).getHash()));
+
+			// writes still work after GC
+			AVector<Blob> more = Vectors.of(Blob.createRandom(new Random(), 200));
+			ACell.createPersisted(more);
+			assertEquals(more.get(0),es.refForHash(more.get(0).getHash()).getValue());
+			es.close();
+			assertTrue(file.length()<=oldLength);
+
+			// data survives reopening
+			EtchStore es2=EtchStore.create(file);
+			assertEquals(live,es2.getRootData());
+			assertNotNull(es2.refForHash(more.get(0).getHash()));
+			es2.close();
+		} finally {
+			Stores.setCurrent(oldStore);
+		}
+	}
+
+	@Test
+	public void testWritesDuringGC() throws IOException {
+		AStore oldStore = Stores.current();
+		EtchStore es=EtchStore.createTemp();
+		try {
+			Stores.setCurrent(es);
+			Blob child = Blob.createRandom(new Random(), 200);
+			ACell.createPersisted(child);
+
+			es.startGC();
+			assertTrue(es.isCollecting());
+
+			// new data written during GC refers to data only in the old file
+			AVector<ACell> parent = Vectors.of(child, Blob.createRandom(new Random(), 200));
+			es.setRootData(parent);
+			assertEquals(child,es.refForHash(child.getHash()).getValue());
+
+			es.gc(List.of());
+			assertEquals(parent,es.getRootData());
+			assertEquals(child,es.refForHash(child.getHash()).getValue());
+		} finally {
+			Stores.setCurrent(oldStore);
+		}
+	}
+
+	@Test
+	public void testGCRoots() throws Exception {
+		AStore oldStore = Stores.current();
+		EtchStore es=EtchStore.createTemp();
+		try {
+			Stores.setCurrent(es);
+			Blob early = Blob.createRandom(new Random(), 200);
+			Blob late = Blob.createRandom(new Random(), 200);
+			ACell.createPersisted(early);
+			ACell.createPersisted(late);
+
+			// roots are obtained during GC, and again at swap time
+			AtomicLong calls=new AtomicLong();
+			es.gc(()->{
+				assertTrue(es.isCollecting());
+				return (calls.incrementAndGet()==1)?List.of(early):List.of(late);
+			});
+			assertEquals(2,calls.get());
+			assertNotNull(es.refForHash(early.getHash()));
+			assertNotNull(es.refForHash(late.getHash()));
+
+			// concurrent GC cycles are serialised
+			Thread[] threads=new Thread[4];
+			ArrayList<Throwable> errors=new ArrayList<>();
+			for (int i=0; i<threads.length; i++) {
+				threads[i]=new Thread(()->{
+					Stores.setCurrent(es);
+					try {
+						es.gc(List.of(late));
+					} catch (Throwable t) {
+						synchronized (errors) {
+							errors.add(t);
+						}
+					}
+				});
+				threads[i].start();
+			}
+			for (Thread t: threads) t.join();
+			assertTrue(errors.isEmpty());
+			assertTrue(!es.isCollecting());
+			assertEquals(late,es.refForHash(late.getHash()).getValue());
+			assertNull(es.refForHash(early.getHash()));
+		} finally {
+			Stores.setCurrent(oldStore);
+		}
+	}
+
+	@Test
+	public void testStatusAfterGC() throws IOException {
+		AStore oldStore = Stores.current();
+		EtchStore es=EtchStore.createTemp();
+		try {
+			Stores.setCurrent(es);
+			Blob dropped = Blob.createRandom(new Random(), 200);
+			Ref<Blob> ref=ACell.createPersisted(dropped);
+			assertTrue(ref.isPersisted());
+
+			// not a root, so collected even though an in-memory Ref claims it is persisted
+			es.gc(List.of());
+			assertNull(es.refForHash(dropped.getHash()));
+
+			// persisting a parent must not trust the stale status of the child
+			AVector<ACell> parent = Vectors.of(ref.getValue(), Blob.createRandom(new Random(), 200));
+			ACell.createPersisted(parent);
+			assertEquals(dropped,es.refForHash(dropped.getHash()).getValue());
+		} finally {
+			Stores.setCurrent(oldStore);
+		}
+	}
 }
@@ -0,0 +1,94 @@
+package convex.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.State;
+import convex.core.data.ACell;
+import convex.core.data.AVector;
+import convex.core.data.Ref;
+import convex.core.data.Vectors;
+import convex.core.exceptions.BadFormatException;
+import convex.core.init.InitTest;
+import convex.core.store.Snapshot;
+import convex.test.Samples;
+import etch.EtchStore;
+
+public class SnapshotTest {
+
+	private static byte[] export(ACell root) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		Snapshot.write(root, bos);
+		return bos.toByteArray();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException, BadFormatException {
+		State state = InitTest.STATE;
+		// Embedded root, shared structure is written only once
+		AVector<ACell> data = Vectors.of(state, state.getAccounts(), Samples.INT_VECTOR_300);
+		byte[] bs = export(data);
+
+		EtchStore store = EtchStore.createTemp();
+		Ref<AVector<ACell>> ref = Snapshot.read(new ByteArrayInputStream(bs), store, data.getHash());
+		assertEquals(data.getHash(), ref.getHash());
+		assertTrue(ref.getStatus() >= Ref.PERSISTED);
+
+		// Entire data structure is available in the target store
+		assertEquals(Ref.PERSISTED, store.refForHash(data.getHash()).getStatus());
+		assertEquals(Ref.PERSISTED, store.refForHash(state.getAccounts().getHash()).getStatus());
+		assertEquals(data, ref.getValue());
+
+		// Importing again is harmless
+		Ref<AVector<ACell>> ref2 = Snapshot.read(new ByteArrayInputStream(bs), store, null);
+		assertEquals(data.getHash(), ref2.getHash());
+
+		// Reading with cells in any order, as for a store export
+		Ref<AVector<ACell>> ref3 = Snapshot.readAll(new ByteArrayInputStream(bs), EtchStore.createTemp(), data.getHash());
+		assertEquals(Ref.PERSISTED, ref3.getStatus());
+		assertEquals(data, ref3.getValue());
+
+		// Reading into memory, without a store
+		AVector<ACell> mem = Snapshot.read(new ByteArrayInputStream(bs), data.getHash());
+		assertEquals(data, mem);
+		assertEquals(state.getAccounts(), ((State) mem.get(0)).getAccounts());
+	}
+
+	@Test
+	public void testBadSnapshots() throws IOException {
+		AVector<ACell> data = Vectors.of(InitTest.STATE, Samples.INT_VECTOR_300);
+		byte[] bs = export(data);
+
+		// Wrong expected root
+		assertThrows(BadFormatException.class,
+				() -> Snapshot.read(new ByteArrayInputStream(bs), EtchStore.createTemp(), Samples.BAD_HASH));
+
+		// Truncated in the middle of a cell
+		byte[] truncated = Arrays.copyOf(bs, bs.length - 10);
+		assertThrows(BadFormatException.class,
+				() -> Snapshot.read(new ByteArrayInputStream(truncated), EtchStore.createTemp(), null));
+		assertThrows(BadFormatException.class, () -> Snapshot.read(new ByteArrayInputStream(truncated), null));
+
+		// Tampered root cell, no longer matches header
+		byte[] tampered = bs.clone();
+		tampered[tampered.length - 1] ^= 0x01;
+		assertThrows(BadFormatException.class,
+				() -> Snapshot.read(new ByteArrayInputStream(tampered), EtchStore.createTemp(), null));
+
+		// Not a snapshot
+		byte[] bad = bs.clone();
+		bad[0] = 'X';
+		assertThrows(BadFormatException.class,
+				() -> Snapshot.read(new ByteArrayInputStream(bad), EtchStore.createTemp(), null));
+
+		assertThrows(IllegalArgumentException.class, () -> export(null));
+	}
+}
@@ -1,23 +1,47 @@
 package etch.api;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.Test;
 
 import convex.core.data.ACell;
 import convex.core.data.AVector;
+import convex.core.data.Blob;
 import convex.core.data.Hash;
 import convex.core.data.Ref;
+import convex.core.data.Tag;
 import convex.core.data.Vectors;
 import convex.core.data.prim.CVMLong;
 import convex.core.exceptions.BadFormatException;
+import convex.core.util.Utils;
 import etch.Etch;
+import etch.EtchExport;
+import etch.EtchStats;
 import etch.EtchStore;
+import etch.EtchUpgrade;
+import etch.LZCodec;
 
 public class TestEtch {
 	private static final int ITERATIONS = 3;
@@ -86,6 +110,399 @@ public class TestEtch {
 		}
 	}
 
+	@Test
+	public void testWriteAll() throws IOException {
+		EtchStore store=EtchStore.createTemp();
+		Etch etch = store.getEtch();
+
+		int COUNT = 10000;
+		ArrayList<Ref<ACell>> refs = new ArrayList<>();
+		for (int i = 0; i < COUNT; i++) {
+			AVector<CVMLong> v = Vectors.of((long) i);
+			refs.add(v.getRef());
+		}
+
+		// write a single value first, which should be updated in place by the batch
+		etch.write(refs.get(0).getHash(), refs.get(0));
+
+		List<Ref<ACell>> written = etch.writeAll(refs);
+		assertEquals(COUNT, written.size());
+
+		for (int i = 0; i < COUNT; i++) {
+			AVector<CVMLong> v = Vectors.of((long) i);
+			Ref<ACell> r = etch.read(v.getHash());
+			assertNotNull(r, "Stored value not found for vector value: " + v);
+			assertEquals(v, r.getValue());
+		}
+
+		// further single writes should still work after a batch
+		AVector<CVMLong> v = Vectors.of(-1L);
+		assertNull(etch.read(v.getHash()));
+		etch.write(v.getHash(), v.getRef());
+		assertEquals(v, etch.read(v.getHash()).getValue());
+	}
+
+	@Test
+	public void testConcurrentReads() throws Exception {
+		EtchStore store=EtchStore.createTemp();
+		Etch etch = store.getEtch();
+
+		int COUNT = 20000;
+		AtomicInteger written = new AtomicInteger(0);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		Runnable reader = () -> {
+			Random random = new Random();
+			try {
+				while (written.get() < COUNT) {
+					int n = written.get();
+					if (n == 0) continue;
+					AVector<CVMLong> v = Vectors.of((long) random.nextInt(n));
+					Ref<ACell> r = etch.read(v.getHash());
+					if (r == null) throw new Error("Missing value for written key: " + v);
+					assertEquals(v, r.getValue());
+				}
+			} catch (Throwable t) {
+				failure.compareAndSet(null, t);
+			}
+		};
+		Thread[] readers = new Thread[4];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread(reader);
+			readers[i].start();
+		}
+
+		for (int i = 0; i < COUNT; i++) {
+			AVector<CVMLong> v = Vectors.of((long) i);
+			etch.write(v.getHash(), v.getRef());
+			written.set(i + 1);
+		}
+		for (Thread t : readers) {
+			t.join();
+		}
+		assertNull(failure.get());
+	}
+
+	@Test
+	public void testCrashRecovery() throws IOException {
+		File file=File.createTempFile("etch-crash-", null);
+		file.deleteOnExit();
+		file.delete();
+		EtchStore store=EtchStore.create(file);
+		Etch etch=store.getEtch();
+
+		int COUNT=1000;
+		for (int i=0; i<COUNT; i++) {
+			AVector<CVMLong> v=Vectors.of((long) i);
+			etch.write(v.getHash(), v.getRef());
+		}
+		Hash rootA=Vectors.of(1L).getHash();
+		etch.setRootHash(rootA);
+		etch.flush();
+
+		// uncommitted writes, including changes to committed index blocks
+		for (int i=COUNT; i<2*COUNT; i++) {
+			AVector<CVMLong> v=Vectors.of((long) i);
+			etch.write(v.getHash(), v.getRef());
+		}
+		etch.setRootHash(Vectors.of(2L).getHash());
+
+		// simulate crash by copying the file as currently written
+		File crashed=copyTemp(file);
+		EtchStore recovered=EtchStore.create(crashed);
+		Etch etch2=recovered.getEtch();
+		assertEquals(rootA, etch2.getRootHash());
+		for (int i=0; i<2*COUNT; i++) {
+			AVector<CVMLong> v=Vectors.of((long) i);
+			if (i<COUNT) {
+				assertEquals(v, etch2.read(v.getHash()).getValue());
+			} else {
+				assertNull(etch2.read(v.getHash()));
+			}
+		}
+
+		// recovered store is fully writable
+		for (int i=COUNT; i<2*COUNT; i++) {
+			AVector<CVMLong> v=Vectors.of((long) i);
+			etch2.write(v.getHash(), v.getRef());
+			assertEquals(v, etch2.read(v.getHash()).getValue());
+		}
+		recovered.close();
+
+		// torn latest commit record falls back to the previous commit
+		etch.flush();
+		Hash rootB=etch.getRootHash();
+		etch.setRootHash(Vectors.of(3L).getHash());
+		etch.flush();
+		File torn=copyTemp(file);
+		try (RandomAccessFile raf=new RandomAccessFile(torn, "rw")) {
+			raf.seek(2);
+			long seqA=raf.readLong();
+			raf.seek(62);
+			long seqB=raf.readLong();
+			raf.seek((seqA>seqB)?2+20:62+20);
+			raf.write(0xFF);
+		}
+		EtchStore fallback=EtchStore.create(torn);
+		assertEquals(rootB, fallback.getEtch().getRootHash());
+		AVector<CVMLong> v=Vectors.of((long) (2*COUNT-1));
+		assertEquals(v, fallback.getEtch().read(v.getHash()).getValue());
+		fallback.close();
+		store.close();
+	}
+
+	@Test
+	public void testChecksum() throws IOException {
+		File file=File.createTempFile("etch-crc-", null);
+		file.deleteOnExit();
+		file.delete();
+		EtchStore store=EtchStore.create(file);
+		byte[] bs=new byte[100];
+		for (int i=0; i<bs.length; i++) bs[i]=(byte)(i*7+3);
+		Blob b=Blob.wrap(bs);
+		store.getEtch().write(b.getHash(), b.getRef());
+		store.flush();
+
+		// corrupt one byte of the stored value
+		File corrupt=copyTemp(file);
+		byte[] content=Files.readAllBytes(corrupt.toPath());
+		int pos=indexOf(content, bs);
+		assertTrue(pos>0);
+		content[pos+50]^=0x01;
+		Files.write(corrupt.toPath(), content);
+
+		EtchStore store2=EtchStore.create(corrupt);
+		assertThrows(IOException.class, ()->store2.getEtch().read(b.getHash()));
+		store2.close();
+		store.close();
+	}
+
+	@Test
+	public void testFlushAsync() throws Exception {
+		File file=File.createTempFile("etch-flush-", null);
+		file.deleteOnExit();
+		file.delete();
+		EtchStore store=EtchStore.create(file);
+		Etch etch=store.getEtch();
+
+		// concurrent flush requests share a single commit
+		AVector<CVMLong> v1=Vectors.of(1L,2L);
+		etch.write(v1.getHash(), v1.getRef());
+		etch.setRootHash(v1.getHash());
+		CompletableFuture<Void> f1=store.flushAsync();
+		CompletableFuture<Void> f2=store.flushAsync();
+		f1.get(5, TimeUnit.SECONDS);
+		f2.get(5, TimeUnit.SECONDS);
+
+		EtchStore recovered=EtchStore.create(copyTemp(file));
+		assertEquals(v1.getHash(), recovered.getEtch().getRootHash());
+		assertEquals(v1, recovered.getEtch().read(v1.getHash()).getValue());
+		recovered.close();
+
+		// with an interval, requests complete at the next background flush
+		store.setFlushInterval(20);
+		AVector<CVMLong> v2=Vectors.of(3L,4L);
+		etch.write(v2.getHash(), v2.getRef());
+		store.flushAsync().get(5, TimeUnit.SECONDS);
+		EtchStore recovered2=EtchStore.create(copyTemp(file));
+		assertEquals(v2, recovered2.getEtch().read(v2.getHash()).getValue());
+		recovered2.close();
+
+		store.setFlushInterval(0);
+		store.close();
+	}
+
+	@Test
+	public void testCompression() throws IOException {
+		// codec round trips, and fails on data that doesn't compress
+		Random r=new Random(5678);
+		byte[] rand=new byte[1000];
+		r.nextBytes(rand);
+		byte[] buf=new byte[2000];
+		assertEquals(-1, LZCodec.compress(rand, 0, rand.length, buf, 0, rand.length-1));
+		byte[] rep=new byte[5000];
+		for (int i=0; i<rep.length; i++) rep[i]=(byte)((i%37<32)?i%7:r.nextInt());
+		int n=LZCodec.compress(rep, 0, rep.length, buf, 0, buf.length);
+		assertTrue((n>0)&&(n<rep.length/2));
+		byte[] out=new byte[rep.length];
+		assertEquals(rep.length, LZCodec.decompress(buf, 0, n, out, 0, out.length));
+		assertArrayEquals(rep, out);
+		assertThrows(IllegalArgumentException.class, ()->LZCodec.decompress(buf, 0, n-1, out, 0, out.length));
+
+		// repetitive record is stored compressed, and reads back identically
+		Blob b=Blob.wrap(Arrays.copyOf(rep, 4000));
+		Etch etch=EtchStore.createTemp().getEtch();
+		long start=etch.getDataLength();
+		etch.write(b.getHash(), b.getRef());
+		assertTrue(etch.getDataLength()-start<2000);
+		assertEquals(b, etch.read(b.getHash()).getValue());
+
+		Blob b2=Blob.wrap(Arrays.copyOfRange(rep, 1000, 5000));
+		etch.setCompression(false);
+		start=etch.getDataLength();
+		etch.write(b2.getHash(), b2.getRef());
+		assertTrue(etch.getDataLength()-start>4000);
+		assertEquals(b2, etch.read(b2.getHash()).getValue());
+		assertEquals(b, etch.read(b.getHash()).getValue());
+	}
+
+	@Test
+	public void testScanAndExport() throws IOException, BadFormatException {
+		Etch etch=EtchStore.createTemp().getEtch();
+		int COUNT=2000;
+		for (int i=0; i<COUNT; i++) {
+			AVector<CVMLong> v=Vectors.of((long) i, (long) (i*7));
+			etch.write(v.getHash(), v.getRef());
+		}
+		Blob b=Blob.wrap(new byte[200]);
+		AVector<ACell> root=Vectors.of(b, 1L);
+		etch.write(b.getHash(), b.getRef());
+		etch.write(root.getHash(), root.getRef());
+		etch.setRootHash(root.getHash());
+
+		EtchStats stats=EtchStats.collect(etch);
+		assertEquals(COUNT+2, stats.getRecordCount());
+		assertEquals(COUNT+1, stats.getTagCount(Tag.VECTOR));
+		assertEquals(1, stats.getTagCount(Tag.BLOB));
+		assertEquals(1, stats.getCompressedCount());
+		assertTrue(stats.getIndexBlockCount()>1);
+		assertTrue(stats.getMaxDepth()>=1);
+		assertTrue((stats.getIndexFill()>0.0)&&(stats.getIndexFill()<=1.0));
+		assertTrue(stats.getStoredBytes()<stats.getEncodingBytes()+COUNT*100L);
+		assertTrue(stats.toString().contains("VECTOR"));
+
+		// export and import into a new Etch store
+		ByteArrayOutputStream bos=new ByteArrayOutputStream();
+		assertEquals(COUNT+2, EtchExport.write(etch, bos));
+		byte[] bs=bos.toByteArray();
+		EtchStore store2=EtchStore.createTemp();
+		Ref<ACell> r=EtchExport.read(new ByteArrayInputStream(bs), store2);
+		assertEquals(root.getHash(), store2.getEtch().getRootHash());
+		assertEquals(root, r.getValue());
+		assertEquals(Ref.PERSISTED, store2.refForHash(b.getHash()).getStatus());
+		for (int i=0; i<COUNT; i+=100) {
+			AVector<CVMLong> v=Vectors.of((long) i, (long) (i*7));
+			Ref<ACell> vr=store2.refForHash(v.getHash());
+			assertEquals(v, vr.getValue());
+			assertEquals(Ref.STORED, vr.getStatus()); // not reachable from root, flags not imported
+		}
+		assertEquals(COUNT+2, EtchStats.collect(store2.getEtch()).getRecordCount());
+
+		byte[] bad=Arrays.copyOf(bs, bs.length-3);
+		assertThrows(BadFormatException.class, ()->EtchExport.read(new ByteArrayInputStream(bad), EtchStore.createTemp()));
+
+		// export with data missing below the root
+		Etch etch3=EtchStore.createTemp().getEtch();
+		etch3.write(root.getHash(), root.getRef());
+		etch3.setRootHash(root.getHash());
+		ByteArrayOutputStream bos3=new ByteArrayOutputStream();
+		EtchExport.write(etch3, bos3);
+		assertThrows(BadFormatException.class, ()->EtchExport.read(new ByteArrayInputStream(bos3.toByteArray()), EtchStore.createTemp()));
+	}
+
+	@Test
+	public void testUpgrade() throws IOException {
+		// build a file in the earlier format: header, root index block, then data records
+		Blob b=Blob.wrap(new byte[200]);
+		AVector<CVMLong> v=Vectors.of(1L, 2L, 3L);
+		List<ACell> cells=List.of(b, v);
+		assertTrue(b.getHash().byteAt(0)!=v.getHash().byteAt(0));
+		int indexStart=42;
+		ByteArrayOutputStream data=new ByteArrayOutputStream();
+		byte[] index=new byte[2048];
+		long pos=indexStart+index.length;
+		for (ACell c: cells) {
+			Blob enc=c.getEncoding();
+			Utils.writeLong(index, 8*(c.getHash().byteAt(0)&0xFF), pos+data.size());
+			data.write(c.getHash().getBytes());
+			data.write(Ref.STORED);
+			data.write(new byte[8]);
+			data.write((int)(enc.count()>>8));
+			data.write((int)enc.count());
+			data.write(enc.getBytes());
+		}
+		byte[] header=new byte[indexStart];
+		header[0]=(byte)0xe7;
+		header[1]=(byte)0xc6;
+		Utils.writeLong(header, 2, pos+data.size());
+		b.getHash().getBytes(header, 10);
+		File old=File.createTempFile("etch-v1-", null);
+		old.deleteOnExit();
+		try (RandomAccessFile raf=new RandomAccessFile(old, "rw")) {
+			raf.write(header);
+			raf.write(index);
+			raf.write(data.toByteArray());
+		}
+
+		// old format is rejected, but can be upgraded
+		assertThrows(IOException.class, ()->Etch.create(old));
+		assertTrue(EtchUpgrade.isUpgradable(old));
+		Etch etch=EtchStore.createTemp().getEtch();
+		assertEquals(2, EtchUpgrade.upgrade(old, etch));
+		assertEquals(b.getHash(), etch.getRootHash());
+		assertEquals(b, etch.read(b.getHash()).getValue());
+		assertEquals(v, etch.read(v.getHash()).getValue());
+		assertEquals(Ref.STORED, etch.read(v.getHash()).getStatus());
+		assertFalse(EtchUpgrade.isUpgradable(etch.getFile()));
+	}
+
+	@Test
+	public void testIndexCache() throws IOException {
+		File file=File.createTempFile("etch-cache-", null);
+		file.deleteOnExit();
+		file.delete();
+		EtchStore store=EtchStore.create(file);
+		Etch etch=store.getEtch();
+
+		// keys sharing leading bytes build chains and index blocks in the cached levels
+		Random r=new Random(4321);
+		int COUNT=3000;
+		List<Blob> keys=new ArrayList<>();
+		List<AVector<CVMLong>> values=new ArrayList<>();
+		for (int i=0; i<COUNT; i++) {
+			byte[] kb=new byte[32];
+			r.nextBytes(kb);
+			kb[0]=(byte)(i%3);
+			if (i%2==0) kb[1]=(byte)(i%5);
+			AVector<CVMLong> v=Vectors.of((long) i);
+			keys.add(Blob.wrap(kb));
+			values.add(v);
+			etch.write(keys.get(i), v.getRef());
+			if (i==COUNT/2) etch.flush(); // later writes to committed slots are pending
+		}
+		for (int i=0; i<COUNT; i++) {
+			assertEquals(values.get(i), etch.read(keys.get(i)).getValue());
+		}
+		Blob missing=Blob.wrap(Arrays.copyOf(keys.get(0).getBytes(), 32));
+		missing.getInternalArray()[31]^=1;
+		assertNull(etch.read(missing));
+		store.close();
+
+		// cache is rebuilt on opening
+		EtchStore store2=EtchStore.create(file);
+		for (int i=0; i<COUNT; i++) {
+			assertEquals(values.get(i), store2.getEtch().read(keys.get(i)).getValue());
+		}
+		store2.close();
+	}
+
+	private static File copyTemp(File file) throws IOException {
+		File copy=File.createTempFile("etch-copy-", null);
+		copy.deleteOnExit();
+		Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return copy;
+	}
+
+	private static int indexOf(byte[] data, byte[] target) {
+		outer: for (int i=0; i<=data.length-target.length; i++) {
+			for (int j=0; j<target.length; j++) {
+				if (data[i+j]!=target[j]) continue outer;
+			}
+			return i;
+		}
+		return -1;
+	}
+
 	private void doStoreWrite(Etch etch, Random random) throws IOException {
 		AVector<CVMLong> v=Vectors.of(random.nextLong());
 		Hash key = v.getHash();
@@ -68,9 +68,11 @@ public class BlockViewComponent extends JPanel {
 			g.setColor(c);
 			g.fillRect(x + 1, 1, W - 2, W - 2);
 
-			if (c == Color.green) {
+			// state after block, if executed and not pruned
+			long si = i + 1 - p.getHistoryStart();
+			if ((c == Color.green) && (si >= 0) && (si < p.getStates().count())) {
 				g.setColor(Color.black);
-				State s = p.getStates().get(i + 1);
+				State s = p.getStates().get(si);
 				for (int j = 0; j < 6; j++) {
 					Hash h = s.getHash();
 					if (h.byteAt(j) < 0) {
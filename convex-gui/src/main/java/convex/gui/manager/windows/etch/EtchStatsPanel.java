@@ -0,0 +1,113 @@
+package convex.gui.manager.windows.etch;
+
+import java.awt.BorderLayout;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import javax.swing.JButton;
+import javax.swing.JFileChooser;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.SwingWorker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.gui.components.ActionPanel;
+import convex.gui.utils.Toolkit;
+import etch.EtchExport;
+import etch.EtchStats;
+import etch.EtchStore;
+
+/**
+ * Panel showing statistics for the contents of an Etch store, with export of all records
+ */
+@SuppressWarnings("serial")
+public class EtchStatsPanel extends JPanel {
+
+	private static final Logger log = LoggerFactory.getLogger(EtchStatsPanel.class.getName());
+
+	private final EtchStore store;
+
+	private final JTextArea resultArea = new JTextArea();
+
+	private final JButton btnRefresh = new JButton("Refresh");
+
+	private final JButton btnExport = new JButton("Export...");
+
+	public EtchStatsPanel(EtchStore store) {
+		this.store = store;
+		setLayout(new BorderLayout());
+
+		resultArea.setEditable(false);
+		resultArea.setFont(Toolkit.SMALL_MONO_FONT);
+		resultArea.setText("Press Refresh to scan the store. This may take some time for a large store.");
+		add(new JScrollPane(resultArea), BorderLayout.CENTER);
+
+		ActionPanel actionPanel = new ActionPanel();
+		add(actionPanel, BorderLayout.SOUTH);
+		actionPanel.add(btnRefresh);
+		actionPanel.add(btnExport);
+
+		btnRefresh.addActionListener(e -> refresh());
+
+		final JFileChooser fc = new JFileChooser();
+		btnExport.addActionListener(e -> {
+			if (fc.showSaveDialog(EtchStatsPanel.this) != JFileChooser.APPROVE_OPTION) return;
+			export(fc.getSelectedFile());
+		});
+	}
+
+	/**
+	 * Scans the store in the background and shows the statistics
+	 */
+	private void refresh() {
+		run(() -> {
+			EtchStats stats = EtchStats.collect(store.getEtch());
+			return "Etch file: " + store.getFileName() + "\n\n" + stats;
+		});
+	}
+
+	/**
+	 * Exports all records of the store in the background
+	 */
+	private void export(File file) {
+		log.info("Exporting Etch store to: {}", file);
+		run(() -> {
+			try (OutputStream out = new FileOutputStream(file)) {
+				long n = EtchExport.write(store.getEtch(), out);
+				return "Exported " + n + " records to " + file;
+			}
+		});
+	}
+
+	private interface Task {
+		String call() throws Exception;
+	}
+
+	private void run(Task task) {
+		btnRefresh.setEnabled(false);
+		btnExport.setEnabled(false);
+		new SwingWorker<String, Object>() {
+			@Override
+			protected String doInBackground() throws Exception {
+				return task.call();
+			}
+
+			@Override
+			protected void done() {
+				try {
+					resultArea.setText(get());
+				} catch (Exception e) {
+					log.warn("Etch scan failed", e);
+					resultArea.setText("Failed: " + e.getMessage());
+				} finally {
+					btnRefresh.setEnabled(true);
+					btnExport.setEnabled(true);
+				}
+			}
+		}.execute();
+	}
+}
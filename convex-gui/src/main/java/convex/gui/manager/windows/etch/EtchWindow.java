@@ -32,6 +32,7 @@ public class EtchWindow extends BaseWindow {
 		add(pcom, BorderLayout.NORTH);
 		
 		add(tabbedPane, BorderLayout.CENTER);
+		tabbedPane.add("Statistics", new EtchStatsPanel(store));
 	}
 
 	@Override
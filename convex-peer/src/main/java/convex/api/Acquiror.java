@@ -0,0 +1,325 @@
+package convex.api;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.data.ACell;
+import convex.core.data.Hash;
+import convex.core.data.Ref;
+import convex.core.data.RefDirect;
+import convex.core.exceptions.MissingDataException;
+import convex.core.store.AStore;
+import convex.core.store.Stores;
+import convex.core.util.Utils;
+import convex.net.Connection;
+
+/**
+ * Engine for acquiring complete persistent data structures from a remote Peer.
+ *
+ * Tracks the hashes that have been requested but not yet received, and pipelines
+ * MISSING_DATA requests up to a fixed window. Acquisitions are advanced as DATA arrives,
+ * with missing children requested as soon as their parent is received, and futures are
+ * completed as soon as all data is available.
+ *
+ * Requests that receive no response within RETRY_INTERVAL are re-sent.
+ */
+class Acquiror {
+
+	private static final Logger log = LoggerFactory.getLogger(Acquiror.class.getName());
+
+	/**
+	 * Maximum number of outstanding MISSING_DATA requests
+	 */
+	static final int WINDOW = 256;
+
+	/**
+	 * Time after which an unanswered request is re-sent, in milliseconds
+	 */
+	static final long RETRY_INTERVAL = 1000;
+
+	/**
+	 * Interval for checking stalled requests, in milliseconds
+	 */
+	private static final long CHECK_INTERVAL = 200;
+
+	private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "Acquiror retry timer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final ConvexRemote convex;
+
+	/**
+	 * Hashes requested from the Peer, with the time of the last request
+	 */
+	private final HashMap<Hash, Long> outstanding = new HashMap<>();
+
+	/**
+	 * Hashes waiting for space in the request window
+	 */
+	private final ArrayDeque<Hash> queue = new ArrayDeque<>();
+	private final HashSet<Hash> queued = new HashSet<>();
+
+	/**
+	 * Acquisitions waiting for each hash
+	 */
+	private final HashMap<Hash, ArrayList<Task<?>>> waiters = new HashMap<>();
+
+	private final ArrayList<Task<?>> tasks = new ArrayList<>();
+
+	private final ScheduledFuture<?> checker;
+
+	Acquiror(ConvexRemote convex) {
+		this.convex = convex;
+		this.checker = timer.scheduleWithFixedDelay(this::check, CHECK_INTERVAL, CHECK_INTERVAL,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * State of a single acquisition
+	 */
+	private static final class Task<T extends ACell> {
+		final Hash hash;
+		final AStore store;
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		final HashSet<Hash> pending = new HashSet<>();
+
+		Task(Hash hash, AStore store) {
+			this.hash = hash;
+			this.store = store;
+		}
+	}
+
+	/**
+	 * Starts acquiring the data structure with the given hash
+	 * @param hash Hash of value to acquire
+	 * @param store Store into which data is acquired
+	 * @return Future for the acquired value
+	 */
+	<T extends ACell> CompletableFuture<T> acquire(Hash hash, AStore store) {
+		Task<T> t = new Task<>(hash, store);
+		synchronized (this) {
+			tasks.add(t);
+			try {
+				scan(t);
+				sendRequests();
+			} catch (Throwable e) {
+				t.future.completeExceptionally(e);
+			}
+		}
+		return t.future;
+	}
+
+	/**
+	 * Handles receipt of a data value. Should be called after the value is stored.
+	 * @param hash Hash of value received
+	 * @param value Value received
+	 */
+	synchronized void handleData(Hash hash, ACell value) {
+		outstanding.remove(hash);
+		if (queued.remove(hash)) queue.remove(hash);
+
+		ArrayList<Task<?>> ts = waiters.remove(hash);
+		if (ts == null) return;
+		for (Task<?> t : ts) {
+			if (t.future.isDone()) continue;
+			try {
+				t.pending.remove(hash);
+				if (t.store.refForHash(hash) == null) {
+					// acquiring into a store other than the Connection store
+					withStore(t.store, () -> t.store.storeRef(RefDirect.create(value, hash), Ref.STORED, null));
+				}
+				expand(t, value);
+				if (t.pending.isEmpty()) scan(t);
+			} catch (Throwable e) {
+				t.future.completeExceptionally(e);
+			}
+		}
+		sendRequests();
+	}
+
+	/**
+	 * Requests any missing children of a received value
+	 */
+	private void expand(Task<?> t, ACell value) {
+		int n = value.getRefCount();
+		for (int i = 0; i < n; i++) {
+			Ref<?> child = value.getRef(i);
+			if (child.isEmbedded()) continue;
+			Hash h = child.getHash();
+			Ref<?> stored = t.store.refForHash(h);
+			if (stored == null) {
+				need(t, h);
+			} else if (stored.getStatus() < Ref.PERSISTED) {
+				// present, but descendants may be missing
+				HashSet<Hash> missing = new HashSet<>();
+				runWithStore(t.store, () -> stored.findMissing(missing));
+				for (Hash m : missing) {
+					need(t, m);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Scans a complete acquisition for missing data, completing the task if there is none.
+	 */
+	private <T extends ACell> void scan(Task<T> t) {
+		Ref<T> ref = t.store.refForHash(t.hash);
+		if (ref == null) {
+			need(t, t.hash);
+			return;
+		}
+		HashSet<Hash> missing = new HashSet<>();
+		runWithStore(t.store, () -> ref.findMissing(missing));
+		if (missing.isEmpty()) {
+			try {
+				Ref<T> pr = withStore(t.store, () -> ref.persist());
+				complete(t, pr.getValue());
+				return;
+			} catch (MissingDataException e) {
+				missing.add(e.getMissingHash());
+			}
+		}
+		for (Hash h : missing) {
+			need(t, h);
+		}
+	}
+
+	private <T extends ACell> void complete(Task<T> t, T value) {
+		tasks.remove(t);
+		t.future.complete(value);
+	}
+
+	/**
+	 * Registers that a task needs the given hash, queueing a request if necessary
+	 */
+	private void need(Task<?> t, Hash h) {
+		if (!t.pending.add(h)) return;
+		waiters.computeIfAbsent(h, k -> new ArrayList<>()).add(t);
+		if (outstanding.containsKey(h)) return;
+		if (queued.add(h)) queue.add(h);
+	}
+
+	/**
+	 * Sends queued requests while there is space in the window
+	 */
+	private void sendRequests() {
+		Connection c = convex.getConnection();
+		if (c == null) return;
+		while ((outstanding.size() < WINDOW) && !queue.isEmpty()) {
+			Hash h = queue.peek();
+			try {
+				if (!c.sendMissingData(h)) {
+					log.debug("Send Queue full!");
+					return; // retry on next check
+				}
+			} catch (IOException e) {
+				log.debug("Failed to request missing data: {}", e.getMessage());
+				return;
+			}
+			queue.poll();
+			queued.remove(h);
+			outstanding.put(h, Utils.getCurrentTimestamp());
+		}
+	}
+
+	/**
+	 * Periodic check to re-send stalled requests and discard abandoned acquisitions.
+	 */
+	private synchronized void check() {
+		try {
+			tasks.removeIf(t -> t.future.isDone());
+			if (tasks.isEmpty()) {
+				clear();
+				return;
+			}
+
+			Connection c = convex.getConnection();
+			if ((c == null) || c.isClosed()) {
+				failAll(new IOException("Connection closed during acquire"));
+				return;
+			}
+
+			long now = Utils.getCurrentTimestamp();
+			Iterator<Map.Entry<Hash, Long>> it = outstanding.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<Hash, Long> e = it.next();
+				if (now - e.getValue() < RETRY_INTERVAL) continue;
+				Hash h = e.getKey();
+				it.remove();
+				if (isWanted(h) && queued.add(h)) queue.addFirst(h);
+			}
+			sendRequests();
+		} catch (Throwable t) {
+			log.warn("Unexpected error checking acquisitions: {}", t);
+		}
+	}
+
+	private boolean isWanted(Hash h) {
+		ArrayList<Task<?>> ts = waiters.get(h);
+		if (ts == null) return false;
+		ts.removeIf(t -> t.future.isDone());
+		if (ts.isEmpty()) {
+			waiters.remove(h);
+			return false;
+		}
+		return true;
+	}
+
+	private void clear() {
+		outstanding.clear();
+		queue.clear();
+		queued.clear();
+		waiters.clear();
+	}
+
+	/**
+	 * Stops this Acquiror, failing any incomplete acquisitions
+	 * @param reason Exception with which to fail acquisitions
+	 */
+	synchronized void close(Throwable reason) {
+		failAll(reason);
+		checker.cancel(false);
+	}
+
+	private void failAll(Throwable reason) {
+		for (Task<?> t : tasks) {
+			t.future.completeExceptionally(reason);
+		}
+		tasks.clear();
+		clear();
+	}
+
+	private static void runWithStore(AStore store, Runnable r) {
+		withStore(store, () -> {
+			r.run();
+			return null;
+		});
+	}
+
+	private static <R> R withStore(AStore store, Supplier<R> s) {
+		AStore temp = Stores.current();
+		try {
+			Stores.setCurrent(store);
+			return s.get();
+		} finally {
+			Stores.setCurrent(temp);
+		}
+	}
+}
@@ -112,6 +112,11 @@ public abstract class Convex {
 			}
 		}
 
+		@Override
+		protected void handleData(Hash hash, ACell value) {
+			handleDataReceived(hash, value);
+		}
+
 		@Override
 		public void accept(Message m) {
 			super.accept(m);
@@ -128,6 +133,17 @@ public abstract class Convex {
 
 	private Consumer<Message> delegatedHandler = null;
 
+	/**
+	 * Called when a DATA value is received from the remote peer, after it has been stored.
+	 * Default behaviour is to do nothing.
+	 *
+	 * @param hash Hash of value received
+	 * @param value Value received
+	 */
+	protected void handleDataReceived(Hash hash, ACell value) {
+		// nothing by default
+	}
+
 	protected Convex(Address address, AKeyPair keyPair) {
 		this.keyPair = keyPair;
 		this.address = address;
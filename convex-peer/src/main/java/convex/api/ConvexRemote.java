@@ -2,7 +2,6 @@ package convex.api;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.HashSet;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -19,12 +18,9 @@ import convex.core.data.ACell;
 import convex.core.data.AVector;
 import convex.core.data.Address;
 import convex.core.data.Hash;
-import convex.core.data.Ref;
 import convex.core.data.SignedData;
-import convex.core.exceptions.MissingDataException;
 import convex.core.lang.RT;
 import convex.core.store.AStore;
-import convex.core.store.Stores;
 import convex.core.transactions.ATransaction;
 import convex.core.util.Utils;
 import convex.net.Connection;
@@ -37,6 +33,11 @@ public class ConvexRemote extends Convex {
 	
 	private static final Logger log = LoggerFactory.getLogger(ConvexRemote.class.getName());
 
+	/**
+	 * Engine for acquiring data from the current Connection, created on demand
+	 */
+	private volatile Acquiror acquiror;
+
 	
 	/**
 	 * Gets the Internet address of the currently connected remote
@@ -197,65 +198,25 @@ public class ConvexRemote extends Convex {
 	
 	@Override
 	public <T extends ACell> CompletableFuture<T> acquire(Hash hash, AStore store) {
-		CompletableFuture<T> f = new CompletableFuture<T>();
-		new Thread(new Runnable() {
-			@Override
-			public void run() {
-				Stores.setCurrent(store); // use store for calling thread
-				try {
-					Ref<T> ref = store.refForHash(hash);
-					HashSet<Hash> missingSet = new HashSet<>();
+		Acquiror a = getAcquiror();
+		if (a == null) return CompletableFuture.failedFuture(new IOException("Not connected"));
+		return a.acquire(hash, store);
+	}
 
-					// Loop until future is complete or cancelled
-					while (!f.isDone()) {
-						missingSet.clear();
+	/**
+	 * Gets the Acquiror for the current connection, creating it if necessary
+	 * @return Acquiror instance, or null if not connected
+	 */
+	private synchronized Acquiror getAcquiror() {
+		if (connection == null) return null;
+		if (acquiror == null) acquiror = new Acquiror(this);
+		return acquiror;
+	}
 
-						if (ref == null) {
-							missingSet.add(hash);
-						} else {
-							if (ref.getStatus() >= Ref.PERSISTED) {
-								// we have everything!
-								f.complete(ref.getValue());
-								return;
-							}
-							ref.findMissing(missingSet);
-						}
-						for (Hash h : missingSet) {
-							// send missing data requests until we fill pipeline
-							log.debug("Request missing data: {}", h);
-							boolean sent = connection.sendMissingData(h);
-							if (!sent) {
-								log.debug("Send Queue full!");
-								break;
-							}
-						}
-						// if too low, can send multiple requests, and then block the peer
-						Thread.sleep(100);
-						ref = store.refForHash(hash);
-						if (ref != null) {
-							if (ref.getStatus() >= Ref.PERSISTED) {
-								// we have everything!
-								f.complete(ref.getValue());
-								return;
-							}
-							// maybe complete, but not sure
-							try {
-								ref = ref.persist();
-								f.complete(ref.getValue());
-							} catch (MissingDataException e) {
-								Hash missing = e.getMissingHash();
-								log.debug("Still missing: {}", missing);
-								connection.sendMissingData(missing);
-							}
-						}
-					}
-				} catch (Throwable t) {
-					// catch any errors, probably IO?
-					f.completeExceptionally(t);
-				}
-			}
-		}).start();
-		return f;
+	@Override
+	protected void handleDataReceived(Hash hash, ACell value) {
+		Acquiror a = acquiror;
+		if (a != null) a.handleData(hash, value);
 	}
 	
 	/**
@@ -268,6 +229,11 @@ public class ConvexRemote extends Convex {
 		}
 		connection = null;
 		awaiting.clear();
+		Acquiror a = acquiror;
+		if (a != null) {
+			a.close(new IOException("Connection closed"));
+			acquiror = null;
+		}
 	}
 
 	/**
@@ -12,7 +12,9 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.TimeoutException;
@@ -26,6 +28,7 @@ import convex.core.data.ACell;
 import convex.core.data.AccountKey;
 import convex.core.data.AVector;
 import convex.core.data.Address;
+import convex.core.data.Blob;
 import convex.core.data.Format;
 import convex.core.data.Hash;
 import convex.core.data.IRefFunction;
@@ -87,13 +90,34 @@ public class Connection {
 	 */
 	private final ByteBuffer frameBuf = ByteBuffer.allocateDirect(Format.LIMIT_ENCODING_LENGTH + 20);
 
+	/**
+	 * Maximum length of the body of a DATA_BATCH message (message length less type byte)
+	 */
+	private static final int MAX_BATCH_LENGTH = Format.LIMIT_ENCODING_LENGTH - 1;
+
 	private final MessageReceiver receiver;
 	private final MessageSender sender;
 
+	/**
+	 * Flag indicating that reading from the channel is paused, for back-pressure
+	 */
+	private volatile boolean receivePaused = false;
+
+	/**
+	 * Flag indicating that reading from the channel is paused because too many received frames
+	 * are awaiting decode
+	 */
+	private volatile boolean decodePaused = false;
+
+	/**
+	 * Selection keys from which read interest has been removed while paused
+	 */
+	private final ArrayList<SelectionKey> pausedKeys = new ArrayList<>();
+
 	private Connection(ByteChannel clientChannel, Consumer<Message> receiveAction, AStore store,
 			AccountKey trustedPeerKey) {
 		this.channel = clientChannel;
-		receiver = new MessageReceiver(receiveAction, this);
+		receiver = MessageReceiver.createPooled(receiveAction, this);
 		sender = new MessageSender(clientChannel);
 		this.store = store;
 		this.trustedPeerKey = trustedPeerKey;
@@ -275,6 +299,62 @@ public class Connection {
 		return sendBuffer(MessageType.DATA, buf);
 	}
 
+	/**
+	 * Sends multiple data cells on this connection, packing as many as possible into
+	 * each DATA_BATCH Message. Cells are sent in the order given. A cell with an encoding
+	 * too large for a batch is sent as a single DATA Message.
+	 *
+	 * Does not send embedded values.
+	 *
+	 * @param cells Data objects to send
+	 * @return true if all cells buffered successfully, false otherwise
+	 * @throws IOException If IO error occurs
+	 */
+	public boolean sendDataBatch(List<ACell> cells) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(MAX_BATCH_LENGTH);
+		boolean sent = true;
+		ACell first = null;
+		int count = 0;
+		for (ACell cell : cells) {
+			if (Format.isEmbedded(cell)) continue;
+			Blob enc = Format.encodedBlob(cell);
+			int n = (int) enc.count();
+			int entryLength = Format.getVLCLength(n) + n;
+			if (entryLength > buf.remaining()) {
+				sent &= sendBatch(buf, first, count);
+				count = 0;
+				if (entryLength > MAX_BATCH_LENGTH) {
+					sent &= sendData(cell);
+					continue;
+				}
+			}
+			if (count == 0) first = cell;
+			Format.writeVLCLong(buf, n);
+			enc.writeToBuffer(buf);
+			count++;
+		}
+		sent &= sendBatch(buf, first, count);
+		return sent;
+	}
+
+	/**
+	 * Sends the cells accumulated in a batch buffer, and clears the buffer.
+	 */
+	private boolean sendBatch(ByteBuffer buf, ACell first, int count) throws IOException {
+		if (count == 0) return true;
+		boolean sent;
+		if (count == 1) {
+			// no benefit from batching a single cell
+			sent = sendData(first);
+		} else {
+			log.trace("Sending data batch of {} cells", count);
+			buf.flip();
+			sent = sendBuffer(MessageType.DATA_BATCH, buf);
+		}
+		buf.clear();
+		return sent;
+	}
+
 	/**
 	 * Sends a DATA Message on this connection.
 	 *
@@ -491,17 +571,15 @@ public class Connection {
 
 		// Need to ensure message is persisted at least, so we can respond to missing
 		// data messages using the current thread store
-		// We pre-send any novelty to the destination
+		// We pre-send any novelty to the destination, batched into as few messages as possible
 		ACell sendVal = payload;
+		ArrayList<ACell> novelty = new ArrayList<>();
 		ACell.createPersisted(sendVal, r -> {
-			try {
-				ACell data = r.getValue();
-				if (data==sendVal) return; // skip sending top payload
-				if (!Format.isEmbedded(data)) sendData(data);
-			} catch (IOException e) {
-				throw Utils.sneakyThrow(e);
-			}
+			ACell data = r.getValue();
+			if (data==sendVal) return; // skip sending top payload
+			if (!Format.isEmbedded(data)) novelty.add(data);
 		});
+		if (!novelty.isEmpty()) sendDataBatch(novelty);
 
 		ByteBuffer buf = Format.encodedBuffer(sendVal);
 		if (log.isTraceEnabled()) {
@@ -689,6 +767,7 @@ public class Connection {
 		Connection conn = (Connection) key.attachment();
 		if (conn == null)
 			throw new Error("No PeerConnection specified");
+		if (!conn.checkReceive(key)) return;
 
 		try {
 			int n = conn.handleChannelRecieve();
@@ -703,6 +782,78 @@ public class Connection {
 		}
 	}
 
+	/**
+	 * Pauses or resumes reading from the channel of this Connection. While paused, selectors
+	 * stop selecting this Connection for reads, so unread data accumulates in the socket buffer
+	 * and the sender is eventually blocked by TCP flow control.
+	 *
+	 * @param paused true to pause reading, false to resume
+	 */
+	public void setReceivePaused(boolean paused) {
+		synchronized (pausedKeys) {
+			receivePaused = paused;
+			resumeReads();
+		}
+	}
+
+	/**
+	 * Pauses or resumes reading from the channel of this Connection while the receiver has too
+	 * many frames awaiting decode. Independent of {@link #setReceivePaused(boolean)}: reading
+	 * resumes only when neither applies.
+	 *
+	 * @param paused true to pause reading, false to resume
+	 */
+	void setDecodePaused(boolean paused) {
+		synchronized (pausedKeys) {
+			decodePaused = paused;
+			resumeReads();
+		}
+	}
+
+	/**
+	 * Restores read interest to paused keys, if reading is no longer paused. Must hold the
+	 * lock on pausedKeys.
+	 */
+	private void resumeReads() {
+		if (receivePaused || decodePaused) return;
+		for (SelectionKey key : pausedKeys) {
+			try {
+				key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+				key.selector().wakeup();
+			} catch (CancelledKeyException e) {
+				// ignore, channel closed
+			}
+		}
+		pausedKeys.clear();
+	}
+
+	/**
+	 * Checks if reading from the channel of this Connection is paused
+	 * @return true if paused, false otherwise
+	 */
+	public boolean isReceivePaused() {
+		return receivePaused || decodePaused;
+	}
+
+	/**
+	 * Checks whether a selector may read from this Connection. If reading is paused, removes
+	 * read interest from the key until reading is resumed.
+	 *
+	 * SECURITY: Called on NIO Thread (Server or client Connection)
+	 *
+	 * @param key Selection key which is ready for reading
+	 * @return true if the read should proceed, false if paused
+	 */
+	boolean checkReceive(SelectionKey key) {
+		if (!(receivePaused || decodePaused)) return true;
+		synchronized (pausedKeys) {
+			if (!(receivePaused || decodePaused)) return true;
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+			if (!pausedKeys.contains(key)) pausedKeys.add(key);
+			return false;
+		}
+	}
+
 	/**
 	 * Handles receipt of bytes from the channel on this Connection.
 	 *
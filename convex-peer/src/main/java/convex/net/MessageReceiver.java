@@ -4,6 +4,15 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
@@ -12,9 +21,13 @@ import org.slf4j.LoggerFactory;
 import convex.core.Constants;
 import convex.core.data.ABlob;
 import convex.core.data.ACell;
+import convex.core.data.AVector;
 import convex.core.data.Blob;
 import convex.core.data.Format;
+import convex.core.data.Vectors;
 import convex.core.exceptions.BadFormatException;
+import convex.core.store.AStore;
+import convex.core.store.Stores;
 import convex.net.message.Message;
 
 /**
@@ -22,8 +35,9 @@ import convex.net.message.Message;
  *
  * ByteBuffers received must be passed in via @receiveFromChannel
  *
- * Passes any successfully received objects to a specified Consumer, using the same thread on which the
- * MessageReceiver was called.
+ * Passes any successfully received objects to a specified Consumer. Decoding and handling is performed by
+ * an Executor, which may be the thread on which the MessageReceiver was called or a shared decode pool.
+ * Messages from a single receiver are always handled in order of receipt.
  *
  * <blockquote>
  *   <p>"There are only two hard problems in distributed systems: 2. Exactly-once
@@ -39,22 +53,101 @@ public class MessageReceiver {
 	public static final int RECEIVE_BUFFER_SIZE = Constants.RECEIVE_BUFFER_SIZE;
 
 	/**
-	 * Buffer for receiving partial messages. Maintained ready for writing.
+	 * Maximum number of received frames awaiting decode for a single connection. Reading from
+	 * the connection is paused at this limit until half the frames are decoded, which creates
+	 * backpressure on the sender without blocking the receiving thread.
+	 */
+	public static final int MAX_PENDING_FRAMES = 256;
+
+	/**
+	 * Maximum number of frames decoded in a single run on the decode pool, so that a busy
+	 * connection cannot monopolise a decode thread.
+	 */
+	private static final int DRAIN_BATCH = 64;
+
+	/**
+	 * Shared pool for decoding received messages
+	 */
+	private static final ExecutorService decodePool = createDecodePool();
+
+	private static ExecutorService createDecodePool() {
+		int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		AtomicInteger count = new AtomicInteger(0);
+		ThreadFactory factory = r -> {
+			Thread t = new Thread(r, "Message decode " + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+		return Executors.newFixedThreadPool(threads, factory);
+	}
+
+	/**
+	 * Buffer for receiving the message length header. Maintained ready for writing.
 	 * 
-	 * Maybe use a direct buffer since we are copying from the socket channel? But probably doesn't make any difference.
+	 * Two bytes are read, since a message length is at most 2 bytes. With a 1 byte length
+	 * the second byte is the message code.
 	 */
-	private ByteBuffer buffer = ByteBuffer.allocate(RECEIVE_BUFFER_SIZE);
+	private final ByteBuffer header = ByteBuffer.allocate(2);
+
+	/**
+	 * Buffer wrapping the frame currently being received (message code plus message
+	 * body), or null if awaiting a header. Each frame gets a fresh array, since decoded
+	 * cells retain a view of their encoding.
+	 */
+	private ByteBuffer frame = null;
 
 	private final Consumer<Message> action;
 	private final Connection connection;
+	private final Executor executor;
+
+	/**
+	 * Received frames awaiting decode, in order of receipt
+	 */
+	private final ConcurrentLinkedQueue<Frame> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingCount = new AtomicInteger(0);
+	private final AtomicBoolean draining = new AtomicBoolean(false);
+
+	/**
+	 * Flag indicating that reading is paused because too many frames are pending. Updated
+	 * only while holding the lock on pendingCount.
+	 */
+	private volatile boolean decodePaused = false;
 
-	private long receivedMessageCount = 0;
+	private volatile long receivedMessageCount = 0;
 
 	private static final Logger log = LoggerFactory.getLogger(MessageReceiver.class.getName());
 
+	/**
+	 * Creates a MessageReceiver that decodes and handles messages on the receiving thread.
+	 * @param receiveAction Action to call for each received message
+	 * @param pc Connection for received messages
+	 */
 	public MessageReceiver(Consumer<Message> receiveAction, Connection pc) {
+		this(receiveAction, pc, Runnable::run);
+	}
+
+	/**
+	 * Creates a MessageReceiver that decodes and handles messages using the given executor.
+	 * Messages are always handled one at a time, in order of receipt.
+	 * @param receiveAction Action to call for each received message
+	 * @param pc Connection for received messages
+	 * @param executor Executor for decoding and handling received messages
+	 */
+	public MessageReceiver(Consumer<Message> receiveAction, Connection pc, Executor executor) {
 		this.action = receiveAction;
 		this.connection = pc;
+		this.executor = executor;
+	}
+
+	/**
+	 * Creates a MessageReceiver that decodes and handles messages on the shared decode pool,
+	 * so that the receiving (selector) thread is not held up by slow decodes.
+	 * @param receiveAction Action to call for each received message
+	 * @param pc Connection for received messages
+	 * @return New MessageReceiver
+	 */
+	public static MessageReceiver createPooled(Consumer<Message> receiveAction, Connection pc) {
+		return new MessageReceiver(receiveAction, pc, decodePool);
 	}
 
 	public Consumer<Message> getAction() {
@@ -81,66 +174,154 @@ public class MessageReceiver {
 	 *
 	 * This hopefully
 	 * creates sufficient backpressure on clients sending a lot of messages.
+	 * 
+	 * Frame bytes are read directly into the array backing the message encoding, which is 
+	 * then passed to the executor for decoding without further copying.
 	 *
 	 * @param chan Byte channel
 	 * @throws IOException If IO error occurs
 	 * @return The number of bytes read from the channel
-	 * @throws BadFormatException If a bad encoding is received
+	 * @throws BadFormatException If a bad message header is received
 	 */
 	public synchronized int receiveFromChannel(ReadableByteChannel chan) throws IOException, BadFormatException {
 		int numRead=0;
 
-		// first read a message length
-		if (buffer.position()<2) {
-			buffer.limit(2);
-			numRead = chan.read(buffer);
+		if (frame==null) {
+			// first read a message length
+			if (header.position()<2) {
+				numRead = chan.read(header);
+
+				if (numRead < 0) {
+					chan.close();
+				    throw new ClosedChannelException();
+				}
 
-			if (numRead < 0) {
-				chan.close();
-			    throw new ClosedChannelException();
+				// exit if we don't have at least 2 bytes for message length (may also be a message code)
+				if (header.position()<2) return numRead;
 			}
 
-			// exit if we don't have at least 2 bytes for message length (may also be a message code)
-			if (buffer.position()<2) return numRead;
+			// peek message length at start of header. May throw BFE.
+			int len = Format.peekMessageLength(header);
+			int lengthLength = (len < 64) ? 1 : 2;
+			
+			// allocate frame for message code plus body
+			frame=ByteBuffer.wrap(new byte[len]);
+			if (lengthLength==1) frame.put(header.get(1)); // already have message code
+			header.clear();
 		}
 
-		// peek message length at start of buffer. May throw BFE.
-		int len = Format.peekMessageLength(buffer);
-		int lengthLength = (len < 64) ? 1 : 2;
-
-		// limit buffer to total message frame size including length
-		int totalFrameSize=lengthLength + len;
-		buffer.limit(totalFrameSize);
-
 		// try to read more bytes up to limit of total message size
-		{
-			int n=chan.read(buffer);
+		if (frame.hasRemaining()) {
+			int n=chan.read(frame);
 			if (n < 0) throw new ClosedChannelException();
 			numRead+=n;
 		}
 
 		// exit if we are still waiting for more bytes
-		if (buffer.hasRemaining()) return numRead;
+		if (frame.hasRemaining()) return numRead;
 
 		// Log.debug("Message received with length: "+len);
-		buffer.flip(); // prepare for read
+		byte[] bs=frame.array();
+		frame=null;
+		MessageType type=MessageType.decode(bs[0]);
+		Blob encoding=Blob.wrap(bs,1,bs.length-1); // message body after type byte
 
-		// position buffer ready to receive message content (i.e. skip length
-		// field). We still want to include the message code.
-		buffer.position(lengthLength);
-		byte mType=buffer.get();
-		MessageType type=MessageType.decode(mType);
-		
-		byte[] bs=new byte[len-1]; // message length after type byte
-		buffer.get(bs);
-		assert(!buffer.hasRemaining()); // should consume entire buffer!
-		Blob encoding=Blob.wrap(bs);
+		submitFrame(type, encoding);
+		return numRead;
+	}
+
+	/**
+	 * Queues a received frame for decoding. Never blocks: if too many frames are pending,
+	 * reading from the Connection is paused until the backlog is decoded.
+	 */
+	private void submitFrame(MessageType type, Blob encoding) {
+		pending.add(new Frame(type, encoding));
+		if (pendingCount.incrementAndGet() >= MAX_PENDING_FRAMES) updateDecodePaused();
+		scheduleDrain();
+	}
 
-		receiveMessage(type, encoding);
+	/**
+	 * Removes a frame from the pending queue, resuming reads if the backlog has drained.
+	 * @return Frame, or null if none pending
+	 */
+	private Frame pollFrame() {
+		Frame f = pending.poll();
+		if (f == null) return null;
+		if ((pendingCount.decrementAndGet() <= MAX_PENDING_FRAMES / 2) && decodePaused) updateDecodePaused();
+		return f;
+	}
 
-		// clear buffer
-		buffer.clear();
-		return numRead;
+	/**
+	 * Pauses or resumes reading based on the current number of pending frames. The count is
+	 * read under the lock, so the last update always reflects the latest count.
+	 */
+	private void updateDecodePaused() {
+		synchronized (pendingCount) {
+			int n = pendingCount.get();
+			boolean paused = decodePaused;
+			if (n >= MAX_PENDING_FRAMES) {
+				paused = true;
+			} else if (n <= MAX_PENDING_FRAMES / 2) {
+				paused = false;
+			}
+			if (paused == decodePaused) return;
+			decodePaused = paused;
+			connection.setDecodePaused(paused);
+		}
+	}
+
+	private void scheduleDrain() {
+		if (draining.compareAndSet(false, true)) {
+			try {
+				executor.execute(this::drain);
+			} catch (RejectedExecutionException e) {
+				draining.set(false);
+				log.warn("Unable to schedule message decoding: {}", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Decodes and handles pending frames, with the Connection store as the current store.
+	 */
+	private void drain() {
+		AStore tempStore=Stores.current();
+		try {
+			Stores.setCurrent(connection.getStore());
+			for (int i=0; i<DRAIN_BATCH; i++) {
+				Frame f=pollFrame();
+				if (f==null) break;
+				try {
+					receiveMessage(f.type, f.encoding);
+				} catch (BadFormatException e) {
+					log.warn("Closing connection: Bad data format from: " + connection.getRemoteAddress() + " "
+							+ e.getMessage());
+					while (pollFrame()!=null) {
+						// drop remaining frames, keeping the pending count accurate
+					}
+					connection.close();
+					break;
+				}
+			}
+		} finally {
+			Stores.setCurrent(tempStore);
+			draining.set(false);
+		}
+		// reschedule if more frames arrived, or batch limit reached
+		if (!pending.isEmpty()) scheduleDrain();
+	}
+
+	/**
+	 * A received message frame awaiting decode
+	 */
+	private static final class Frame {
+		final MessageType type;
+		final Blob encoding;
+
+		Frame(MessageType type, Blob encoding) {
+			this.type=type;
+			this.encoding=encoding;
+		}
 	}
 
 	/**
@@ -152,13 +333,18 @@ public class MessageReceiver {
 	 * Calls the receive action with the message if successfully received. Should be called with
 	 * the correct store for this Connection.
 	 *
-	 * SECURITY: Gets called on NIO server thread
+	 * SECURITY: Gets called on the receiver's executor (decode pool thread or NIO thread)
 	 *
 	 * @throws BadFormatException if the message is incorrectly formatted`
 	 */
 	private void receiveMessage(MessageType type, ABlob encoding) throws BadFormatException {
 		
-		ACell payload = connection.getStore().decode(encoding);
+		ACell payload;
+		if (type==MessageType.DATA_BATCH) {
+			payload = decodeBatch(connection.getStore(), encoding.toFlatBlob());
+		} else {
+			payload = connection.getStore().decode(encoding);
+		}
 
 		Message message = Message.create(connection, type, payload);
 		receivedMessageCount++;
@@ -175,4 +361,34 @@ public class MessageReceiver {
 		}
 	}
 
+	/**
+	 * Decodes the body of a DATA_BATCH message, which is a sequence of cell encodings each
+	 * prefixed with a VLC encoded length.
+	 *
+	 * @param store Store to use for decoding
+	 * @param body Message body
+	 * @return Vector of decoded cells, in the order sent
+	 * @throws BadFormatException If the batch or any cell is incorrectly formatted
+	 */
+	public static AVector<ACell> decodeBatch(AStore store, Blob body) throws BadFormatException {
+		byte[] bs=body.getInternalArray();
+		int pos=body.getInternalOffset();
+		int end=pos+(int)body.count();
+		ArrayList<ACell> cells=new ArrayList<>();
+		while (pos<end) {
+			long n;
+			try {
+				n=Format.readVLCLong(bs, pos);
+			} catch (IndexOutOfBoundsException e) {
+				throw new BadFormatException("Truncated cell length in data batch");
+			}
+			pos+=Format.getVLCLength(n);
+			if ((n<=0)||(n>end-pos)) throw new BadFormatException("Bad cell length in data batch: "+n);
+			cells.add(store.decode(Blob.wrap(bs, pos, (int)n)));
+			pos+=n;
+		}
+		if (cells.isEmpty()) throw new BadFormatException("Empty data batch");
+		return Vectors.create(cells);
+	}
+
 }
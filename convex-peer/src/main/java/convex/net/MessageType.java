@@ -101,7 +101,18 @@ public enum MessageType {
 	 *
 	 * Expected Result is a Vector: [signed-belief-hash states-hash initial-state-hash peer-key consensus-state-hash]
 	 */
-	STATUS(11);
+	STATUS(11),
+
+	/**
+	 * A message relaying multiple data cells in a single frame.
+	 *
+	 * Semantically equivalent to a sequence of DATA messages, but avoids the
+	 * framing and send overhead of a separate message for each cell.
+	 *
+	 * Message body is a sequence of cell encodings, each prefixed by its length
+	 * as a VLC encoded Long. Received as a Vector of the decoded cells.
+	 */
+	DATA_BATCH(12);
 
 	private final byte messageCode;
 
@@ -133,6 +144,8 @@ public enum MessageType {
 			return GOODBYE;
 		case 11:
 			return STATUS;
+		case 12:
+			return DATA_BATCH;
 		}
 		throw new BadFormatException("Invalid message code: " + i);
 	}
@@ -14,7 +14,6 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.Iterator;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,7 +21,6 @@ import org.slf4j.LoggerFactory;
 import convex.core.Constants;
 import convex.core.exceptions.BadFormatException;
 import convex.core.store.Stores;
-import convex.net.message.Message;
 import convex.peer.Server;
 
 /**
@@ -31,8 +29,9 @@ import convex.peer.Server;
  * Allocates a single thread for the selector.
  *
  * Incoming messages are associated with a Connection (which is created if
- * required), then placed on the receive message queue. This will block if the
- * receive queue is full (thereby applying back-pressure to clients)
+ * required), then passed to the Server's receive action. Back-pressure is applied
+ * to busy clients by pausing reads from their Connection (see
+ * {@link Connection#setReceivePaused(boolean)})
  *
  */
 public class NIOServer implements Closeable {
@@ -42,28 +41,24 @@ public class NIOServer implements Closeable {
 
 	private ServerSocketChannel ssc = null;
 
-	private BlockingQueue<Message> receiveQueue;
-
 	private Selector selector = null;
 
 	private boolean running = false;
 
 	private final Server server;
 
-	private NIOServer(Server server, BlockingQueue<Message> receiveQueue) {
+	private NIOServer(Server server) {
 		this.server = server;
-		this.receiveQueue = receiveQueue;
 	}
 
 	/**
 	 * Creates a new unlaunched NIO server
 	 * 
-	 * @param server       Peer Server instance for this NIOServer
-	 * @param receiveQueue Queue for received messages
+	 * @param server Peer Server instance for this NIOServer
 	 * @return New NIOServer instance
 	 */
-	public static NIOServer create(Server server, BlockingQueue<Message> receiveQueue) {
-		return new NIOServer(server, receiveQueue);
+	public static NIOServer create(Server server) {
+		return new NIOServer(server);
 	}
 
 	public void launch(Integer port) {
@@ -211,12 +206,12 @@ public class NIOServer implements Closeable {
 			return pc;
 		SocketChannel sc = (SocketChannel) key.channel();
 		assert (!sc.isBlocking());
-		pc = createPC(sc, receiveQueue);
+		pc = createPC(sc);
 		key.attach(pc);
 		return pc;
 	}
 
-	private Connection createPC(SocketChannel sc, BlockingQueue<Message> queue) throws IOException {
+	private Connection createPC(SocketChannel sc) throws IOException {
 		return Connection.create(sc, server.getReceiveAction(), server.getStore(), null);
 	}
 
@@ -226,6 +221,7 @@ public class NIOServer implements Closeable {
 		Connection conn = ensureConnection(key);
 		if (conn == null)
 			throw new Error("No PeerConnection specified");
+		if (!conn.checkReceive(key)) return;
 		try {
 			int n = conn.handleChannelRecieve();
 			if (n == 0) {
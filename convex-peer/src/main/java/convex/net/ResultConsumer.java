@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 
 import convex.core.Result;
 import convex.core.data.ACell;
+import convex.core.data.AVector;
 import convex.core.data.Hash;
 import convex.core.data.Ref;
 import convex.core.exceptions.MissingDataException;
@@ -36,6 +37,10 @@ public abstract class ResultConsumer implements Consumer<Message> {
 					handleDataProvided(m);
 					break;
 				}
+				case DATA_BATCH: {
+					handleDataBatchProvided(m);
+					break;
+				}
 				case MISSING_DATA: {
 					handleMissingDataRequest(m);
 					break;
@@ -63,11 +68,33 @@ public abstract class ResultConsumer implements Consumer<Message> {
 			Hash h=r.getHash();
 			log.trace("Recieved DATA for hash {}",h);
 			unbuffer(h);
+			handleData(h,o);
 		} catch (MissingDataException e) {
 			// ignore?
 		}
 	}
 
+	private void handleDataBatchProvided(Message m) {
+		// Store all the data first, then replay any messages waiting for it
+		AVector<ACell> cells = m.getPayload();
+		long n = cells.count();
+		Hash[] hashes = new Hash[(int) n];
+		for (int i = 0; i < n; i++) {
+			Ref<?> r = Ref.get(cells.get(i));
+			try {
+				r.persistShallow();
+			} catch (MissingDataException e) {
+				// ignore?
+			}
+			hashes[i] = r.getHash();
+		}
+		log.trace("Recieved DATA_BATCH of {} cells", n);
+		for (int i = 0; i < n; i++) {
+			unbuffer(hashes[i]);
+			handleData(hashes[i], cells.get(i));
+		}
+	}
+
 	private void handleMissingDataRequest(Message m) {
 		// try to be helpful by returning sent data
 		Hash h = RT.ensureHash(m.getPayload());
@@ -142,6 +169,18 @@ public abstract class ResultConsumer implements Consumer<Message> {
 		}
 	}
 	
+	/**
+	 * Method called when a DATA value is received, after it has been stored. May be overridden.
+	 *
+	 * Default behaviour is to do nothing.
+	 *
+	 * @param hash Hash of value received
+	 * @param value Value received
+	 */
+	protected void handleData(Hash hash, ACell value) {
+		// nothing by default
+	}
+
 	/**
 	 * Handler for a fully received Result. May be overridden.
 	 * 
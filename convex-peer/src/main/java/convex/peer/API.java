@@ -51,6 +51,13 @@ public class API {
 	 * <li>:url (optional, String) - public URL for server. If provided, peer will set its public on-chain address based on this, and the bind-address to 0.0.0.0.
 	 * <li>:auto-manage (optional Boolean) - set to true for peer to auto-manage own account. Defaults to true.
      * <li>:bind-address (optional String) - IP address of the ethernet device to bind too. For public peers set too 0.0.0.0. Default to 127.0.0.1.
+	 * <li>:state-history (optional, Long) - Number of recent Blocks for which States and Results are retained. Older history is pruned in chunks of 16 Blocks, except for periodic checkpoints. Default 10000.
+	 * <li>:snapshot (optional, String) - Path of a State snapshot file to bootstrap the Peer from, instead of executing all Blocks since genesis. Combine with :source to sync the latest Belief.
+	 * <li>:snapshot-hash (optional, String) - Expected hash of the :snapshot data, as hex. Recommended unless the snapshot file is trusted.
+	 * <li>:query-threads (optional, Long) - Number of threads used to execute client queries. Defaults to one less than the number of available processors.
+	 * <li>:query-juice (optional, Long) - Maximum juice for each client query. Default 1000000.
+	 * <li>:query-timeout (optional, Long) - Time limit for each client query in milliseconds, after which a :TIMEOUT error is returned. Default 5000.
+	 * <li>:flush-interval (optional, Long) - Interval in milliseconds for background flushing of an Etch store. Store flushes are grouped into one commit per interval. Default 0 (flush as soon as requested).
 	 * </ul>
 	 *
 	 * @param peerConfig Config map for the new Peer
@@ -64,8 +71,9 @@ public class API {
 		if (!(config.containsKey(Keywords.STATE)
 				||config.containsKey(Keywords.STORE)
 				||config.containsKey(Keywords.SOURCE)
+				||config.containsKey(Keywords.SNAPSHOT)
 				)) {
-			throw new IllegalArgumentException("Peer launch requires a genesis :state, remote :source or existing :store in config");
+			throw new IllegalArgumentException("Peer launch requires a genesis :state, remote :source, :snapshot or existing :store in config");
 		}
 
 		if (!config.containsKey(Keywords.KEYPAIR)) throw new IllegalArgumentException("Peer launch requires a "+Keywords.KEYPAIR+" in config");
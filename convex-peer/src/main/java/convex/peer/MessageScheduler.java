@@ -0,0 +1,270 @@
+package convex.peer;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import convex.net.Connection;
+import convex.net.MessageType;
+import convex.net.message.Message;
+import convex.net.message.MessageRemote;
+
+/**
+ * Scheduler for messages received by a Peer Server, replacing a single shared receive queue.
+ *
+ * Each origin (remote Connection, or the Server itself for local messages) has its own bounded
+ * queues, so that a single busy client cannot fill the Server's capacity for received messages.
+ * Messages are placed in one of two lanes:
+ * <ul>
+ * <li>The peer lane, for consensus traffic (Beliefs, data etc.) from any Connection, and other
+ * messages from trusted peer Connections</li>
+ * <li>The client lane, for everything else, including all queries and transactions</li>
+ * </ul>
+ *
+ * The receiver drains lanes by weighted round robin, taking up to PEER_WEIGHT messages from the
+ * peer lane for each message from the client lane. Within a lane, origins take turns one message
+ * at a time. Messages from a single origin in the same lane are always delivered in order.
+ *
+ * Peer lane messages may overtake earlier client lane messages from the same origin, but never the
+ * reverse: when a client lane message is due, any earlier peer lane messages from its origin are
+ * delivered first. So DATA sent ahead of a dependent TRANSACT or QUERY is always processed first.
+ *
+ * When an origin has CONNECTION_QUEUE_SIZE messages queued, reading from its Connection is paused
+ * (see {@link Connection#setReceivePaused(boolean)}) until its queue drains to half that size. This
+ * applies back-pressure to the sender without holding up other Connections. Producers block only
+ * if an origin reaches twice CONNECTION_QUEUE_SIZE, e.g. messages already read before the pause took
+ * effect, or local messages which cannot be paused.
+ */
+public class MessageScheduler {
+
+	/**
+	 * Number of queued messages from a single origin at which reading from its Connection is paused
+	 */
+	public static final int CONNECTION_QUEUE_SIZE = 1000;
+
+	/**
+	 * Number of peer lane messages delivered for each client lane message, when both are waiting
+	 */
+	public static final int PEER_WEIGHT = 8;
+
+	private static final int PEER_LANE = 0;
+	private static final int CLIENT_LANE = 1;
+
+	private final int softLimit;
+	private final int hardLimit;
+	private final int resumeLimit;
+
+	private final HashMap<Object, Origin> origins = new HashMap<>();
+
+	/**
+	 * Queues with messages waiting, for each lane, in round robin order
+	 */
+	@SuppressWarnings("unchecked")
+	private final ArrayDeque<Queue>[] ready = new ArrayDeque[] { new ArrayDeque<Queue>(), new ArrayDeque<Queue>() };
+
+	private int peerCredit = PEER_WEIGHT;
+
+	private int count = 0;
+
+	/**
+	 * Creates a MessageScheduler with the default per-origin queue size
+	 */
+	public MessageScheduler() {
+		this(CONNECTION_QUEUE_SIZE);
+	}
+
+	/**
+	 * Creates a MessageScheduler
+	 * @param queueSize Number of queued messages from a single origin at which its Connection is paused
+	 */
+	public MessageScheduler(int queueSize) {
+		this.softLimit = queueSize;
+		this.hardLimit = queueSize * 2;
+		this.resumeLimit = queueSize / 2;
+	}
+
+	/**
+	 * Adds a message to the scheduler. Blocks only if the origin of the message is far over its limit.
+	 * @param m Message to add
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public synchronized void put(Message m) throws InterruptedException {
+		Origin o = getOrigin(m);
+		while (o.depth >= hardLimit) {
+			wait();
+			o = getOrigin(m); // origin may have been removed while waiting
+		}
+		add(o, m);
+	}
+
+	/**
+	 * Adds a message to the scheduler if the origin of the message has capacity. Never blocks.
+	 * @param m Message to add
+	 * @return true if added, false otherwise
+	 */
+	public synchronized boolean offer(Message m) {
+		Origin o = getOrigin(m);
+		if (o.depth >= hardLimit) return false;
+		add(o, m);
+		return true;
+	}
+
+	/**
+	 * Takes the next message, waiting if necessary
+	 * @param timeout Maximum time to wait
+	 * @param unit Unit of timeout
+	 * @return Next message, or null if timed out
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public synchronized Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (count == 0) {
+			long wait = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (wait <= 0) return null;
+			wait(wait);
+		}
+		return take();
+	}
+
+	/**
+	 * Gets the total number of queued messages
+	 * @return Number of messages
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * Gets the number of queued messages for a Connection
+	 * @param conn Connection
+	 * @return Number of messages
+	 */
+	public synchronized int size(Connection conn) {
+		Origin o = origins.get(conn);
+		return (o == null) ? 0 : o.depth;
+	}
+
+	private Origin getOrigin(Message m) {
+		Connection conn = null;
+		if (m instanceof MessageRemote) conn = ((MessageRemote) m).getConnection();
+		Object key = (conn == null) ? this : conn;
+		Origin o = origins.get(key);
+		if (o == null) {
+			o = new Origin(key, conn);
+			origins.put(key, o);
+		}
+		return o;
+	}
+
+	private void add(Origin o, Message m) {
+		int lane = getLane(o.conn, m.getType());
+		Queue q = o.queues[lane];
+		if (q == null) {
+			q = new Queue(o);
+			o.queues[lane] = q;
+		}
+		if (q.messages.isEmpty()) ready[lane].add(q);
+		q.messages.add(m);
+		q.seqs.add(o.seq++);
+		o.depth++;
+		count++;
+		if ((o.depth >= softLimit) && (o.conn != null) && !o.paused) {
+			o.paused = true;
+			o.conn.setReceivePaused(true);
+		}
+		notifyAll();
+	}
+
+	private Message take() {
+		boolean peerWaiting = !ready[PEER_LANE].isEmpty();
+		boolean clientWaiting = !ready[CLIENT_LANE].isEmpty();
+		int lane;
+		if (peerWaiting && (!clientWaiting || (peerCredit > 0))) {
+			lane = PEER_LANE;
+			peerCredit--;
+		} else {
+			lane = CLIENT_LANE;
+			peerCredit = PEER_WEIGHT;
+		}
+
+		Queue q = ready[lane].poll();
+		Queue pq = q.origin.queues[PEER_LANE];
+		Message m;
+		if ((lane == CLIENT_LANE) && (pq != null) && !pq.messages.isEmpty() && (pq.seqs.peek() < q.seqs.peek())) {
+			// Deliver an earlier peer lane message from the same origin first. Client queue keeps its turn.
+			ready[CLIENT_LANE].addFirst(q);
+			q = pq;
+			m = q.poll();
+			if (q.messages.isEmpty()) ready[PEER_LANE].remove(q);
+		} else {
+			m = q.poll();
+			if (!q.messages.isEmpty()) ready[lane].add(q); // back of the line for this lane
+		}
+
+		Origin o = q.origin;
+		o.depth--;
+		count--;
+		if (o.paused && (o.depth <= resumeLimit)) {
+			o.paused = false;
+			o.conn.setReceivePaused(false);
+		}
+		if (o.depth == 0) origins.remove(o.key); // don't retain closed Connections
+		notifyAll();
+		return m;
+	}
+
+	/**
+	 * Gets the lane for a message. Consensus traffic goes in the peer lane from any Connection, since
+	 * inbound peer Connections are not trusted. Per-origin bounds still apply to these.
+	 */
+	static int getLane(Connection conn, MessageType type) {
+		switch (type) {
+			case BELIEF:
+			case DATA:
+			case DATA_BATCH:
+			case MISSING_DATA:
+				return PEER_LANE;
+			case QUERY:
+			case TRANSACT:
+				return CLIENT_LANE;
+			default:
+				return ((conn != null) && conn.isTrusted()) ? PEER_LANE : CLIENT_LANE;
+		}
+	}
+
+	/**
+	 * Source of messages, with a queue for each lane
+	 */
+	private static final class Origin {
+		final Object key;
+		final Connection conn;
+		final Queue[] queues = new Queue[2];
+		int depth = 0;
+		boolean paused = false;
+
+		/**
+		 * Sequence number for the next message from this origin, for ordering across lanes
+		 */
+		long seq = 0;
+
+		Origin(Object key, Connection conn) {
+			this.key = key;
+			this.conn = conn;
+		}
+	}
+
+	private static final class Queue {
+		final Origin origin;
+		final ArrayDeque<Message> messages = new ArrayDeque<>();
+		final ArrayDeque<Long> seqs = new ArrayDeque<>();
+
+		Queue(Origin origin) {
+			this.origin = origin;
+		}
+
+		Message poll() {
+			seqs.poll();
+			return messages.poll();
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package convex.peer;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.ErrorCodes;
+import convex.core.Peer;
+import convex.core.Result;
+import convex.core.data.ACell;
+import convex.core.data.Address;
+import convex.core.data.Strings;
+import convex.core.data.prim.CVMLong;
+import convex.core.lang.Context;
+import convex.core.store.AStore;
+import convex.core.store.Stores;
+
+/**
+ * Execution stage for queries received by a Peer Server.
+ *
+ * Queries are executed on a bounded pool of worker threads, so that an expensive query does not
+ * delay processing of transactions and Beliefs. Each query runs against the consensus State of
+ * the Peer at the time of submission, which is immutable.
+ *
+ * If all workers are busy and the queue is full, queries are rejected immediately with a LOAD
+ * error, which provides back-pressure to clients.
+ *
+ * Each query is limited by juice and by time. A query that exceeds the time limit produces a
+ * TIMEOUT error. The CVM cannot be interrupted, so the juice limit bounds the work that a worker
+ * still performs for a query after it has timed out.
+ */
+public class QueryExecutor implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(QueryExecutor.class.getName());
+
+	/**
+	 * Time in milliseconds to wait for running queries to complete when closing
+	 */
+	private static final long CLOSE_TIMEOUT = 100;
+
+	private final ThreadPoolExecutor pool;
+
+	private final ScheduledExecutorService timer;
+
+	private final long juiceLimit;
+
+	private final long timeLimit;
+
+	/**
+	 * Creates a QueryExecutor
+	 * @param store Store to use for worker threads
+	 * @param threads Number of worker threads
+	 * @param queueSize Maximum number of queries waiting for a worker thread
+	 * @param juiceLimit Maximum juice for each query
+	 * @param timeLimit Maximum time for each query in milliseconds, including time spent queued
+	 * @param name Name prefix for worker threads
+	 */
+	public QueryExecutor(AStore store, int threads, int queueSize, long juiceLimit, long timeLimit, String name) {
+		AtomicInteger count = new AtomicInteger(0);
+		ThreadFactory factory = r -> {
+			Thread t = new Thread(() -> {
+				Stores.setCurrent(store); // ensure workers use the same store as the Server
+				r.run();
+			}, name + " " + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+		this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(queueSize), factory, new ThreadPoolExecutor.AbortPolicy());
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, name + " timer");
+			t.setDaemon(true);
+			return t;
+		});
+		timer.setRemoveOnCancelPolicy(true); // don't retain timeouts for completed queries
+		this.timer = timer;
+		this.juiceLimit = juiceLimit;
+		this.timeLimit = timeLimit;
+	}
+
+	/**
+	 * Submits a query for execution. The handler is called exactly once with the Result, which
+	 * may be an error if the query is rejected or times out.
+	 *
+	 * The handler may run on a worker thread, the timer thread or the calling thread.
+	 *
+	 * @param peer Peer against whose consensus State the query is executed
+	 * @param id ID for the Result
+	 * @param form Form to execute
+	 * @param address Address for query execution, or null for the default
+	 * @param handler Handler to receive the query Result
+	 * @return true if query was accepted, false if rejected due to load
+	 */
+	public boolean submit(Peer peer, CVMLong id, ACell form, Address address, Consumer<Result> handler) {
+		Query q = new Query(peer, id, form, address, handler);
+		try {
+			pool.execute(q);
+		} catch (RejectedExecutionException e) {
+			q.deliver(Result.create(id, Strings.create("Peer overloaded, query rejected"), ErrorCodes.LOAD));
+			return false;
+		}
+		q.timeout = timer.schedule(q::expire, timeLimit, TimeUnit.MILLISECONDS);
+		if (q.done.get()) q.timeout.cancel(false); // completed before timeout was scheduled
+		return true;
+	}
+
+	/**
+	 * A submitted query. Exactly one Result is delivered, either by a worker or on timeout.
+	 */
+	private final class Query implements Runnable {
+		final Peer peer;
+		final CVMLong id;
+		final ACell form;
+		final Address address;
+		final Consumer<Result> handler;
+		final AtomicBoolean done = new AtomicBoolean(false);
+		volatile ScheduledFuture<?> timeout;
+
+		Query(Peer peer, CVMLong id, ACell form, Address address, Consumer<Result> handler) {
+			this.peer = peer;
+			this.id = id;
+			this.form = form;
+			this.address = address;
+			this.handler = handler;
+		}
+
+		@Override
+		public void run() {
+			if (done.get()) return; // already timed out while queued
+			Result r;
+			try {
+				Context<ACell> ctx = peer.executeQuery(form, address, juiceLimit);
+				r = Result.fromContext(id, ctx);
+			} catch (Throwable t) {
+				log.warn("Query Error: {}", t);
+				r = Result.create(id, Strings.create("Query failed: " + t.getMessage()), ErrorCodes.UNEXPECTED);
+			}
+			complete(r);
+		}
+
+		/**
+		 * Delivers a Result and cancels the timeout
+		 */
+		void complete(Result r) {
+			if (deliver(r)) {
+				ScheduledFuture<?> t = timeout;
+				if (t != null) t.cancel(false);
+			}
+		}
+
+		void expire() {
+			if (deliver(Result.create(id, Strings.create("Query time limit exceeded"), ErrorCodes.TIMEOUT))) {
+				// Don't interrupt a running worker, since interrupts can close store file channels.
+				// The juice limit bounds the remaining work.
+				pool.remove(this);
+			}
+		}
+
+		/**
+		 * Delivers a Result to the handler, unless a Result has already been delivered
+		 * @return true if delivered
+		 */
+		boolean deliver(Result r) {
+			if (!done.compareAndSet(false, true)) return false;
+			try {
+				handler.accept(r);
+			} catch (Throwable t) {
+				log.warn("Exception handling query result: {}", t);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Gets the number of queries currently waiting for a worker thread
+	 * @return Number of queued queries
+	 */
+	public int getQueueSize() {
+		return pool.getQueue().size();
+	}
+
+	/**
+	 * Closes this QueryExecutor. Queued queries receive a LOAD error. Running queries are not
+	 * interrupted, since interrupts can close store file channels, but are given a short time to complete.
+	 */
+	@Override
+	public void close() {
+		pool.shutdown();
+		ArrayList<Runnable> queued = new ArrayList<>();
+		pool.getQueue().drainTo(queued);
+		for (Runnable r : queued) {
+			Query q = (Query) r;
+			q.complete(Result.create(q.id, Strings.create("Peer closed, query rejected"), ErrorCodes.LOAD));
+		}
+		try {
+			if (!pool.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				log.debug("Queries still running after {}ms on close", CLOSE_TIMEOUT);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		timer.shutdownNow();
+	}
+}
@@ -2,15 +2,22 @@ package convex.peer;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
@@ -47,18 +54,21 @@ import convex.core.exceptions.BadSignatureException;
 import convex.core.exceptions.InvalidDataException;
 import convex.core.exceptions.MissingDataException;
 import convex.core.init.Init;
-import convex.core.lang.Context;
 import convex.core.lang.RT;
 import convex.core.lang.Reader;
 import convex.core.store.AStore;
+import convex.core.store.Snapshot;
 import convex.core.store.Stores;
 import convex.core.transactions.ATransaction;
 import convex.core.transactions.Invoke;
 import convex.core.util.Shutdown;
 import convex.core.util.Utils;
+import convex.net.Connection;
 import convex.net.MessageType;
 import convex.net.NIOServer;
 import convex.net.message.Message;
+import convex.net.message.MessageRemote;
+import etch.EtchStore;
 
 
 /**
@@ -67,6 +77,9 @@ import convex.net.message.Message;
  * Server creates the following threads:
  * - A ReceiverThread that processes message from the Server's receive Queue
  * - An UpdateThread that handles Belief updates and transaction processing
+ * - An ExecutionThread that applies Blocks as they are confirmed by consensus
+ * - A pool of verifier threads that check signatures of incoming events
+ * - A pool of query threads that execute client queries
  * - A ConnectionManager thread, via the ConnectionManager
  *
  * "Programming is a science dressed up as art, because most of us don't
@@ -83,38 +96,67 @@ import convex.net.message.Message;
 public class Server implements Closeable {
 	public static final int DEFAULT_PORT = 18888;
 
-	private static final int RECEIVE_QUEUE_SIZE = 10000;
-
 	private static final int EVENT_QUEUE_SIZE = 1000;
 
+	// Maximum number of signature checks waiting for a verifier thread
+	private static final int VERIFY_QUEUE_SIZE = 1000;
+
+	// Maximum number of queries waiting for a query thread
+	private static final int QUERY_QUEUE_SIZE = 1000;
+
+	// Maximum time to wait for persisted peer data to be flushed when closing, in milliseconds
+	private static final long PERSIST_FLUSH_TIMEOUT = 10000;
+
 	// Maximum Pause for each iteration of Server update loop.
 	private static final long SERVER_UPDATE_PAUSE = 5L;
 
+	// Maximum Pause for execution loop while waiting for newly confirmed Blocks, in milliseconds.
+	private static final long EXECUTION_PAUSE = 10L;
+
 	static final Logger log = LoggerFactory.getLogger(Server.class.getName());
 
 	// private static final Level LEVEL_MESSAGE = Level.FINER;
 
 	/**
-	 * Queue for received messages to be processed by this Peer Server
+	 * Scheduler for received messages to be processed by this Peer Server, with a queue per connection
 	 */
-	private BlockingQueue<Message> receiveQueue = new ArrayBlockingQueue<Message>(RECEIVE_QUEUE_SIZE);
+	private final MessageScheduler receiveQueue = new MessageScheduler();
 
 	/**
 	 * Queue for received events (Beliefs, Transactions) to be processed
 	 */
 	private BlockingQueue<SignedData<?>> eventQueue = new ArrayBlockingQueue<>(EVENT_QUEUE_SIZE);
 
+	/**
+	 * Results of Blocks executed by the execution thread, in Block order, waiting to be applied to the Peer
+	 */
+	private BlockingQueue<BlockResult> executedBlocks = new LinkedBlockingQueue<>();
+
+	/**
+	 * Parallel signature verification stage for events before they reach the event queue
+	 */
+	private SignatureVerifier verifier = null;
 
 	/**
-	 * Message consumer that simply enqueues received messages received by this Server
+	 * Execution stage for client queries, separate from the receiver thread
+	 */
+	private QueryExecutor queryExecutor = null;
+
+
+	/**
+	 * Message consumer that simply enqueues received messages received by this Server.
+	 *
+	 * Runs on the shared decode pool, so must never block. Reading from a Connection is paused
+	 * well before its queue is full, so messages are only dropped if already read before the pause.
 	 */
 	Consumer<Message> peerReceiveAction = new Consumer<Message>() {
 		@Override
 		public void accept(Message msg) {
-			try {
-				queueMessage(msg);
-			} catch (InterruptedException e) {
-				log.warn("Interrupt on peer receive queue!");
+			if (receiveQueue.offer(msg)) return;
+			log.warn("Receive queue full, dropping {} message from {}", msg.getType(), msg.getOriginString());
+			MessageType type = msg.getType();
+			if ((type == MessageType.QUERY) || (type == MessageType.TRANSACT)) {
+				msg.reportResult(Result.create(msg.getID(), Strings.create("Peer overloaded, message dropped"), ErrorCodes.LOAD));
 			}
 		}
 	};
@@ -139,11 +181,12 @@ public class Server implements Closeable {
 	private NIOServer nio;
 	private Thread receiverThread = null;
 	private Thread updateThread = null;
+	private Thread executionThread = null;
 
 	/**
 	 * The Peer instance current state for this server. Will be updated based on peer events.
 	 */
-	private Peer peer;
+	private volatile Peer peer;
 
 	/**
 	 * The Peer Controller Address
@@ -202,7 +245,7 @@ public class Server implements Closeable {
 
 			establishController();
 
-			nio = NIOServer.create(this, receiveQueue);
+			nio = NIOServer.create(this);
 
 		} finally {
 			Stores.setCurrent(savedStore);
@@ -241,6 +284,13 @@ public class Server implements Closeable {
 				log.warn("Generated keypair with public key: "+keyPair.getAccountKey());
 			}
 
+			// Snapshot of consensus State to start from, if any
+			AVector<ACell> snapshot=null;
+			Object snapshotFile=getConfig().get(Keywords.SNAPSHOT);
+			if (Utils.bool(snapshotFile)) {
+				snapshot=importSnapshot(snapshotFile);
+			}
+
 			Object source=getConfig().get(Keywords.SOURCE);
 			if (Utils.bool(source)) {
 				// Peer sync case
@@ -257,9 +307,17 @@ public class Server implements Closeable {
 				}
 				Hash beliefHash=RT.ensureHash(status.get(0));
 				Hash networkID=RT.ensureHash(status.get(2));
-				log.info("Attempting to sync genesis state with network: "+networkID);
-				State genF=(State) convex.acquire(networkID).get(timeout,TimeUnit.MILLISECONDS);
-				log.info("Retreived Genesis State: "+networkID);
+				State genF=null;
+				if (snapshot==null) {
+					log.info("Attempting to sync genesis state with network: "+networkID);
+					genF=(State) convex.acquire(networkID).get(timeout,TimeUnit.MILLISECONDS);
+					log.info("Retreived Genesis State: "+networkID);
+				} else {
+					Hash snapshotNetworkID=snapshot.get(3).getHash();
+					if (!networkID.equals(snapshotNetworkID)) {
+						throw new IllegalArgumentException("Snapshot is for network "+snapshotNetworkID+" but remote Peer is on network "+networkID);
+					}
+				}
 				
 				// Belief acquisition
 				log.info("Attempting to obtain peer Belief: "+beliefHash);
@@ -275,7 +333,12 @@ public class Server implements Closeable {
 				}
 				log.info("Retreived Peer Signed Belief: "+beliefHash+ " with memory size: "+belF.getMemorySize());
 
-				Peer peer=Peer.create(keyPair, genF, belF.getValue());
+				Peer peer;
+				if (snapshot==null) {
+					peer=Peer.create(keyPair, genF, belF.getValue());
+				} else {
+					peer=Peer.fromSnapshot(keyPair, snapshot).mergeBeliefs(belF.getValue());
+				}
 				return peer;
 
 			} else if (Utils.bool(getConfig().get(Keywords.RESTORE))) {
@@ -291,6 +354,11 @@ public class Server implements Closeable {
 					log.error("Can't restore Peer from store: {}",e);
 				}
 			}
+			if (snapshot!=null) {
+				Peer peer=Peer.fromSnapshot(keyPair, snapshot);
+				log.info("Created Peer from snapshot at executed point: "+peer.getExecutedPoint());
+				return peer;
+			}
 			State genesisState = (State) config.get(Keywords.STATE);
 			if (genesisState!=null) {
 				log.info("Defaulting to standard Peer startup with genesis state: "+genesisState.getHash());
@@ -300,11 +368,36 @@ public class Server implements Closeable {
 				log.info("Created new genesis state: "+genesisState.getHash()+ " with initial peer: "+peerKey);
 			}
 			return Peer.createGenesisPeer(keyPair,genesisState);
-		} catch (ExecutionException|InterruptedException e) {
+		} catch (ExecutionException|InterruptedException|BadSignatureException|InvalidDataException e) {
 			throw Utils.sneakyThrow(e);
 		}
 	}
 
+	/**
+	 * Imports a snapshot file into this Server's store, checking the :snapshot-hash in config if specified
+	 * @param file Snapshot file path
+	 * @return Snapshot data vector
+	 * @throws IOException If the snapshot could not be read or is invalid
+	 */
+	@SuppressWarnings("unchecked")
+	private AVector<ACell> importSnapshot(Object file) throws IOException {
+		Object hashValue=getConfig().get(Keywords.SNAPSHOT_HASH);
+		Hash expected=null;
+		if (hashValue!=null) {
+			expected=Hash.parse(hashValue);
+			if (expected==null) throw new IllegalArgumentException("Invalid snapshot hash: "+hashValue);
+		}
+		Path path=Path.of(file.toString());
+		log.info("Importing snapshot: "+path);
+		try (InputStream in=Files.newInputStream(path)) {
+			Ref<AVector<ACell>> ref=Snapshot.read(in, store, expected);
+			log.info("Imported snapshot with hash: "+ref.getHash());
+			return ref.getValue();
+		} catch (BadFormatException e) {
+			throw new IOException("Invalid snapshot: "+path,e);
+		}
+	}
+
 	private long establishTimeout() {
 		Object maybeTimeout=getConfig().get(Keywords.TIMEOUT);
 		if (maybeTimeout==null) return Constants.PEER_SYNC_TIMEOUT;
@@ -383,6 +476,20 @@ public class Server implements Closeable {
 			// Start connection manager loop
 			manager.start();
 
+			// Start signature verification stage
+			int verifyThreads=Math.max(1, Runtime.getRuntime().availableProcessors()-1);
+			verifier = new SignatureVerifier(store, verifyThreads, VERIFY_QUEUE_SIZE, "Verifier on port: " + port);
+
+			// Group store flushes if configured
+			Object flushInterval=config.get(Keywords.FLUSH_INTERVAL);
+			if ((flushInterval instanceof Number)&&(store instanceof EtchStore)) {
+				((EtchStore)store).setFlushInterval(((Number)flushInterval).longValue());
+			}
+
+			// Start query execution stage
+			queryExecutor = new QueryExecutor(store, getQueryThreads(), QUERY_QUEUE_SIZE, getQueryJuice(),
+					getQueryTimeout(), "Query on port: " + port);
+
 			receiverThread = new Thread(receiverLoop, "Receive Loop on port: " + port);
 			receiverThread.setDaemon(true);
 			receiverThread.start();
@@ -392,6 +499,11 @@ public class Server implements Closeable {
 			updateThread.setDaemon(true);
 			updateThread.start();
 
+			// Start Block execution thread
+			executionThread = new Thread(executionLoop, "Execution Loop on port: " + port);
+			executionThread.setDaemon(true);
+			executionThread.start();
+
 
 			// Close server on shutdown, should be before Etch stores in priority
 			Shutdown.addHook(Shutdown.SERVER, new Runnable() {
@@ -456,6 +568,9 @@ public class Server implements Closeable {
 			case DATA:
 				processData(m);
 				break;
+			case DATA_BATCH:
+				processDataBatch(m);
+				break;
 			case MISSING_DATA:
 				processMissingData(m);
 				break;
@@ -535,7 +650,21 @@ public class Server implements Closeable {
 		// If we already have the transaction persisted, will get signature status
 		ACell.createPersisted(sd);
 
-		if (!sd.checkSignature()) {
+		// Verify signature in parallel, handling results in order for each connection
+		verifier.submit(getOrigin(m), sd, ok -> handleVerifiedTransaction(m, sd, ok));
+	}
+
+	/**
+	 * Handles a received transaction after signature verification.
+	 * 
+	 * May run on a verifier thread.
+	 * 
+	 * @param m Message containing the transaction
+	 * @param sd Signed transaction
+	 * @param validSignature True if the signature was verified successfully
+	 */
+	private void handleVerifiedTransaction(Message m, SignedData<ATransaction> sd, boolean validSignature) {
+		if (!validSignature) {
 			// terminate the connection, dishonest client?
 			try {
 				// TODO: throttle?
@@ -562,6 +691,21 @@ public class Server implements Closeable {
 		}
 	}
 
+	/**
+	 * Gets the origin of a message for the purpose of ordering events. Messages from
+	 * the same Connection share an origin. Local messages share the Server as origin.
+	 * 
+	 * @param m Message
+	 * @return Origin object, never null
+	 */
+	private Object getOrigin(Message m) {
+		if (m instanceof MessageRemote) {
+			Connection pc=((MessageRemote)m).getConnection();
+			if (pc!=null) return pc;
+		}
+		return this;
+	}
+
 	/**
 	 * Called by a remote peer to close connections to the remote peer.
 	 *
@@ -623,7 +767,9 @@ public class Server implements Closeable {
 	 * @param m
 	 */
 	private void registerInterest(Hash signedTransactionHash, Message m) {
-		interests.put(signedTransactionHash, m);
+		synchronized (interests) {
+			interests.put(signedTransactionHash, m);
+		}
 	}
 
 	/**
@@ -657,17 +803,48 @@ public class Server implements Closeable {
 
 		broadcastBelief(belief);
 
-		// Report transaction results
+		// Hand newly confirmed blocks to the execution thread. Results are reported when applied.
 		long newConsensusPoint = peer.getConsensusPoint();
 		if (newConsensusPoint > oldConsensusPoint) {
 			log.debug("Consensus point update from {} to {}" ,oldConsensusPoint , newConsensusPoint);
-			for (long i = oldConsensusPoint; i < newConsensusPoint; i++) {
-				SignedData<Block> block = peer.getPeerOrder().getBlock(i);
-				BlockResult br = peer.getBlockResult(i);
-				reportTransactions(block.getValue(), br);
-			}
+			LockSupport.unpark(executionThread);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Applies any Blocks executed by the execution thread to the Peer, and reports transaction results.
+	 *
+	 * @return true if the executed point of the Peer advanced, false otherwise
+	 */
+	protected boolean maybeApplyExecutedBlocks() {
+		BlockResult br = executedBlocks.poll();
+		if (br == null) return false;
+		Peer p = peer;
+		long oldExecutedPoint = p.getExecutedPoint();
+		ArrayList<BlockResult> results = new ArrayList<>();
+		do {
+			p = p.applyBlockResult(br);
+			results.add(br);
+		} while ((br = executedBlocks.poll()) != null);
+
+		// Discard old states and results beyond the configured history
+		p = p.pruneHistory(getStateHistory());
+
+		// Persist newly executed states now, since there may be no belief broadcast until new blocks arrive.
+		// Only the new states need a write here: the states vector is persisted with the Peer data.
+		for (BlockResult r: results) {
+			ACell.createPersisted(r.getState());
 		}
+		peer = p;
+		log.debug("Executed point update from {} to {}", oldExecutedPoint, p.getExecutedPoint());
 
+		// Report results only once states are available
+		for (int j = 0; j < results.size(); j++) {
+			SignedData<Block> block = p.getPeerOrder().getBlock(oldExecutedPoint + j);
+			reportTransactions(block.getValue(), results.get(j));
+		}
 		return true;
 	}
 
@@ -724,11 +901,13 @@ public class Server implements Closeable {
 		if ((lastBlockPublishedTime+Constants.MIN_BLOCK_TIME)>timestamp) return false;
 
 		Block block=null;
-		int n = newTransactions.size();
-		if (n == 0) return false;
-		// TODO: smaller block if too many transactions?
-		block = Block.create(timestamp, (List<SignedData<ATransaction>>) newTransactions);
-		newTransactions.clear();
+		synchronized (newTransactions) {
+			int n = newTransactions.size();
+			if (n == 0) return false;
+			// TODO: smaller block if too many transactions?
+			block = Block.create(timestamp, (List<SignedData<ATransaction>>) newTransactions);
+			newTransactions.clear();
+		}
 
 		ACell.createPersisted(block);
 
@@ -744,6 +923,46 @@ public class Server implements Closeable {
 
 	private static final long OWN_TRANSACTIONS_DELAY=300;
 
+	/**
+	 * Gets the number of recent Blocks for which this Server retains States and BlockResults
+	 * @return Number of Blocks of state history retained
+	 */
+	public long getStateHistory() {
+		Object history=config.get(Keywords.STATE_HISTORY);
+		if (history instanceof Number) return ((Number)history).longValue();
+		return Constants.DEFAULT_STATE_HISTORY;
+	}
+
+	/**
+	 * Gets the number of threads used to execute client queries
+	 * @return Number of query threads
+	 */
+	public int getQueryThreads() {
+		Object threads=config.get(Keywords.QUERY_THREADS);
+		if (threads instanceof Number) return Math.max(1, ((Number)threads).intValue());
+		return Math.max(1, Runtime.getRuntime().availableProcessors()-1);
+	}
+
+	/**
+	 * Gets the maximum juice for a client query
+	 * @return Query juice limit
+	 */
+	public long getQueryJuice() {
+		Object juice=config.get(Keywords.QUERY_JUICE);
+		if (juice instanceof Number) return ((Number)juice).longValue();
+		return Constants.DEFAULT_QUERY_JUICE;
+	}
+
+	/**
+	 * Gets the time limit for a client query, in milliseconds
+	 * @return Query time limit
+	 */
+	public long getQueryTimeout() {
+		Object timeout=config.get(Keywords.QUERY_TIMEOUT);
+		if (timeout instanceof Number) return ((Number)timeout).longValue();
+		return Constants.DEFAULT_QUERY_TIMEOUT;
+	}
+
 	/**
 	 * Gets the Peer controller Address
 	 * @return Peer controller Address
@@ -770,7 +989,9 @@ public class Server implements Closeable {
 	}
 	
 	/**
-	 * Queues a message for processing by this Server. May block briefly.
+	 * Queues a message for processing by this Server. May block briefly if the
+	 * origin of the message has too many messages queued, so should not be called
+	 * from a shared pool thread.
 	 * @param m Message to queue
 	 */
 	public void queueMessage(Message m) throws InterruptedException {
@@ -816,7 +1037,10 @@ public class Server implements Closeable {
 			}
 			ACell message = Reader.read(code);
 			ATransaction transaction = Invoke.create(address, as.getSequence()+1, message);
-			newTransactions.add(getKeyPair().signData(transaction));
+			SignedData<ATransaction> signed = getKeyPair().signData(transaction);
+			synchronized (newTransactions) {
+				newTransactions.add(signed);
+			}
 		}
 	}
 
@@ -840,7 +1064,7 @@ public class Server implements Closeable {
 				}
 				newBeliefs.clear();
 			}
-			Peer newPeer = peer.mergeBeliefs(beliefs);
+			Peer newPeer = peer.mergeBeliefsDeferred(beliefs);
 
 			// Check for substantive change (i.e. Orders updated, can ignore timestamp)
 			if (newPeer.getBelief().getOrders().equals(peer.getBelief().getOrders())) return false;
@@ -875,7 +1099,7 @@ public class Server implements Closeable {
 			Peer peer=this.getPeer();
 			Hash beliefHash=peer.getSignedBelief().getHash();
 			Hash stateHash=peer.getStates().getHash();
-			Hash initialStateHash=peer.getStates().get(0).getHash();
+			Hash initialStateHash=peer.getNetworkID();
 			AccountKey peerKey=getPeerKey();
 			Hash consensusHash=peer.getConsensusState().getHash();
 
@@ -906,15 +1130,15 @@ public class Server implements Closeable {
 			Address address = RT.ensureAddress(v.get(2));
 
 			log.debug( "Processing query: {} with address: {}" , form, address);
-			// log.log(LEVEL_MESSAGE, "Processing query: " + form + " with address: " +
-			// address);
-			Context<ACell> resultContext = peer.executeQuery(form, address);
-			
-			// Report result back to message sender
-			boolean resultReturned= m.reportResult(Result.fromContext(id, resultContext));
 
-			if (!resultReturned) {
-				log.warn("Failed to send query result back to client with ID: {}", id);
+			// Execute on the query stage, reporting the result back to the message sender
+			boolean accepted = queryExecutor.submit(peer, id, form, address, r -> {
+				if (!m.reportResult(r)) {
+					log.warn("Failed to send query result back to client with ID: {}", id);
+				}
+			});
+			if (!accepted) {
+				log.debug("Query rejected due to load with ID: {}", id);
 			}
 
 		} catch (Throwable t) {
@@ -938,6 +1162,26 @@ public class Server implements Closeable {
 		maybeProcessPartial(r.getHash());
 	}
 
+	/**
+	 * Process a batch of data cells. Stores all cells before checking for partial
+	 * messages, so that a re-queued message can use any cell in the batch.
+	 *
+	 * @param m
+	 */
+	private void processDataBatch(Message m) {
+		AVector<ACell> cells = m.getPayload();
+		long n = cells.count();
+		Hash[] hashes = new Hash[(int) n];
+		for (int i = 0; i < n; i++) {
+			Ref<?> r = Ref.get(cells.get(i)).persistShallow();
+			hashes[i] = r.getHash();
+		}
+		log.trace("Processed DATA_BATCH of {} cells", n);
+		for (Hash h : hashes) {
+			maybeProcessPartial(h);
+		}
+	}
+
 	/**
 	 * Process an incoming message that represents a Belief
 	 *
@@ -954,27 +1198,45 @@ public class Server implements Closeable {
 
 			@SuppressWarnings("unchecked")
 			SignedData<Belief> receivedBelief = (SignedData<Belief>) o;
-			receivedBelief.validateSignature();
-
-			// TODO: validate trusted connection?
-			// TODO: can drop Beliefs if under pressure?
-			
-			if (!(receivedBelief.getValue() instanceof Belief)) {
-				Result r=Result.create(m.getID(), Strings.BAD_FORMAT, ErrorCodes.FORMAT);
-				m.reportResult(r);
-				return;
-			}
 
-			eventQueue.put(receivedBelief);
+			// Verify signature in parallel, handling results in order for each connection
+			verifier.submit(getOrigin(m), receivedBelief, ok -> handleVerifiedBelief(m, receivedBelief, ok));
 		} catch (ClassCastException e) {
 			// bad message?
 			log.warn("Exception due to bad message from peer? {}" ,e);
-		} catch (BadSignatureException e) {
+		}
+	}
+
+	/**
+	 * Handles a received Belief after signature verification.
+	 * 
+	 * May run on a verifier thread.
+	 * 
+	 * @param m Message containing the Belief
+	 * @param receivedBelief Signed Belief
+	 * @param validSignature True if the signature was verified successfully
+	 */
+	private void handleVerifiedBelief(Message m, SignedData<Belief> receivedBelief, boolean validSignature) {
+		if (!validSignature) {
 			// we got sent a bad signature.
 			// TODO: Probably need to slash peer? but ignore for now
-			log.warn("Bad signed belief from peer: " + Utils.print(o));
+			log.warn("Bad signed belief from peer: " + Utils.print(receivedBelief));
+			return;
+		}
+
+		// TODO: validate trusted connection?
+		// TODO: can drop Beliefs if under pressure?
+		
+		if (!(receivedBelief.getValue() instanceof Belief)) {
+			Result r=Result.create(m.getID(), Strings.BAD_FORMAT, ErrorCodes.FORMAT);
+			m.reportResult(r);
+			return;
+		}
+
+		try {
+			eventQueue.put(receivedBelief);
 		} catch (InterruptedException e) {
-			throw Utils.sneakyThrow(e);
+			log.warn("Unexpected interruption adding belief to event queue!");
 		}
 	}
 
@@ -1019,7 +1281,8 @@ public class Server implements Closeable {
 				while (isRunning) {
 					// Try belief update
 					boolean beliefUpdated=maybeUpdateBelief();
-					if (beliefUpdated) {
+					boolean executed=maybeApplyExecutedBlocks();
+					if (beliefUpdated||executed) {
 						raiseServerChange("consensus");
 					}
 
@@ -1046,6 +1309,52 @@ public class Server implements Closeable {
 		}
 	};
 
+	/*
+	 * Runnable loop for executing Blocks confirmed by consensus, so that execution time
+	 * does not delay belief merges. Blocks before the consensus point are final, so they
+	 * can be executed from a snapshot of the Peer while merges continue.
+	 */
+	private final Runnable executionLoop = new Runnable() {
+		@Override
+		public void run() {
+			Stores.setCurrent(getStore()); // ensure the loop uses this Server's store
+			try {
+				Peer p = peer;
+				long next = p.getExecutedPoint();
+				State state = p.getConsensusState();
+				while (isRunning) {
+					p = peer;
+					if (next < p.getExecutedPoint()) {
+						// Peer has moved past this loop (e.g. Peer replaced), so resume from its executed point
+						next = p.getExecutedPoint();
+						state = p.getConsensusState();
+					}
+					if (next >= p.getConsensusPoint()) {
+						LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(EXECUTION_PAUSE));
+						if (Thread.interrupted()) break;
+						continue;
+					}
+					Block block = p.getPeerOrder().getBlock(next).getValue();
+					BlockResult br = state.applyBlock(block);
+					executedBlocks.put(br);
+					state = br.getState();
+					next++;
+				}
+			} catch (InterruptedException e) {
+				log.debug("Terminating Server execution due to interrupt");
+			} catch (Throwable e) {
+				// A Block can't be skipped without diverging from consensus, so the Server can't continue.
+				// Close from another thread, since close() interrupts and joins this one.
+				log.error("Unexpected exception in server execution loop, closing Server: {}", e);
+				if (isRunning) {
+					Thread closer = new Thread(Server.this::close, "Server close on port: " + getPort());
+					closer.setDaemon(true);
+					closer.start();
+				}
+			}
+		}
+	};
+
 	@SuppressWarnings("unchecked")
 	private void awaitEvents() throws InterruptedException {
 		SignedData<?> firstEvent=eventQueue.poll(SERVER_UPDATE_PAUSE, TimeUnit.MILLISECONDS);
@@ -1057,20 +1366,24 @@ public class Server implements Closeable {
 			ACell event=signedEvent.getValue();
 			if (event instanceof ATransaction) {
 				SignedData<ATransaction> receivedTrans=(SignedData<ATransaction>)signedEvent;
-				newTransactions.add(receivedTrans);
+				synchronized (newTransactions) {
+					newTransactions.add(receivedTrans);
+				}
 			} else if (event instanceof Belief) {
 				SignedData<Belief> receivedBelief=(SignedData<Belief>)signedEvent;
 				AccountKey addr = receivedBelief.getAccountKey();
-				SignedData<Belief> current = newBeliefs.get(addr);
-				// Make sure the Belief is the latest from a Peer
-				if ((current == null) || (current.getValue().getTimestamp() <= receivedBelief.getValue()
-						.getTimestamp())) {
-					// Add to map of new Beliefs received for each Peer
-					newBeliefs.put(addr, receivedBelief);
-
-					// Notify the update thread that there is something new to handle
-					log.debug("Valid belief received by peer at {}: {}"
-							,getHostAddress(),receivedBelief.getValue().getHash());
+				synchronized (newBeliefs) {
+					SignedData<Belief> current = newBeliefs.get(addr);
+					// Make sure the Belief is the latest from a Peer
+					if ((current == null) || (current.getValue().getTimestamp() <= receivedBelief.getValue()
+							.getTimestamp())) {
+						// Add to map of new Beliefs received for each Peer
+						newBeliefs.put(addr, receivedBelief);
+
+						// Notify the update thread that there is something new to handle
+						log.debug("Valid belief received by peer at {}: {}"
+								,getHostAddress(),receivedBelief.getValue().getHash());
+					}
 				}
 			} else {
 				log.debug("Unexpected type in event queue! {}",event.getType());
@@ -1085,15 +1398,16 @@ public class Server implements Closeable {
 			try {
 				SignedData<ATransaction> t = block.getTransactions().get(j);
 				Hash h = t.getHash();
-				Message m = interests.get(h);
+				Message m;
+				synchronized (interests) {
+					m = interests.remove(h);
+				}
 				if (m != null) {
 					ACell id = m.getID();
 					log.trace("Returning tranaction result ID {} to {}", id,m.getOriginString());
 					Result res = br.getResults().get(j);
 
 					m.reportResult(res);
-					
-					interests.remove(h);
 				}
 			} catch (Throwable e) {
 				log.warn("Exception while sending Result: ",e);
@@ -1116,32 +1430,120 @@ public class Server implements Closeable {
 	}
 
 	/**
-	 * Writes the Peer data to the configured store.
-	 * 
-	 * Note: Does not flush buffers to disk. 
+	 * Writes the Peer data to the configured store, and requests a background flush to disk.
 	 *
 	 * This will overwrite any previously persisted peer data.
+	 *
+	 * @return Future that completes when the Peer data is durable
 	 */
-	public void persistPeerData() {
+	public CompletableFuture<Void> persistPeerData() {
 		AStore tempStore = Stores.current();
 		try {
 			Stores.setCurrent(store);
 			ACell peerData = peer.toData();
 			store.setRootData(peerData);
 			log.info( "Stored peer data for Server with hash: {}", peerData.getHash().toHexString());
+			return store.flushAsync();
 		} catch (Throwable e) {
 			log.warn("Failed to persist peer state when closing server: {}" ,e.getMessage());
+			return CompletableFuture.failedFuture(e);
+		} finally {
+			Stores.setCurrent(tempStore);
+		}
+	}
+
+	/**
+	 * Writes a snapshot of this Server's Peer to an output stream, from which a new Peer can be
+	 * bootstrapped without executing all Blocks since genesis (see :snapshot config).
+	 *
+	 * @param out Output stream. Not closed by this method.
+	 * @return Hash of the snapshot data, for use as :snapshot-hash
+	 * @throws IOException If an IO error occurs
+	 */
+	public Hash exportSnapshot(OutputStream out) throws IOException {
+		AStore tempStore = Stores.current();
+		try {
+			Stores.setCurrent(store);
+			AVector<ACell> data=getPeer().getSnapshotData();
+			long n=Snapshot.write(data, out);
+			log.info("Exported snapshot with hash {} containing {} cells",data.getHash(),n);
+			return data.getHash();
 		} finally {
 			Stores.setCurrent(tempStore);
 		}
 	}
 
+	/**
+	 * Gets the roots to retain in garbage collection: the current Peer data, plus events, executed
+	 * Block results and partial messages held in memory awaiting processing. These may refer to cells
+	 * already persisted, which must still be in the store when they are persisted again.
+	 *
+	 * @return List of root cells
+	 */
+	private List<ACell> getGCRoots() {
+		ArrayList<ACell> roots=new ArrayList<>();
+		roots.add(getPeer().toData());
+		for (Object event: eventQueue.toArray()) {
+			roots.add((ACell)event);
+		}
+		for (Object br: executedBlocks.toArray()) {
+			roots.add((ACell)br);
+		}
+		synchronized (newTransactions) {
+			roots.addAll(newTransactions);
+		}
+		synchronized (newBeliefs) {
+			roots.addAll(newBeliefs.values());
+		}
+		synchronized (partialMessages) {
+			for (Message m: partialMessages.values()) {
+				roots.add(m.getPayload());
+			}
+		}
+		return roots;
+	}
+
+	/**
+	 * Runs garbage collection on the Server's store in a background thread. Retains all data
+	 * reachable from the store root data and the roots held in memory by this Server, including
+	 * the current Peer data. Only supported for Etch stores.
+	 *
+	 * @return Future that completes when garbage collection is done
+	 */
+	public CompletableFuture<Void> collectGarbage() {
+		CompletableFuture<Void> result=new CompletableFuture<>();
+		if (!(store instanceof EtchStore)) {
+			result.completeExceptionally(new UnsupportedOperationException("GC not supported for store: "+store));
+			return result;
+		}
+		EtchStore etchStore=(EtchStore)store;
+		Thread gcThread=new Thread(()->{
+			Stores.setCurrent(store);
+			try {
+				etchStore.gc(this::getGCRoots);
+				log.info("Completed GC for store: {}",etchStore);
+				result.complete(null);
+			} catch (Throwable e) {
+				log.warn("GC failed for store: {}",etchStore,e);
+				result.completeExceptionally(e);
+			}
+		}, "GC thread on port: " + getPort());
+		gcThread.setDaemon(true);
+		gcThread.start();
+		return result;
+	}
+
 	@Override
 	public void close() {
 		// persist peer state if necessary
 		if ((peer != null) && Utils.bool(getConfig().get(Keywords.PERSIST))) {
 			try {
-				persistPeerData();
+				persistPeerData().get(PERSIST_FLUSH_TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException t) {
+				log.warn("Timeout flushing peer data to store after {}ms", PERSIST_FLUSH_TIMEOUT);
+			} catch (InterruptedException t) {
+				Thread.currentThread().interrupt();
+				log.warn("Interrupted while flushing peer data to store");
 			} catch (Throwable t) {
 				log.warn("Exception persisting peer data: {}", t);
 			}
@@ -1163,6 +1565,14 @@ public class Server implements Closeable {
 				// Ignore
 			}
 		}
+		if (executionThread != null) {
+			executionThread.interrupt();
+			try {
+				executionThread.join(100);
+			} catch (InterruptedException e) {
+				// Ignore
+			}
+		}
 		if (receiverThread != null) {
 			receiverThread.interrupt();
 			try {
@@ -1171,6 +1581,12 @@ public class Server implements Closeable {
 				// Ignore
 			}
 		}
+		if (verifier != null) {
+			verifier.close();
+		}
+		if (queryExecutor != null) {
+			queryExecutor.close();
+		}
 		manager.close();
 		nio.close();
 		// Note we don't do store.close(); because we don't own the store.
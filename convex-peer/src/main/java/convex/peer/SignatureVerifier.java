@@ -0,0 +1,115 @@
+package convex.peer;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.data.SignedData;
+import convex.core.store.AStore;
+import convex.core.store.Stores;
+
+/**
+ * Verification stage for signed events (transactions, beliefs) received by a Peer Server.
+ *
+ * Signature checks are performed in parallel on a bounded pool of worker threads. If the pool
+ * is saturated, the submitting thread performs the check itself, which provides natural
+ * back-pressure to the receiver thread.
+ *
+ * Results are delivered in submission order for each origin (typically a Connection), so events
+ * from any single client or peer are observed in the same order as they were received.
+ */
+public class SignatureVerifier implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(SignatureVerifier.class.getName());
+
+	private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+	private final ThreadPoolExecutor pool;
+
+	/**
+	 * Last pending delivery for each origin. Entries are removed once delivery completes.
+	 */
+	private final ConcurrentHashMap<Object, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a SignatureVerifier
+	 * @param store Store to use for worker threads
+	 * @param threads Number of worker threads
+	 * @param queueSize Maximum number of checks waiting for a worker thread
+	 * @param name Name prefix for worker threads
+	 */
+	public SignatureVerifier(AStore store, int threads, int queueSize, String name) {
+		AtomicInteger count = new AtomicInteger(0);
+		ThreadFactory factory = r -> {
+			Thread t = new Thread(() -> {
+				Stores.setCurrent(store); // ensure workers use the same store as the Server
+				r.run();
+			}, name + " " + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+		this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(queueSize), factory, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	/**
+	 * Submits a signed value for verification. The handler is called with the result of the
+	 * signature check, after the handlers for all earlier submissions with the same origin.
+	 *
+	 * Handlers may run on a worker thread or on the calling thread.
+	 *
+	 * @param origin Origin of the signed value, used for ordering. Must not be null.
+	 * @param signed Signed value to verify
+	 * @param handler Handler to receive verification result (true if signature is valid)
+	 * @return Future that completes once the handler has been called
+	 */
+	public CompletableFuture<Void> submit(Object origin, SignedData<?> signed, Consumer<Boolean> handler) {
+		CompletableFuture<Boolean> check;
+		if (signed.isSignatureChecked()) {
+			// Cached result, no need to use a worker thread
+			check = CompletableFuture.completedFuture(signed.checkSignature());
+		} else {
+			check = CompletableFuture.supplyAsync(signed::checkSignature, pool);
+		}
+		CompletableFuture<Boolean> safeCheck = check.exceptionally(e -> false);
+
+		// Swap in this delivery as the new tail. The handler chain is attached outside the map,
+		// since it may run immediately and handlers may block.
+		CompletableFuture<Void> delivery = new CompletableFuture<>();
+		CompletableFuture<Void> prev = tails.put(origin, delivery);
+		CompletableFuture<Void> after = (prev == null) ? DONE : prev;
+		after.thenCombine(safeCheck, (v, ok) -> ok).thenAccept(ok -> {
+			try {
+				handler.accept(ok);
+			} catch (Throwable t) {
+				log.warn("Exception handling verified event: {}", t);
+			}
+		}).whenComplete((v, e) -> {
+			tails.remove(origin, delivery);
+			delivery.complete(null);
+		});
+		return delivery;
+	}
+
+	/**
+	 * Gets the number of checks currently waiting for a worker thread
+	 * @return Number of queued checks
+	 */
+	public int getQueueSize() {
+		return pool.getQueue().size();
+	}
+
+	@Override
+	public void close() {
+		pool.shutdownNow();
+	}
+}
@@ -16,17 +16,22 @@ import org.junit.jupiter.api.Test;
 
 import convex.core.ErrorCodes;
 import convex.core.Result;
+import convex.core.Belief;
 import convex.core.crypto.AKeyPair;
 import convex.core.crypto.Ed25519Signature;
+import convex.core.data.AVector;
 import convex.core.data.Address;
+import convex.core.data.Hash;
 import convex.core.data.Ref;
 import convex.core.data.SignedData;
+import convex.core.lang.RT;
 import convex.core.lang.Reader;
 import convex.core.lang.ops.Constant;
 import convex.core.transactions.ATransaction;
 import convex.core.transactions.Invoke;
 import convex.core.util.Utils;
 import convex.peer.TestNetwork;
+import etch.EtchStore;
 
 /**
  * Tests for a Convex Client connection
@@ -100,4 +105,20 @@ public class ConvexRemoteTest {
 		}
 	}
 
+	@Test
+	public void testAcquireToFreshStore() throws IOException, TimeoutException, InterruptedException, ExecutionException {
+		synchronized (network.SERVER) {
+			EtchStore store = EtchStore.createTemp();
+			ConvexRemote convex = Convex.connect(network.SERVER.getHostAddress(), ADDRESS, KEYPAIR, store);
+			AVector<?> status = convex.requestStatus().get(5000, TimeUnit.MILLISECONDS).getValue();
+			Hash beliefHash = RT.ensureHash(status.get(0));
+
+			SignedData<Belief> sb = convex.<SignedData<Belief>>acquire(beliefHash, store).get(30000, TimeUnit.MILLISECONDS);
+			assertEquals(beliefHash, sb.getHash());
+			assertTrue(sb.getValue() instanceof Belief);
+			assertTrue(store.refForHash(beliefHash).getStatus() >= Ref.PERSISTED);
+			convex.close();
+		}
+	}
+
 }
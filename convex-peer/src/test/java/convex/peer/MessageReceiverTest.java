@@ -1,17 +1,25 @@
 package convex.peer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.junit.Test;
 
 import convex.core.data.ACell;
+import convex.core.data.AVector;
+import convex.core.data.Blobs;
+import convex.core.data.prim.CVMLong;
 import convex.core.exceptions.BadFormatException;
 import convex.core.lang.RT;
 import convex.core.store.Stores;
+import convex.core.util.Utils;
 import convex.net.Connection;
 import convex.net.MemoryByteChannel;
 import convex.net.MessageReceiver;
@@ -53,4 +61,95 @@ public class MessageReceiverTest {
 		Message m1 = received.get(0);
 		assertEquals(MessageType.DATA, m1.getType());
 	}
+
+	@Test
+	public void testDataBatch() throws IOException, BadFormatException {
+		final ArrayList<Message> received = new ArrayList<>();
+
+		MemoryByteChannel chan = MemoryByteChannel.create(100000);
+		Connection pc = Connection.create(chan, null, Stores.current(), null);
+		MessageReceiver mr = new MessageReceiver(a -> received.add(a), pc);
+
+		// 100 non-embedded cells should need a few batch frames
+		int N = 100;
+		List<ACell> cells = new ArrayList<>();
+		for (int i = 0; i < N; i++) {
+			cells.add(Blobs.createRandom(200));
+		}
+		assertTrue(pc.sendDataBatch(cells));
+		assertTrue(pc.flushBytes());
+
+		ArrayList<ACell> results = new ArrayList<>();
+		while (results.size() < N) {
+			mr.receiveFromChannel(chan);
+			Message m = received.get(received.size() - 1);
+			assertEquals(MessageType.DATA_BATCH, m.getType());
+			AVector<ACell> batch = m.getPayload();
+			for (ACell c : batch) {
+				results.add(c);
+			}
+		}
+		assertEquals(cells, results);
+		assertTrue(received.size() < 10);
+	}
+
+	@Test
+	public void testPooledReceive() throws IOException, BadFormatException, InterruptedException {
+		final List<Message> received = Collections.synchronizedList(new ArrayList<>());
+
+		MemoryByteChannel chan = MemoryByteChannel.create(10000);
+		Connection pc = Connection.create(chan, null, Stores.current(), null);
+		MessageReceiver mr = MessageReceiver.createPooled(a -> received.add(a), pc);
+
+		int N = 100;
+		for (int i = 0; i < N; i++) {
+			assertTrue(pc.sendData(CVMLong.create(i)));
+		}
+		assertTrue(pc.flushBytes());
+
+		for (int i = 0; i < N; i++) {
+			mr.receiveFromChannel(chan);
+		}
+
+		long start = Utils.getCurrentTimestamp();
+		while ((received.size() < N) && (Utils.getCurrentTimestamp() < start + 5000)) {
+			Thread.sleep(10);
+		}
+
+		// messages must be handled in order of receipt
+		assertEquals(N, received.size());
+		for (int i = 0; i < N; i++) {
+			assertEquals(CVMLong.create(i), received.get(i).getPayload());
+		}
+		assertEquals(N, mr.getReceivedCount());
+	}
+
+	@Test
+	public void testDecodeBackPressure() throws IOException, BadFormatException {
+		final ArrayList<Message> received = new ArrayList<>();
+		final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+		MemoryByteChannel chan = MemoryByteChannel.create(100000);
+		Connection pc = Connection.create(chan, null, Stores.current(), null);
+		MessageReceiver mr = new MessageReceiver(a -> received.add(a), pc, tasks::add);
+
+		// receiving never blocks, even beyond the pending frame limit
+		int N = MessageReceiver.MAX_PENDING_FRAMES + 10;
+		for (int i = 0; i < N; i++) {
+			assertTrue(pc.sendData(CVMLong.create(i)));
+		}
+		assertTrue(pc.flushBytes());
+		for (int i = 0; i < N; i++) {
+			mr.receiveFromChannel(chan);
+		}
+		assertTrue(pc.isReceivePaused());
+		assertEquals(0, received.size());
+
+		// reading resumes once pending frames are decoded
+		while (!tasks.isEmpty()) {
+			tasks.poll().run();
+		}
+		assertFalse(pc.isReceivePaused());
+		assertEquals(N, received.size());
+	}
 }
@@ -0,0 +1,162 @@
+package convex.peer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.crypto.AKeyPair;
+import convex.core.data.prim.CVMLong;
+import convex.core.store.Stores;
+import convex.net.Connection;
+import convex.net.MemoryByteChannel;
+import convex.net.MessageType;
+import convex.net.message.Message;
+import convex.net.message.MessageRemote;
+
+public class MessageSchedulerTest {
+
+	private static Connection connect(boolean trusted) throws IOException {
+		return Connection.create(MemoryByteChannel.create(100), null, Stores.current(),
+				trusted ? AKeyPair.generate().getAccountKey() : null);
+	}
+
+	private static Message message(Connection conn, MessageType type, long i) {
+		return Message.create(conn, type, CVMLong.create(i));
+	}
+
+	private static Connection next(MessageScheduler s) throws InterruptedException {
+		return ((MessageRemote) s.poll(0, TimeUnit.MILLISECONDS)).getConnection();
+	}
+
+	@Test
+	public void testRoundRobin() throws Exception {
+		MessageScheduler s = new MessageScheduler(100);
+		Connection a = connect(false);
+		Connection b = connect(false);
+		for (int i = 0; i < 10; i++) s.put(message(a, MessageType.QUERY, i));
+		for (int i = 0; i < 3; i++) s.put(message(b, MessageType.TRANSACT, i));
+		assertEquals(13, s.size());
+		assertEquals(10, s.size(a));
+
+		// Connections take turns, and each connection's messages stay in order
+		long expectedA = 0;
+		for (int i = 0; i < 6; i++) {
+			Message m = s.poll(0, TimeUnit.MILLISECONDS);
+			Connection c = ((MessageRemote) m).getConnection();
+			assertSame((i % 2 == 0) ? a : b, c);
+			if (c == a) assertEquals(CVMLong.create(expectedA++), m.getPayload());
+		}
+		for (int i = 0; i < 7; i++) {
+			assertSame(a, next(s));
+		}
+		assertEquals(0, s.size());
+		assertNull(s.poll(10, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testPeerPriority() throws Exception {
+		MessageScheduler s = new MessageScheduler(100);
+		Connection peer = connect(true);
+		Connection client = connect(false);
+		for (int i = 0; i < 20; i++) s.put(message(client, MessageType.QUERY, i));
+		for (int i = 0; i < 20; i++) s.put(message(peer, MessageType.BELIEF, i));
+
+		// Peer messages are weighted ahead of client messages
+		for (int i = 0; i < MessageScheduler.PEER_WEIGHT; i++) {
+			assertSame(peer, next(s));
+		}
+		assertSame(client, next(s));
+		assertSame(peer, next(s));
+
+		// Trusted queries and untrusted status requests go in the client lane
+		assertEquals(1, MessageScheduler.getLane(peer, MessageType.QUERY));
+		assertEquals(1, MessageScheduler.getLane(client, MessageType.STATUS));
+		assertEquals(0, MessageScheduler.getLane(peer, MessageType.STATUS));
+		assertEquals(0, MessageScheduler.getLane(peer, MessageType.DATA));
+	}
+
+	@Test
+	public void testInboundBelief() throws Exception {
+		MessageScheduler s = new MessageScheduler(100);
+		Connection inbound = connect(false); // inbound peer Connections have no trusted key
+		Connection a = connect(false);
+		Connection b = connect(false);
+		for (int i = 0; i < 50; i++) {
+			s.put(message(a, MessageType.QUERY, i));
+			s.put(message(b, MessageType.QUERY, i));
+		}
+		s.put(message(inbound, MessageType.BELIEF, 0));
+		s.put(message(inbound, MessageType.MISSING_DATA, 1));
+		s.put(message(inbound, MessageType.DATA, 2));
+
+		// Consensus messages are not stuck behind the client flood
+		for (int i = 0; i < 3; i++) {
+			Message m = s.poll(0, TimeUnit.MILLISECONDS);
+			assertSame(inbound, ((MessageRemote) m).getConnection());
+			assertEquals(CVMLong.create(i), m.getPayload());
+		}
+		assertSame(a, next(s));
+		assertEquals(99, s.size());
+
+		// Per-origin bounds still apply to consensus messages
+		MessageScheduler small = new MessageScheduler(4);
+		for (int i = 0; i < 8; i++) assertTrue(small.offer(message(inbound, MessageType.BELIEF, i)));
+		assertTrue(inbound.isReceivePaused());
+		assertFalse(small.offer(message(inbound, MessageType.BELIEF, 8)));
+	}
+
+	@Test
+	public void testOriginOrder() throws Exception {
+		MessageScheduler s = new MessageScheduler(100);
+		int n = MessageScheduler.PEER_WEIGHT + 2;
+		for (int i = 0; i < n; i++) s.put(message(connect(false), MessageType.BELIEF, i));
+		Connection a = connect(false);
+		s.put(message(a, MessageType.DATA, 0));
+		s.put(message(a, MessageType.TRANSACT, 1));
+
+		// Client lane turn is due before a's DATA reaches the front of the peer lane
+		for (int i = 0; i < MessageScheduler.PEER_WEIGHT; i++) {
+			assertNotSame(a, next(s));
+		}
+
+		// DATA is still delivered ahead of the dependent TRANSACT
+		Message m = s.poll(0, TimeUnit.MILLISECONDS);
+		assertSame(a, ((MessageRemote) m).getConnection());
+		assertEquals(MessageType.DATA, m.getType());
+		for (int i = 0; i < 2; i++) {
+			assertNotSame(a, next(s));
+		}
+		m = s.poll(0, TimeUnit.MILLISECONDS);
+		assertEquals(MessageType.TRANSACT, m.getType());
+		assertEquals(0, s.size());
+	}
+
+	@Test
+	public void testBackPressure() throws Exception {
+		MessageScheduler s = new MessageScheduler(4);
+		Connection a = connect(false);
+		Connection b = connect(false);
+		for (int i = 0; i < 3; i++) s.put(message(a, MessageType.QUERY, i));
+		assertFalse(a.isReceivePaused());
+		s.put(message(a, MessageType.QUERY, 3));
+		assertTrue(a.isReceivePaused());
+
+		// Hard limit for a, other connections unaffected
+		for (int i = 4; i < 8; i++) assertTrue(s.offer(message(a, MessageType.QUERY, i)));
+		assertFalse(s.offer(message(a, MessageType.QUERY, 8)));
+		assertTrue(s.offer(message(b, MessageType.QUERY, 0)));
+		assertFalse(b.isReceivePaused());
+
+		// Resumes once drained to half the queue size
+		while (s.size(a) > 2) s.poll(0, TimeUnit.MILLISECONDS);
+		assertFalse(a.isReceivePaused());
+	}
+}
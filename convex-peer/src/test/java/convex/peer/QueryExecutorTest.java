@@ -0,0 +1,116 @@
+package convex.peer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.ErrorCodes;
+import convex.core.Peer;
+import convex.core.Result;
+import convex.core.crypto.AKeyPair;
+import convex.core.data.ACell;
+import convex.core.data.prim.CVMLong;
+import convex.core.init.Init;
+import convex.core.lang.Reader;
+import convex.core.store.Stores;
+
+public class QueryExecutorTest {
+
+	private static final AKeyPair KP = AKeyPair.createSeeded(1234);
+	private static final Peer PEER = Peer.createGenesisPeer(KP, Init.createState(List.of(KP.getAccountKey())));
+
+	@Test
+	public void testQuery() throws Exception {
+		try (QueryExecutor executor = new QueryExecutor(Stores.current(), 2, 10, 100000, 5000, "Test query")) {
+			CompletableFuture<Result> f = new CompletableFuture<>();
+			ACell form = Reader.read("(+ 1 2)");
+			assertTrue(executor.submit(PEER, CVMLong.create(1), form, null, f::complete));
+			Result r = f.get(5, TimeUnit.SECONDS);
+			assertNull(r.getErrorCode());
+			assertEquals(CVMLong.create(1), r.getID());
+			assertEquals(CVMLong.create(3), r.getValue());
+
+			// query exceeding juice limit
+			CompletableFuture<Result> f2 = new CompletableFuture<>();
+			ACell loop = Reader.read("(loop [i 0] (recur (inc i)))");
+			assertTrue(executor.submit(PEER, CVMLong.create(2), loop, null, f2::complete));
+			assertEquals(ErrorCodes.JUICE, f2.get(5, TimeUnit.SECONDS).getErrorCode());
+		}
+	}
+
+	@Test
+	public void testLoadAndTimeout() throws Exception {
+		try (QueryExecutor executor = new QueryExecutor(Stores.current(), 1, 1, 100000, 200, "Test query")) {
+			ACell form = Reader.read("1");
+			CountDownLatch started = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+
+			// occupy the only worker thread with a blocking handler
+			assertTrue(executor.submit(PEER, CVMLong.create(1), form, null, r -> {
+				started.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+			}));
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+
+			// second query waits in queue, and times out there
+			CompletableFuture<Result> queued = new CompletableFuture<>();
+			assertTrue(executor.submit(PEER, CVMLong.create(2), form, null, queued::complete));
+			assertEquals(1, executor.getQueueSize());
+
+			// third query is rejected immediately
+			CompletableFuture<Result> rejected = new CompletableFuture<>();
+			assertFalse(executor.submit(PEER, CVMLong.create(3), form, null, rejected::complete));
+			assertEquals(ErrorCodes.LOAD, rejected.getNow(null).getErrorCode());
+
+			Result r = queued.get(5, TimeUnit.SECONDS);
+			assertEquals(ErrorCodes.TIMEOUT, r.getErrorCode());
+			assertEquals(CVMLong.create(2), r.getID());
+			assertEquals(0, executor.getQueueSize());
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		QueryExecutor executor = new QueryExecutor(Stores.current(), 1, 1, 100000, 5000, "Test query");
+		ACell form = Reader.read("1");
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+
+		// occupy the only worker thread with a blocking handler
+		assertTrue(executor.submit(PEER, CVMLong.create(1), form, null, r -> {
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+				interrupted.complete(false);
+			} catch (InterruptedException e) {
+				interrupted.complete(true);
+			}
+		}));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		CompletableFuture<Result> queued = new CompletableFuture<>();
+		assertTrue(executor.submit(PEER, CVMLong.create(2), form, null, queued::complete));
+
+		// queued query gets a LOAD error, running query is not interrupted
+		executor.close();
+		Result r = queued.getNow(null);
+		assertEquals(ErrorCodes.LOAD, r.getErrorCode());
+		assertEquals(CVMLong.create(2), r.getID());
+		release.countDown();
+		assertFalse(interrupted.get(5, TimeUnit.SECONDS));
+	}
+}
@@ -4,26 +4,34 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.junit.jupiter.api.Test;
 
 import convex.api.Convex;
+import convex.core.Peer;
 import convex.core.Result;
 import convex.core.State;
 import convex.core.crypto.AKeyPair;
 import convex.core.data.AccountKey;
 import convex.core.data.Address;
+import convex.core.data.Hash;
 import convex.core.data.Keyword;
 import convex.core.data.Keywords;
 import convex.core.data.Lists;
 import convex.core.data.Maps;
+import convex.core.exceptions.BadFormatException;
 import convex.core.init.Init;
 import convex.core.lang.Symbols;
 import convex.core.store.AStore;
@@ -94,4 +102,82 @@ public class RestoreTest {
 		State state=s2.getPeer().getConsensusState();
 		assertNotNull(state);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void gcTest() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+		EtchStore store=EtchStore.createTemp();
+		Map<Keyword, Object> config = Maps.hashMapOf(
+				Keywords.KEYPAIR,KP,
+				Keywords.STATE,GENESIS,
+				Keywords.STORE,store,
+				Keywords.URL,null
+		);
+		Server s1=API.launchPeer(config);
+		Convex cvx1=Convex.connect(s1,HERO,KP);
+
+		Result tx1=cvx1.transactSync(Invoke.create(HERO,1, Symbols.STAR_ADDRESS));
+		assertEquals(HERO,tx1.getValue());
+
+		s1.collectGarbage().get(10, TimeUnit.SECONDS);
+		assertFalse(store.isCollecting());
+
+		// Peer still operates normally after GC
+		Result tx2=cvx1.transactSync(Invoke.create(HERO,2, Symbols.STAR_ADDRESS));
+		assertEquals(HERO,tx2.getValue());
+		assertNotNull(store.refForHash(s1.getPeer().getConsensusState().getHash()));
+		s1.close();
+	}
+
+	@Test
+	public void snapshotTest() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+		Map<Keyword, Object> config = Maps.hashMapOf(
+				Keywords.KEYPAIR,KP,
+				Keywords.STATE,GENESIS,
+				Keywords.STORE,EtchStore.createTemp(),
+				Keywords.URL,null
+		);
+		Server s1=API.launchPeer(config);
+		Convex cvx1=Convex.connect(s1,HERO,KP);
+		Result tx1=cvx1.transactSync(Invoke.create(HERO,1, Symbols.STAR_ADDRESS));
+		assertEquals(HERO,tx1.getValue());
+
+		Path file=Files.createTempFile("convex-snapshot", ".bin");
+		file.toFile().deleteOnExit();
+		Hash snapshotHash;
+		try (OutputStream out=Files.newOutputStream(file)) {
+			snapshotHash=s1.exportSnapshot(out);
+		}
+		Peer p1=s1.getPeer();
+		s1.close();
+
+		// Bootstrap a fresh Peer from the snapshot, with no genesis state
+		Map<Keyword, Object> config2 = Maps.hashMapOf(
+				Keywords.KEYPAIR,KP,
+				Keywords.STORE,EtchStore.createTemp(),
+				Keywords.SNAPSHOT,file.toString(),
+				Keywords.SNAPSHOT_HASH,snapshotHash.toHexString(),
+				Keywords.URL,null
+		);
+		Server s2=API.launchPeer(config2);
+		Peer p2=s2.getPeer();
+		assertEquals(p1.getExecutedPoint(),p2.getHistoryStart());
+		assertEquals(p1.getNetworkID(),p2.getNetworkID());
+
+		Convex cvx2=Convex.connect(s2.getHostAddress(), HERO,KP);
+		Result tx2=cvx2.transactSync(Invoke.create(HERO,2, Symbols.STAR_ADDRESS));
+		assertEquals(HERO,tx2.getValue());
+		cvx2.close();
+		s2.close();
+
+		// Wrong snapshot hash is rejected
+		Map<Keyword, Object> config3 = Maps.hashMapOf(
+				Keywords.KEYPAIR,KP,
+				Keywords.STORE,EtchStore.createTemp(),
+				Keywords.SNAPSHOT,file.toString(),
+				Keywords.SNAPSHOT_HASH,GENESIS.getHash().toHexString(),
+				Keywords.URL,null
+		);
+		IOException e=assertThrows(IOException.class,()->API.launchPeer(config3));
+		assertTrue(e.getCause() instanceof BadFormatException);
+	}
+}
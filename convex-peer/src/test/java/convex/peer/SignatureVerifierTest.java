@@ -0,0 +1,65 @@
+package convex.peer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.crypto.AKeyPair;
+import convex.core.crypto.Ed25519Signature;
+import convex.core.data.Blobs;
+import convex.core.data.Ref;
+import convex.core.data.SignedData;
+import convex.core.data.prim.CVMLong;
+import convex.core.store.Stores;
+
+public class SignatureVerifierTest {
+
+	@Test
+	public void testOrdering() throws Exception {
+		AKeyPair kp = AKeyPair.generate();
+		try (SignatureVerifier verifier = new SignatureVerifier(Stores.current(), 4, 10, "Test verifier")) {
+			int N = 100;
+			List<Long> results = Collections.synchronizedList(new ArrayList<>());
+			Object origin = new Object();
+			CompletableFuture<Void> last = null;
+			for (int i = 0; i < N; i++) {
+				long v = i;
+				SignedData<CVMLong> sd = SignedData.create(kp, CVMLong.create(v));
+				last = verifier.submit(origin, sd, ok -> {
+					assertTrue(ok);
+					results.add(v);
+				});
+			}
+			last.get(5, TimeUnit.SECONDS);
+			assertEquals(N, results.size());
+			for (int i = 0; i < N; i++) {
+				assertEquals(i, results.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void testBadSignature() throws Exception {
+		AKeyPair kp = AKeyPair.generate();
+		try (SignatureVerifier verifier = new SignatureVerifier(Stores.current(), 2, 10, "Test verifier")) {
+			Ed25519Signature badSig = Ed25519Signature.wrap(Blobs.createRandom(64).getBytes());
+			SignedData<CVMLong> bad = SignedData.create(kp.getAccountKey(), badSig, Ref.get(CVMLong.create(17)));
+			SignedData<CVMLong> good = SignedData.create(kp, CVMLong.create(17));
+
+			boolean[] seen = new boolean[2];
+			verifier.submit(this, bad, ok -> seen[0] = ok).get(5, TimeUnit.SECONDS);
+			verifier.submit(this, good, ok -> seen[1] = ok).get(5, TimeUnit.SECONDS);
+			assertFalse(seen[0]);
+			assertTrue(seen[1]);
+			assertFalse(bad.checkSignature());
+		}
+	}
+}